@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base state of the benchmarks run against the report corpora
+ * <p/>
+ * Each benchmark is measured in throughput and in sample time, which gives the latency percentiles. The allocation
+ * rate is given by the GC profiler: <code>java -jar benchmarks.jar -prof gc</code>. The largest corpora are not
+ * in the default parameters, they are selected explicitly with a larger heap, for example
+ * <code>java -jar benchmarks.jar -p size=500MB -jvmArgsAppend -Xmx8g</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public abstract class AbstractCorpusBenchmark {
+
+    @Param({"1KB", "1MB", "50MB"})
+    public String size;
+
+    @Param({"FEW_TESTCASES", "MANY_TESTCASES"})
+    public ReportCorpus.Shape shape;
+
+    protected File inputFile;
+
+    protected File outputFile;
+
+    @Setup(Level.Trial)
+    public void prepareCorpus() throws IOException {
+        inputFile = ReportCorpus.getFile(size, shape);
+        outputFile = File.createTempFile("dtkit-benchmark", ".xml");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteOutput() {
+        if (outputFile != null) {
+            outputFile.delete();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.benchmarks;
+
+import com.thalesgroup.dtkit.util.converter.ConversionService;
+import com.thalesgroup.dtkit.util.converter.XslKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.io.IOException;
+
+/**
+ * Benchmarks of the conversions of {@link ConversionService}, with a cached compiled stylesheet
+ */
+public class ConversionServiceBenchmark extends AbstractCorpusBenchmark {
+
+    private ConversionService conversionService;
+
+    private XslKey xslKey;
+
+    @Setup(Level.Trial)
+    public void prepareConversion() throws IOException {
+        conversionService = new ConversionService();
+        xslKey = XslKey.fromResource(BenchmarkInputMetric.class, "report-junit.xsl");
+    }
+
+    @Benchmark
+    public long convert() {
+        conversionService.convert(xslKey, inputFile, outputFile, null);
+        return outputFile.length();
+    }
+
+    @Benchmark
+    public String convertAndReturn() {
+        return conversionService.convertAndReturn(xslKey, inputFile, null);
+    }
+}
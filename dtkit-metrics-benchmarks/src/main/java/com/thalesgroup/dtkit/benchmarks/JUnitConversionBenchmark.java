@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.benchmarks;
+
+import com.thalesgroup.dtkit.metrics.model.InputMetric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.io.IOException;
+
+/**
+ * Benchmarks of the normalization of JUnit reports, by streaming in Java against its XSL equivalent
+ * The JUnit reports are the conversions of the report corpora.
+ */
+public class JUnitConversionBenchmark extends AbstractCorpusBenchmark {
+
+    private InputMetric streamingInputMetric;
+
+    private InputMetric xslInputMetric;
+
+    @Setup(Level.Trial)
+    public void prepareJUnitCorpus() throws IOException {
+        inputFile = ReportCorpus.getJUnitFile(size, shape);
+        streamingInputMetric = new BenchmarkJUnitInputMetric();
+        xslInputMetric = new BenchmarkJUnitInputMetricXSL();
+    }
+
+    @Benchmark
+    public long convertStAX() {
+        streamingInputMetric.convert(inputFile, outputFile, null);
+        return outputFile.length();
+    }
+
+    @Benchmark
+    public long convertXSL() {
+        xslInputMetric.convert(inputFile, outputFile, null);
+        return outputFile.length();
+    }
+}
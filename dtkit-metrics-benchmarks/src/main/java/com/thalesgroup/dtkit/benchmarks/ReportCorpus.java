@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.benchmarks;
+
+import java.io.*;
+import java.util.Random;
+
+/**
+ * Generated report corpora for the benchmarks
+ * <p/>
+ * A corpus is a report of a fictitious test tool (see report.xsd) of a given size, with either few testcases having a
+ * large output or many testcases having no output. The files are generated once in the corpus directory (the
+ * <code>dtkit.benchmarks.corpus.dir</code> system property, a temporary directory by default) and reused by the next
+ * runs, so that large corpora are not rebuilt for each fork. The JUnit conversions of the corpora are kept the same way.
+ */
+public final class ReportCorpus {
+
+    public static final String CORPUS_DIR_PROPERTY = "dtkit.benchmarks.corpus.dir";
+
+    public enum Shape {
+
+        FEW_TESTCASES(16 * 1024), MANY_TESTCASES(0);
+
+        private final int outputLength;
+
+        private Shape(int outputLength) {
+            this.outputLength = outputLength;
+        }
+
+        public int getOutputLength() {
+            return outputLength;
+        }
+    }
+
+    private static final String OUTPUT_TEXT = "Running the test step & checking the <expected> values. ";
+
+    private ReportCorpus() {
+    }
+
+    /**
+     * Parses a corpus size such as 1KB, 50MB or 1GB
+     *
+     * @param size the size with its unit
+     * @return the size in bytes
+     */
+    public static long parseSize(String size) {
+        String value = size.trim().toUpperCase();
+        long unit = 1;
+        if (value.endsWith("KB")) {
+            unit = 1024;
+        } else if (value.endsWith("MB")) {
+            unit = 1024 * 1024;
+        } else if (value.endsWith("GB")) {
+            unit = 1024 * 1024 * 1024;
+        }
+        if (unit != 1) {
+            value = value.substring(0, value.length() - 2);
+        } else if (value.endsWith("B")) {
+            value = value.substring(0, value.length() - 1);
+        }
+        return Long.parseLong(value.trim()) * unit;
+    }
+
+    /**
+     * Gets a corpus file, generating it if it doesn't exist yet
+     *
+     * @param size  the corpus size, as accepted by {@link #parseSize(String)}
+     * @param shape the corpus shape
+     * @return the corpus file
+     * @throws IOException when the corpus can't be written
+     */
+    public static File getFile(String size, Shape shape) throws IOException {
+        File corpusDir = getCorpusDir();
+        if (!corpusDir.isDirectory() && !corpusDir.mkdirs()) {
+            throw new IOException("Can't create the corpus directory " + corpusDir);
+        }
+        File file = new File(corpusDir, "report-" + size + "-" + shape.name().toLowerCase() + ".xml");
+        long targetSize = parseSize(size);
+        if (!file.exists() || file.length() < targetSize) {
+            File tmpFile = new File(corpusDir, file.getName() + ".tmp");
+            generate(tmpFile, targetSize, shape);
+            if ((file.exists() && !file.delete()) || !tmpFile.renameTo(file)) {
+                throw new IOException("Can't create the corpus " + file);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Gets the JUnit report of a corpus, converting the corpus if the JUnit report doesn't exist yet
+     *
+     * @param size  the corpus size, as accepted by {@link #parseSize(String)}
+     * @param shape the corpus shape
+     * @return the JUnit report file
+     * @throws IOException when the corpus or its JUnit report can't be written
+     */
+    public static File getJUnitFile(String size, Shape shape) throws IOException {
+        File reportFile = getFile(size, shape);
+        File file = new File(reportFile.getParentFile(), "junit-" + size + "-" + shape.name().toLowerCase() + ".xml");
+        if (!file.exists() || file.lastModified() < reportFile.lastModified()) {
+            File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+            new BenchmarkInputMetric().convert(reportFile, tmpFile, null);
+            if ((file.exists() && !file.delete()) || !tmpFile.renameTo(file)) {
+                throw new IOException("Can't create the JUnit corpus " + file);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Generates a report with at least one testcase, growing until it reaches the target size
+     * The generation is deterministic: one testcase out of ten fails, one out of fifty is in error.
+     *
+     * @param file       the report file
+     * @param targetSize the minimal size of the report in bytes
+     * @param shape      the corpus shape
+     * @throws IOException when the report can't be written
+     */
+    public static void generate(File file, long targetSize, Shape shape) throws IOException {
+        Random random = new Random(42);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 64 * 1024);
+        try {
+            //Only ASCII characters are written, so the written length is the file size
+            long written = write(writer, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<report name=\"benchmark\">\n");
+            String footer = "</report>\n";
+            int index = 0;
+            do {
+                StringBuilder test = new StringBuilder(shape.getOutputLength() + 256);
+                String status = (index % 50 == 49) ? "error" : (index % 10 == 9) ? "failed" : "passed";
+                test.append("  <test name=\"test").append(index)
+                        .append("\" class=\"com.example.Suite").append(index / 100)
+                        .append("\" duration=\"").append(random.nextInt(5000) / 1000.0)
+                        .append("\" status=\"").append(status).append("\">");
+                if (!"passed".equals(status)) {
+                    test.append("<message>Expected &lt;").append(random.nextInt()).append("&gt; at step ")
+                            .append(index).append("</message>");
+                }
+                if (shape.getOutputLength() != 0) {
+                    test.append("<output>");
+                    while (test.length() < shape.getOutputLength()) {
+                        test.append(OUTPUT_TEXT.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;"));
+                    }
+                    test.append("</output>");
+                }
+                test.append("</test>\n");
+                written += write(writer, test.toString());
+                index++;
+            } while (written + footer.length() < targetSize);
+            write(writer, footer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static long write(Writer writer, String value) throws IOException {
+        writer.write(value);
+        return value.length();
+    }
+
+    private static File getCorpusDir() {
+        String corpusDir = System.getProperty(CORPUS_DIR_PROPERTY);
+        if (corpusDir != null) {
+            return new File(corpusDir);
+        }
+        return new File(System.getProperty("java.io.tmpdir"), "dtkit-benchmarks");
+    }
+}
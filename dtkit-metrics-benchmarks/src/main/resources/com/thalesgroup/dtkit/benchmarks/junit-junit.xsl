@@ -0,0 +1,53 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!-- XSL equivalent of the streaming normalization of InputMetricJUnitStAX -->
+<xsl:stylesheet version="2.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
+                xmlns:xs="http://www.w3.org/2001/XMLSchema"
+                xmlns:dtkit="http://dtkit.thalesgroup.com/benchmarks"
+                exclude-result-prefixes="xs dtkit">
+    <xsl:output method="xml" encoding="UTF-8"/>
+
+    <xsl:function name="dtkit:time" as="xs:string">
+        <xsl:param name="time" as="xs:string"/>
+        <xsl:variable name="value" select="normalize-space($time)"/>
+        <xsl:sequence select="if ($value = '') then '0'
+                              else if (not(contains($value, ','))) then $value
+                              else if (matches($value, '^-?[1-9]\d{0,2}(,\d{3})+(\.\d*)?$')) then translate($value, ',', '')
+                              else if (matches($value, '^-?[1-9]\d{0,2}(\.\d{3})+,\d*$')) then replace(replace($value, '\.', ''), ',', '.')
+                              else if (matches($value, '^-?\d*,\d*$')) then translate($value, ',', '.')
+                              else $value"/>
+    </xsl:function>
+
+    <xsl:template match="/">
+        <xsl:apply-templates select="testsuites|testsuite"/>
+    </xsl:template>
+
+    <xsl:template match="testsuites|testsuite|testcase|properties">
+        <xsl:element name="{local-name()}">
+            <xsl:apply-templates select="@*"/>
+            <xsl:if test="self::testcase and not(@time)">
+                <xsl:attribute name="time" select="'0'"/>
+            </xsl:if>
+            <xsl:apply-templates select="*"/>
+        </xsl:element>
+    </xsl:template>
+
+    <xsl:template match="property|failure|error|skipped|system-out|system-err">
+        <xsl:element name="{local-name()}">
+            <xsl:apply-templates select="@*"/>
+            <xsl:value-of select="."/>
+        </xsl:element>
+    </xsl:template>
+
+    <xsl:template match="testsuite/@time|testcase/@time">
+        <xsl:attribute name="time" select="dtkit:time(.)"/>
+    </xsl:template>
+
+    <xsl:template match="@*">
+        <xsl:if test="namespace-uri() = ''">
+            <xsl:copy/>
+        </xsl:if>
+    </xsl:template>
+
+    <xsl:template match="*"/>
+
+</xsl:stylesheet>
@@ -0,0 +1,28 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<xsl:stylesheet version="2.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+    <xsl:output method="xml" indent="yes" encoding="UTF-8"/>
+
+    <xsl:template match="/report">
+        <testsuite name="{@name}" tests="{count(test)}" failures="{count(test[@status='failed'])}"
+                   errors="{count(test[@status='error'])}">
+            <xsl:apply-templates select="test"/>
+        </testsuite>
+    </xsl:template>
+
+    <xsl:template match="test">
+        <testcase name="{@name}" classname="{@class}" time="{@duration}">
+            <xsl:if test="@status != 'passed'">
+                <xsl:element name="{if (@status = 'failed') then 'failure' else 'error'}">
+                    <xsl:attribute name="message" select="message"/>
+                    <xsl:value-of select="message"/>
+                </xsl:element>
+            </xsl:if>
+            <xsl:if test="output">
+                <system-out>
+                    <xsl:value-of select="output"/>
+                </system-out>
+            </xsl:if>
+        </testcase>
+    </xsl:template>
+
+</xsl:stylesheet>
@@ -36,6 +36,13 @@ public abstract class TestTypeDescriptor<T extends TestType> extends Descriptor<
 
     private transient Class<? extends InputMetric> inputMetricClass;
 
+    /**
+     * The instance of the tool created on the first access, copied for the callers
+     */
+    private transient volatile InputMetric inputMetric;
+
+    private transient volatile String displayName;
+
     protected TestTypeDescriptor(Class<T> classType, final Class<? extends InputMetric> inputMetricClass) {
         super(classType);
         this.inputMetricClass = inputMetricClass;
@@ -49,16 +56,32 @@ public abstract class TestTypeDescriptor<T extends TestType> extends Descriptor<
     @SuppressWarnings("unused")
     @Override
     public String getDisplayName() {
-        return getInputMetric().getLabel();
+        String name = displayName;
+        if (name == null) {
+            name = getInputMetricTemplate().getLabel();
+            displayName = name;
+        }
+        return name;
     }
 
     @SuppressWarnings("unused")
     public InputMetric getInputMetric() {
-        try {
-            return InputMetricFactory.getInstance(inputMetricClass);
-        } catch (InputMetricException e) {
-            return null;
+        InputMetric template = getInputMetricTemplate();
+        return (template == null) ? null : template.copy();
+    }
+
+    private InputMetric getInputMetricTemplate() {
+        InputMetric template = inputMetric;
+        if (template == null) {
+            //A concurrent creation of the instance is harmless
+            try {
+                template = InputMetricFactory.getInstance(inputMetricClass);
+            } catch (InputMetricException e) {
+                return null;
+            }
+            inputMetric = template;
         }
+        return template;
     }
 
 }
@@ -33,6 +33,8 @@ import hudson.model.Hudson;
 @SuppressWarnings("unused")
 public abstract class CoverageType extends MetricsType implements Describable<CoverageType> {
 
+    private transient volatile CoverageTypeDescriptor<? extends CoverageType> descriptor;
+
     protected CoverageType(String pattern, boolean skipNoTestFiles, boolean failIfNotNew, boolean deleteOutputFiles, boolean stopProcessingIfError) {
         super(pattern, skipNoTestFiles, failIfNotNew, deleteOutputFiles, stopProcessingIfError);
     }
@@ -55,7 +57,12 @@ public abstract class CoverageType extends MetricsType implements Describable<Co
 
     @SuppressWarnings("unchecked")
     public CoverageTypeDescriptor<? extends CoverageType> getDescriptor() {
-        return (CoverageTypeDescriptor<? extends CoverageType>) Hudson.getInstance().getDescriptor(getClass());
+        CoverageTypeDescriptor<? extends CoverageType> typeDescriptor = descriptor;
+        if (typeDescriptor == null) {
+            typeDescriptor = (CoverageTypeDescriptor<? extends CoverageType>) Hudson.getInstance().getDescriptor(getClass());
+            descriptor = typeDescriptor;
+        }
+        return typeDescriptor;
     }
 
     @SuppressWarnings("unused")
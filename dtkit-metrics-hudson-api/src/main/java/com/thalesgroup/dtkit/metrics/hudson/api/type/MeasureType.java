@@ -32,6 +32,8 @@ import hudson.model.Hudson;
 @SuppressWarnings("unused")
 public abstract class MeasureType extends MetricsType implements Describable<MeasureType> {
 
+    private transient volatile MeasureTypeDescriptor<? extends MeasureType> descriptor;
+
     protected MeasureType(String pattern, boolean skipNoTestFiles, boolean failIfNotNew, boolean deleteOutputFiles, boolean stopProcessingIfError) {
         super(pattern, skipNoTestFiles, failIfNotNew, deleteOutputFiles, stopProcessingIfError);
     }
@@ -54,7 +56,12 @@ public abstract class MeasureType extends MetricsType implements Describable<Mea
 
     @SuppressWarnings("unchecked")
     public MeasureTypeDescriptor<? extends MeasureType> getDescriptor() {
-        return (MeasureTypeDescriptor<? extends MeasureType>) Hudson.getInstance().getDescriptor(getClass());
+        MeasureTypeDescriptor<? extends MeasureType> typeDescriptor = descriptor;
+        if (typeDescriptor == null) {
+            typeDescriptor = (MeasureTypeDescriptor<? extends MeasureType>) Hudson.getInstance().getDescriptor(getClass());
+            descriptor = typeDescriptor;
+        }
+        return typeDescriptor;
     }
 
     @SuppressWarnings("unused")
@@ -32,6 +32,8 @@ import hudson.model.Hudson;
 @SuppressWarnings("unused")
 public abstract class TestType extends MetricsType implements Describable<TestType> {
 
+    private transient volatile TestTypeDescriptor<? extends TestType> descriptor;
+
     protected TestType(String pattern, boolean skipNoTestFiles, boolean failIfNotNew, boolean deleteOutputFiles, boolean stopProcessingIfError) {
         super(pattern, skipNoTestFiles, failIfNotNew, deleteOutputFiles, stopProcessingIfError);
     }
@@ -50,7 +52,12 @@ public abstract class TestType extends MetricsType implements Describable<TestTy
 
     @SuppressWarnings("unchecked")
     public TestTypeDescriptor<? extends TestType> getDescriptor() {
-        return (TestTypeDescriptor<? extends TestType>) Hudson.getInstance().getDescriptor(getClass());
+        TestTypeDescriptor<? extends TestType> typeDescriptor = descriptor;
+        if (typeDescriptor == null) {
+            typeDescriptor = (TestTypeDescriptor<? extends TestType>) Hudson.getInstance().getDescriptor(getClass());
+            descriptor = typeDescriptor;
+        }
+        return typeDescriptor;
     }
 
     public static ExtensionList<TestType> all() {
@@ -32,6 +32,8 @@ import hudson.model.Hudson;
 @SuppressWarnings("unused")
 public abstract class ViolationsType extends MetricsType implements Describable<ViolationsType> {
 
+    private transient volatile ViolationsTypeDescriptor<? extends ViolationsType> descriptor;
+
 
     protected ViolationsType(String pattern, boolean skipNoTestFiles, boolean failIfNotNew, boolean deleteOutputFiles, boolean stopProcessingIfError) {
         super(pattern, skipNoTestFiles, failIfNotNew, deleteOutputFiles, stopProcessingIfError);
@@ -56,7 +58,12 @@ public abstract class ViolationsType extends MetricsType implements Describable<
 
     @SuppressWarnings("unchecked")
     public ViolationsTypeDescriptor<? extends ViolationsType> getDescriptor() {
-        return (ViolationsTypeDescriptor<? extends ViolationsType>) Hudson.getInstance().getDescriptor(getClass());
+        ViolationsTypeDescriptor<? extends ViolationsType> typeDescriptor = descriptor;
+        if (typeDescriptor == null) {
+            typeDescriptor = (ViolationsTypeDescriptor<? extends ViolationsType>) Hudson.getInstance().getDescriptor(getClass());
+            descriptor = typeDescriptor;
+        }
+        return typeDescriptor;
     }
 
     @SuppressWarnings("unused")
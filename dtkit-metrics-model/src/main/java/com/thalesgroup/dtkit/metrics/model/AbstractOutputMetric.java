@@ -24,12 +24,12 @@
 package com.thalesgroup.dtkit.metrics.model;
 
 
+import com.thalesgroup.dtkit.util.validator.SchemaKey;
 import com.thalesgroup.dtkit.util.validator.ValidationError;
 import com.thalesgroup.dtkit.util.validator.ValidationException;
 import com.thalesgroup.dtkit.util.validator.ValidationService;
 
 import javax.xml.bind.annotation.adapters.XmlAdapter;
-import javax.xml.transform.stream.StreamSource;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
@@ -53,12 +53,8 @@ public abstract class AbstractOutputMetric implements OutputMetric {
             return new ArrayList<ValidationError>();
         }
 
-        StreamSource[] streamSources = new StreamSource[getXsdNameList().length];
-        for (int i = 0; i < streamSources.length; i++) {
-            streamSources[i] = new StreamSource(this.getClass().getResourceAsStream(getXsdNameList()[i]));
-        }
-
         ValidationService validationService = new ValidationService();
-        return validationService.processValidation(streamSources, inputXMLFile);
+        validationService.setLabel(getKey());
+        return validationService.processValidation(SchemaKey.fromResources(this.getClass(), getXsdNameList()), inputXMLFile);
     }
 }
@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.metrics.model;
+
+import com.thalesgroup.dtkit.util.converter.ConversionResult;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the conversions in the background, on a bounded pool of threads fed by a bounded queue
+ * <p/>
+ * A caller submits a conversion and gets a future of its result at once, instead of blocking for the whole
+ * conversion. The number of conversions run at the same time and the number of waiting conversions are bounded,
+ * so a burst of submissions can't exhaust the threads or the heap: when the queue is full, the
+ * {@link RejectionPolicy} decides what happens to the new conversions.
+ * <p/>
+ * A conversion error is not thrown by the future: the result of the conversion is a failure carrying the error.
+ * The default engine, used by {@link InputMetric#convertAsync(File, File, Map)}, is created on first access.
+ */
+public class AsyncConversionEngine {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /**
+     * What to do with a conversion submitted while the queue is full
+     */
+    public enum RejectionPolicy {
+        /**
+         * The submission throws a {@link RejectedExecutionException}
+         */
+        ABORT,
+        /**
+         * The conversion is run by the submitting thread, which slows down the submissions
+         */
+        CALLER_RUNS,
+        /**
+         * The submitting thread waits for a free place in the queue
+         */
+        BLOCK
+    }
+
+    /**
+     * Notified of the end of a conversion, by the thread which ran it
+     */
+    public interface Callback {
+
+        void completed(ConversionResult result);
+    }
+
+    private static AsyncConversionEngine defaultEngine;
+
+    private final ThreadPoolExecutor executor;
+
+    private final RejectionPolicy rejectionPolicy;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Creates an engine running one conversion per available processor, with a queue of
+     * {@link #DEFAULT_QUEUE_CAPACITY} conversions run by the caller when full
+     */
+    public AsyncConversionEngine() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY, RejectionPolicy.CALLER_RUNS);
+    }
+
+    /**
+     * Creates an engine
+     *
+     * @param parallelism     the number of conversions run at the same time
+     * @param queueCapacity   the number of conversions waiting for a thread
+     * @param rejectionPolicy what to do with a conversion submitted while the queue is full
+     */
+    public AsyncConversionEngine(int parallelism, int queueCapacity, RejectionPolicy rejectionPolicy) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be positive: " + parallelism);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("The queue capacity must be positive: " + queueCapacity);
+        }
+        if (rejectionPolicy == null) {
+            throw new NullPointerException("A rejection policy is required.");
+        }
+        this.rejectionPolicy = rejectionPolicy;
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new ConversionThreadFactory(), new RejectionHandler());
+        //The idle threads are released between the bursts
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Gives the engine used by default by the tools, creating it if needed
+     *
+     * @return the default engine
+     */
+    public static synchronized AsyncConversionEngine getDefault() {
+        if (defaultEngine == null || defaultEngine.isClosed()) {
+            defaultEngine = new AsyncConversionEngine();
+        }
+        return defaultEngine;
+    }
+
+    /**
+     * Replaces the default engine
+     * The previous default engine is not closed.
+     *
+     * @param engine the new default engine
+     */
+    public static synchronized void setDefault(AsyncConversionEngine engine) {
+        if (engine == null) {
+            throw new NullPointerException("An engine is required.");
+        }
+        defaultEngine = engine;
+    }
+
+    /**
+     * Submits the conversion of an input file
+     *
+     * @param inputMetric the tool
+     * @param inputFile   the file to convert
+     * @param outputFile  the converted file
+     * @param params      the conversion parameters
+     * @return the future result of the conversion
+     * @throws RejectedExecutionException when the queue is full with the {@link RejectionPolicy#ABORT} policy,
+     *                                    when the engine is closed, or when the caller is interrupted while waiting
+     *                                    with the {@link RejectionPolicy#BLOCK} policy
+     */
+    public Future<ConversionResult> convertAsync(InputMetric inputMetric, File inputFile, File outputFile, Map<String, Object> params) throws RejectedExecutionException {
+        return convertAsync(inputMetric, inputFile, outputFile, params, null);
+    }
+
+    /**
+     * Submits the conversion of an input file, with a notification at its end
+     *
+     * @param inputMetric the tool
+     * @param inputFile   the file to convert
+     * @param outputFile  the converted file
+     * @param params      the conversion parameters
+     * @param callback    notified of the result, unless the conversion is cancelled; may be null
+     * @return the future result of the conversion
+     * @throws RejectedExecutionException when the conversion is rejected, see {@link #convertAsync(InputMetric, File, File, Map)}
+     */
+    public Future<ConversionResult> convertAsync(final InputMetric inputMetric, final File inputFile, final File outputFile,
+                                                 final Map<String, Object> params, Callback callback) throws RejectedExecutionException {
+        if (inputMetric == null) {
+            throw new NullPointerException("A tool is required.");
+        }
+        ConversionTask task = new ConversionTask(new Callable<ConversionResult>() {
+            public ConversionResult call() {
+                long start = System.nanoTime();
+                try {
+                    inputMetric.convert(inputFile, outputFile, params);
+                    return ConversionResult.success(inputFile, outputFile, System.nanoTime() - start);
+                } catch (RuntimeException re) {
+                    return ConversionResult.failure(inputFile, outputFile, System.nanoTime() - start, re);
+                }
+            }
+        }, callback);
+        executor.execute(task);
+        return task;
+    }
+
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    public int getParallelism() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * @return the number of conversions waiting for a thread
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of conversions running
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of conversions submitted while the queue was full, whatever the policy applied to them
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public boolean isClosed() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Stops the engine: the running conversions are interrupted and the waiting ones are cancelled
+     */
+    public void close() {
+        List<Runnable> waiting = executor.shutdownNow();
+        for (Runnable runnable : waiting) {
+            if (runnable instanceof Future) {
+                ((Future) runnable).cancel(false);
+            }
+        }
+    }
+
+    private static class ConversionTask extends FutureTask<ConversionResult> {
+
+        private final Callback callback;
+
+        private ConversionTask(Callable<ConversionResult> callable, Callback callback) {
+            super(callable);
+            this.callback = callback;
+        }
+
+        @Override
+        protected void done() {
+            if (callback == null || isCancelled()) {
+                return;
+            }
+            try {
+                callback.completed(get());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ee) {
+                //The conversion errors are in the result, nothing else can be thrown
+            }
+        }
+    }
+
+    private class RejectionHandler implements RejectedExecutionHandler {
+
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("The conversion engine is closed.");
+            }
+            rejectedCount.incrementAndGet();
+            switch (rejectionPolicy) {
+                case CALLER_RUNS:
+                    runnable.run();
+                    break;
+                case BLOCK:
+                    try {
+                        executor.getQueue().put(runnable);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for the conversion queue.", ie);
+                    }
+                    break;
+                default:
+                    throw new RejectedExecutionException("The conversion queue is full.");
+            }
+        }
+    }
+}
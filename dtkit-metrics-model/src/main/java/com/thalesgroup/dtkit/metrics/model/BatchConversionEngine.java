@@ -0,0 +1,493 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.metrics.model;
+
+import com.thalesgroup.dtkit.util.converter.BatchConversionResult;
+import com.thalesgroup.dtkit.util.converter.ConversionException;
+import com.thalesgroup.dtkit.util.converter.ConversionManifest;
+import com.thalesgroup.dtkit.util.converter.ConversionResult;
+import com.thalesgroup.dtkit.util.validator.ValidationException;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Converts a set of input files of a tool in parallel
+ * <p/>
+ * The conversions are fanned out over an executor; all the workers share the compiled stylesheets and
+ * schemas of the default conversion engine and schema cache.
+ * When the processing must stop on error, the first failure cancels the conversions not started yet; the running
+ * conversions can't be interrupted, they are waited for and reported with their real outcome. The output of a
+ * failed conversion is deleted.
+ * <p/>
+ * With a conversion manifest, the batch is incremental: an input unchanged since its last successful conversion
+ * by the same converter version is not converted again, see {@link ConversionManifest}.
+ * <p/>
+ * For I/O-bound batches, such as reports read from a network file system, {@link #newVirtualThreadEngine(int)}
+ * runs each conversion on its own virtual thread when the runtime supports them. Many conversions can then wait for
+ * their inputs at the same time. {@link #setMaxConcurrentDocuments(int)} bounds the number of documents in memory,
+ * but since an input is read while its document is built and the output is written while it is transformed, the
+ * cap bounds the I/O of the conversions as well: only the up-to-date checks of the manifest run beyond the cap.
+ * A cap therefore removes most of the benefit of the virtual threads, it is meant for batches of large reports.
+ */
+public class BatchConversionEngine {
+
+    private final ExecutorService executorService;
+
+    private final boolean ownExecutor;
+
+    private final boolean virtualThreads;
+
+    private volatile Semaphore documentPermits;
+
+    private int maxConcurrentDocuments;
+
+    private boolean stopProcessingIfError = true;
+
+    private ConversionManifest manifest;
+
+    /**
+     * Creates an engine running the conversions on a pool of one thread per available processor
+     */
+    public BatchConversionEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an engine running the conversions on its own fixed pool of threads
+     *
+     * @param parallelism the number of conversions run at the same time
+     */
+    public BatchConversionEngine(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be positive: " + parallelism);
+        }
+        this.executorService = Executors.newFixedThreadPool(parallelism, new ConversionThreadFactory());
+        this.ownExecutor = true;
+        this.virtualThreads = false;
+    }
+
+    /**
+     * Creates an engine running the conversions on the given executor, for example a fork-join pool
+     * The executor is not shut down by {@link #close()}.
+     *
+     * @param executorService the executor
+     */
+    public BatchConversionEngine(ExecutorService executorService) {
+        if (executorService == null) {
+            throw new NullPointerException("An executor is required.");
+        }
+        this.executorService = executorService;
+        this.ownExecutor = false;
+        this.virtualThreads = false;
+    }
+
+    private BatchConversionEngine(ExecutorService executorService, boolean virtualThreads) {
+        this.executorService = executorService;
+        this.ownExecutor = true;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Creates an engine for I/O-bound batches, running each conversion on its own virtual thread when the runtime
+     * supports them, and on its own fixed pool of threads otherwise
+     *
+     * @param fallbackParallelism the number of conversions run at the same time without virtual threads
+     * @return the engine
+     */
+    public static BatchConversionEngine newVirtualThreadEngine(int fallbackParallelism) {
+        if (fallbackParallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be positive: " + fallbackParallelism);
+        }
+        ExecutorService executorService = newVirtualThreadPerTaskExecutor();
+        if (executorService == null) {
+            return new BatchConversionEngine(Executors.newFixedThreadPool(fallbackParallelism, new ConversionThreadFactory()), false);
+        }
+        return new BatchConversionEngine(executorService, true);
+    }
+
+    /**
+     * Creates the virtual thread executor of the runtime, looked up by reflection to run on the older runtimes
+     *
+     * @return the executor, null if the runtime has no virtual threads
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException nsme) {
+            return null;
+        } catch (IllegalAccessException iae) {
+            return null;
+        } catch (InvocationTargetException ite) {
+            //The virtual threads are a disabled preview feature of the runtime
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the conversions run on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getMaxConcurrentDocuments() {
+        return maxConcurrentDocuments;
+    }
+
+    /**
+     * Bounds the number of conversions and validations run at the same time, and so the number of documents in memory
+     * The other ones wait for their turn without holding a document. A conversion holds its turn for its whole run,
+     * reading its input and writing its output included, so the cap also bounds the number of files read and
+     * written at the same time, whatever the threads running the conversions.
+     *
+     * @param maxConcurrentDocuments the maximum number of documents in memory, 0 for no limit
+     */
+    public void setMaxConcurrentDocuments(int maxConcurrentDocuments) {
+        if (maxConcurrentDocuments < 0) {
+            throw new IllegalArgumentException("The maximum number of documents can't be negative: " + maxConcurrentDocuments);
+        }
+        this.maxConcurrentDocuments = maxConcurrentDocuments;
+        this.documentPermits = (maxConcurrentDocuments == 0) ? null : new Semaphore(maxConcurrentDocuments, true);
+    }
+
+    public boolean isStopProcessingIfError() {
+        return stopProcessingIfError;
+    }
+
+    public void setStopProcessingIfError(boolean stopProcessingIfError) {
+        this.stopProcessingIfError = stopProcessingIfError;
+    }
+
+    public ConversionManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Makes the batches incremental
+     * The manifest is updated and saved at the end of each batch.
+     *
+     * @param manifest the manifest of the previous conversions, null to convert all the inputs
+     */
+    public void setManifest(ConversionManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    /**
+     * Converts all the input files with the given tool
+     * Each output file is created in the output directory with the name of its input file;
+     * name clashes are resolved by prefixing the index of the input file, and a counter if the prefixed name is
+     * also taken.
+     *
+     * @param inputMetric the tool
+     * @param inputFiles  the files to convert
+     * @param outputDir   the directory of the converted files
+     * @param params      the conversion parameters
+     * @return the result of each conversion, in the order of the input files
+     * @throws ConversionException when the output directory can't be created
+     */
+    public BatchConversionResult convertAll(InputMetric inputMetric, List<File> inputFiles, File outputDir, Map<String, Object> params) throws ConversionException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new ConversionException("The output directory '" + outputDir + "' can't be created.");
+        }
+        return convertAll(inputMetric, inputFiles, getOutputFiles(inputFiles, outputDir), params);
+    }
+
+    private List<File> getOutputFiles(List<File> inputFiles, File outputDir) {
+        List<File> outputFiles = new ArrayList<File>(inputFiles.size());
+        Set<String> names = new HashSet<String>();
+        for (int i = 0; i < inputFiles.size(); i++) {
+            String name = inputFiles.get(i).getName();
+            String candidate = name;
+            for (int count = 0; !names.add(candidate); count++) {
+                candidate = (count == 0) ? i + "-" + name : i + "-" + count + "-" + name;
+            }
+            outputFiles.add(new File(outputDir, candidate));
+        }
+        return outputFiles;
+    }
+
+    /**
+     * Converts each input file to the output file at the same index with the given tool
+     *
+     * @param inputMetric the tool
+     * @param inputFiles  the files to convert
+     * @param outputFiles the converted files
+     * @param params      the conversion parameters
+     * @return the result of each conversion, in the order of the input files
+     */
+    public BatchConversionResult convertAll(final InputMetric inputMetric, List<File> inputFiles, List<File> outputFiles, final Map<String, Object> params) {
+        if (inputFiles.size() != outputFiles.size()) {
+            throw new IllegalArgumentException("There must be one output file per input file.");
+        }
+
+        long start = System.nanoTime();
+        final ConversionManifest manifest = this.manifest;
+        final String converterVersion = (manifest == null) ? null : getConverterVersion(inputMetric, params);
+        int count = inputFiles.size();
+        final Batch batch = new Batch();
+        CompletionService<ConversionResult> completionService = new ExecutorCompletionService<ConversionResult>(executorService);
+        List<Future<ConversionResult>> futures = new ArrayList<Future<ConversionResult>>(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            final File inputFile = inputFiles.get(i);
+            final File outputFile = outputFiles.get(i);
+            futures.add(completionService.submit(new Callable<ConversionResult>() {
+                public ConversionResult call() {
+                    if (!batch.start(index)) {
+                        return ConversionResult.cancelled(inputFile, outputFile);
+                    }
+                    return convert(batch, inputMetric, inputFile, outputFile, params, manifest, converterVersion);
+                }
+            }));
+        }
+
+        boolean interrupted = false;
+        try {
+            for (int i = 0; i < count && !batch.isStopped(); i++) {
+                ConversionResult result = completionService.take().get();
+                if (!result.isSuccess() && stopProcessingIfError) {
+                    batch.stop();
+                }
+            }
+        } catch (InterruptedException ie) {
+            interrupted = true;
+            batch.stop();
+        } catch (ExecutionException ee) {
+            batch.stop();
+        }
+
+        //The conversions not started are dropped, the running ones are waited for: they can't be interrupted
+        //and must not write their output after the end of the batch
+        List<ConversionResult> results = new ArrayList<ConversionResult>(count);
+        for (int i = 0; i < count; i++) {
+            Future<ConversionResult> future = futures.get(i);
+            if (future.isDone() || batch.isStarted(i)) {
+                results.add(getResult(future, inputFiles.get(i), outputFiles.get(i)));
+            } else {
+                future.cancel(false);
+                results.add(ConversionResult.cancelled(inputFiles.get(i), outputFiles.get(i)));
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (manifest != null) {
+            manifest.save();
+        }
+        return new BatchConversionResult(results, System.nanoTime() - start);
+    }
+
+    private String getConverterVersion(InputMetric inputMetric, Map<String, Object> params) {
+        String converterVersion = inputMetric.getConverterVersion();
+        if (params == null) {
+            return converterVersion;
+        }
+        //The parameters are sorted to get the same version from any map
+        return converterVersion + ":" + new TreeMap<String, Object>(params);
+    }
+
+    private ConversionResult convert(Batch batch, InputMetric inputMetric, File inputFile, File outputFile, Map<String, Object> params,
+                                     ConversionManifest manifest, String converterVersion) {
+        long start = System.nanoTime();
+        try {
+            ConversionManifest.Entry fingerprint = null;
+            if (manifest != null) {
+                fingerprint = manifest.fingerprint(inputFile, converterVersion, outputFile);
+                if (manifest.reuseOutput(fingerprint)) {
+                    return ConversionResult.upToDate(inputFile, outputFile, System.nanoTime() - start);
+                }
+                //The previous output is no longer valid if the conversion fails
+                manifest.remove(inputFile);
+            }
+            Semaphore permits = documentPermits;
+            if (permits != null) {
+                permits.acquire();
+            }
+            try {
+                if (batch.isStopped()) {
+                    return ConversionResult.cancelled(inputFile, outputFile);
+                }
+                inputMetric.convert(inputFile, outputFile, params);
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+            if (manifest != null) {
+                manifest.put(fingerprint);
+            }
+            return ConversionResult.success(inputFile, outputFile, System.nanoTime() - start);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return ConversionResult.cancelled(inputFile, outputFile);
+        } catch (RuntimeException re) {
+            //The output may be partially written
+            outputFile.delete();
+            return ConversionResult.failure(inputFile, outputFile, System.nanoTime() - start, re);
+        }
+    }
+
+    /**
+     * Validates all the input files against the grammar of the given tool, without changing the state of the tool
+     *
+     * @param inputMetric the tool
+     * @param inputFiles  the files to validate
+     * @return the validation result of each file, in the order of the input files
+     * @throws ValidationException when a file or a grammar can't be read, or the validation is interrupted
+     */
+    public List<ValidationResult> validateAll(final InputMetric inputMetric, List<File> inputFiles) throws ValidationException {
+        final Batch batch = new Batch();
+        List<Future<ValidationResult>> futures = new ArrayList<Future<ValidationResult>>(inputFiles.size());
+        for (int i = 0; i < inputFiles.size(); i++) {
+            final int index = i;
+            final File inputFile = inputFiles.get(i);
+            futures.add(executorService.submit(new Callable<ValidationResult>() {
+                public ValidationResult call() throws InterruptedException {
+                    if (!batch.start(index)) {
+                        return null;
+                    }
+                    Semaphore permits = documentPermits;
+                    if (permits != null) {
+                        permits.acquire();
+                    }
+                    try {
+                        if (batch.isStopped()) {
+                            return null;
+                        }
+                        return inputMetric.validateInput(inputFile);
+                    } finally {
+                        if (permits != null) {
+                            permits.release();
+                        }
+                    }
+                }
+            }));
+        }
+
+        List<ValidationResult> results = new ArrayList<ValidationResult>(inputFiles.size());
+        try {
+            for (Future<ValidationResult> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ValidationException("The validation of the input files is interrupted.", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+            throw new ValidationException(ee.getCause());
+        } finally {
+            //Nothing is left running after a failure
+            batch.stop();
+            for (int i = 0; i < futures.size(); i++) {
+                if (batch.isStarted(i)) {
+                    try {
+                        await(futures.get(i));
+                    } catch (ExecutionException ee) {
+                        //Only the first failure is reported
+                    }
+                } else {
+                    futures.get(i).cancel(false);
+                }
+            }
+        }
+        return results;
+    }
+
+    private ConversionResult getResult(Future<ConversionResult> future, File inputFile, File outputFile) {
+        try {
+            return await(future);
+        } catch (ExecutionException ee) {
+            return ConversionResult.failure(inputFile, outputFile, 0, ee.getCause());
+        } catch (CancellationException ce) {
+            return ConversionResult.cancelled(inputFile, outputFile);
+        }
+    }
+
+    /**
+     * Waits for the end of a task, even if the current thread is interrupted
+     * The interruption is restored once the task is done.
+     */
+    private static <T> T await(Future<T> future) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * State of the tasks of a batch: once the batch is stopped, no task can start
+     */
+    private static class Batch {
+
+        private final Set<Integer> startedTasks = new HashSet<Integer>();
+
+        private boolean stopped;
+
+        synchronized boolean start(int task) {
+            if (stopped) {
+                return false;
+            }
+            startedTasks.add(task);
+            return true;
+        }
+
+        synchronized void stop() {
+            stopped = true;
+        }
+
+        synchronized boolean isStopped() {
+            return stopped;
+        }
+
+        synchronized boolean isStarted(int task) {
+            return startedTasks.contains(task);
+        }
+    }
+
+    /**
+     * Shuts down the pool of threads created by the engine
+     */
+    public void close() {
+        if (ownExecutor) {
+            executorService.shutdownNow();
+        }
+    }
+}
@@ -24,7 +24,9 @@
 package com.thalesgroup.dtkit.metrics.model;
 
 import com.sun.xml.bind.AnyTypeAdapter;
+import com.thalesgroup.dtkit.util.converter.Compression;
 import com.thalesgroup.dtkit.util.converter.ConversionException;
+import com.thalesgroup.dtkit.util.converter.ConversionResult;
 import com.thalesgroup.dtkit.util.validator.ValidationError;
 import com.thalesgroup.dtkit.util.validator.ValidationException;
 import org.codehaus.jackson.annotate.JsonIgnore;
@@ -33,11 +35,12 @@ import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
-import java.io.File;
-import java.io.Serializable;
+import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 
 @SuppressWarnings("unused")
@@ -46,7 +49,7 @@ import java.util.Map;
 // - All implementation must be explicitly added in the JAXBContext
 @XmlJavaTypeAdapter(AnyTypeAdapter.class)
 @XmlAccessorType(XmlAccessType.PROPERTY)
-public abstract class InputMetric implements Serializable {
+public abstract class InputMetric implements Serializable, Cloneable {
 
     private String toolName;
     private String toolVersion;
@@ -140,6 +143,19 @@ public abstract class InputMetric implements Serializable {
         return outputFormatType;
     }
 
+    /**
+     * Gives the version of the conversion process, used to detect the converted files to convert again
+     * Subclasses must include in the version everything changing the conversion result beyond the tool identity.
+     *
+     * @return the converter version
+     */
+    @JsonIgnore
+    public String getConverterVersion() {
+        return getClass().getName() + ":" + getToolName() + ":" + getToolVersion()
+                + ":" + (getOutputFormatType() == null ? null : getOutputFormatType().getKey())
+                + ":" + (getOutputFormatType() == null ? null : getOutputFormatType().getVersion());
+    }
+
     /**
      * Convert an input file to an output file
      * Give your conversion process
@@ -170,6 +186,81 @@ public abstract class InputMetric implements Serializable {
      */
     public abstract void convert(File inputFile, File outFile, Map<String, Object> params) throws ConversionException;
 
+    /**
+     * Convert an input file to an output file in the background, with the default asynchronous engine
+     * The tool must not be modified while the conversion runs.
+     *
+     * @param inputFile the input file to convert
+     * @param outFile   the output file to convert
+     * @param params    the conversion parameters
+     * @return the future result of the conversion, a failure carrying the error if the conversion fails
+     * @throws RejectedExecutionException when the engine can't accept the conversion, see {@link AsyncConversionEngine}
+     */
+    public Future<ConversionResult> convertAsync(File inputFile, File outFile, Map<String, Object> params) throws RejectedExecutionException {
+        return AsyncConversionEngine.getDefault().convertAsync(this, inputFile, outFile, params);
+    }
+
+    /**
+     * Convert an input stream to an output stream
+     * The streams are not closed.
+     * By default, the input is decompressed if needed, copied to a temporary file and converted with {@link #convert(File, File, Map)};
+     * subclasses able to convert streams directly should override this method.
+     *
+     * @param inputStream  the input stream to convert
+     * @param outputStream the output stream receiving the conversion result
+     * @param params       the conversion parameters
+     * @throws com.thalesgroup.dtkit.util.converter.ConversionException
+     *          an application Exception to throw when there is an error of conversion
+     *          The exception is catched by the API client (as Hudson plugin)
+     */
+    public void convert(InputStream inputStream, OutputStream outputStream, Map<String, Object> params) throws ConversionException {
+        File inputFile = null;
+        File outFile = null;
+        try {
+            inputFile = File.createTempFile("input", ".xml");
+            outFile = File.createTempFile("output", ".xml");
+            copy(Compression.decompressing(inputStream), inputFile);
+            convert(inputFile, outFile, params);
+            copy(outFile, outputStream);
+        } catch (IOException ioe) {
+            throw new ConversionException("Conversion Error", ioe);
+        } finally {
+            if (inputFile != null) {
+                inputFile.delete();
+            }
+            if (outFile != null) {
+                outFile.delete();
+            }
+        }
+    }
+
+    private void copy(InputStream inputStream, File file) throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            copy(inputStream, outputStream);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private void copy(File file, OutputStream outputStream) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            copy(inputStream, outputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, length);
+        }
+        outputStream.flush();
+    }
+
     /*
     *  Gives the validation process for the input file
     *
@@ -186,6 +277,38 @@ public abstract class InputMetric implements Serializable {
 
     public abstract boolean validateOutputFile(File inputXMLFile) throws ValidationException;
 
+    /**
+     * Validates the input file without changing the state of the tool, so that the tool can be shared by
+     * concurrent validations
+     * By default, a copy of the tool runs {@link #validateInputFile(File)}; subclasses should override this
+     * method with a stateless validation.
+     *
+     * @param inputXMLFile the input file to validate
+     * @return the validation result
+     * @throws ValidationException when the grammar can't be read
+     */
+    public ValidationResult validateInput(File inputXMLFile) throws ValidationException {
+        InputMetric inputMetric = copy();
+        boolean valid = inputMetric.validateInputFile(inputXMLFile);
+        return new ValidationResult(valid, inputMetric.getInputValidationErrors());
+    }
+
+    /**
+     * Validates the output file without changing the state of the tool, so that the tool can be shared by
+     * concurrent validations
+     * By default, a copy of the tool runs {@link #validateOutputFile(File)}; subclasses should override this
+     * method with a stateless validation.
+     *
+     * @param outputXMLFile the output file to validate
+     * @return the validation result
+     * @throws ValidationException when the grammar can't be read
+     */
+    public ValidationResult validateOutput(File outputXMLFile) throws ValidationException {
+        InputMetric inputMetric = copy();
+        boolean valid = inputMetric.validateOutputFile(outputXMLFile);
+        return new ValidationResult(valid, inputMetric.getOutputValidationErrors());
+    }
+
     /**
      * Gets all input validation errors
      *
@@ -214,6 +337,24 @@ public abstract class InputMetric implements Serializable {
         this.outputValidationErrors = outputValidationErrors;
     }
 
+    /**
+     * Creates a copy of the tool without validation errors, much cheaper than a new instance created by reflection
+     * The configuration of the tool is shared with the copy. Subclasses holding a mutable state must override
+     * this method to copy their state.
+     *
+     * @return the copy
+     */
+    public InputMetric copy() {
+        try {
+            InputMetric copy = (InputMetric) clone();
+            copy.inputValidationErrors = new ArrayList<ValidationError>();
+            copy.outputValidationErrors = new ArrayList<ValidationError>();
+            return copy;
+        } catch (CloneNotSupportedException cnse) {
+            throw new IllegalStateException(cnse);
+        }
+    }
+
     /**
      * --------------------------------------------------------
      * <p/>
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.metrics.model;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Base class of the tools whose reports are already in the JUnit format, copied and normalized by streaming
+ * <p/>
+ * The JUnit elements are copied as they are, with the following normalizations:
+ * <ul>
+ * <li>the elements unknown to the JUnit format are removed with their content</li>
+ * <li>the text between the structural elements (testsuites, testsuite, testcase, properties) is removed</li>
+ * <li>the content of the failure, error, skipped, system-out and system-err elements is reduced to its text</li>
+ * <li>the attributes with a namespace, such as xsi:noNamespaceSchemaLocation, are removed</li>
+ * <li>the times are written with a '.' decimal separator and without thousands separator, a testcase without
+ * time gets a time of 0, see {@link #normalizeTime(String)}</li>
+ * </ul>
+ * Subclasses give the tool identity and the output format.
+ */
+@SuppressWarnings("unused")
+public abstract class InputMetricJUnitStAX extends InputMetricStAX {
+
+    private static final Set<String> STRUCTURE_ELEMENTS = new HashSet<String>(Arrays.asList(
+            "testsuites", "testsuite", "testcase", "properties"));
+
+    private static final Set<String> TEXT_ELEMENTS = new HashSet<String>(Arrays.asList(
+            "property", "failure", "error", "skipped", "system-out", "system-err"));
+
+    private static final Pattern COMMA_GROUPED_TIME = Pattern.compile("-?[1-9]\\d{0,2}(,\\d{3})+(\\.\\d*)?");
+
+    private static final Pattern DOT_GROUPED_TIME = Pattern.compile("-?[1-9]\\d{0,2}(\\.\\d{3})+,\\d*");
+
+    private static final Pattern COMMA_DECIMAL_TIME = Pattern.compile("-?\\d*,\\d*");
+
+    @Override
+    protected void convert(XMLStreamReader reader, XMLStreamWriter writer, Map<String, Object> params) throws XMLStreamException {
+        int event = nextElement(reader);
+        if (event != XMLStreamConstants.START_ELEMENT
+                || !("testsuites".equals(reader.getLocalName()) || "testsuite".equals(reader.getLocalName()))) {
+            throw new XMLStreamException("The input is not a JUnit report.", reader.getLocation());
+        }
+        int depth = 0;
+        do {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if (STRUCTURE_ELEMENTS.contains(name)) {
+                    writer.writeStartElement(name);
+                    copyJUnitAttributes(reader, writer);
+                    depth++;
+                } else if (TEXT_ELEMENTS.contains(name)) {
+                    writer.writeStartElement(name);
+                    copyJUnitAttributes(reader, writer);
+                    copyTextContent(reader, writer);
+                    writer.writeEndElement();
+                } else {
+                    skipElement(reader);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                writer.writeEndElement();
+                depth--;
+            }
+        } while (depth > 0 && (event = nextElement(reader)) != XMLStreamConstants.END_DOCUMENT);
+    }
+
+    private static void copyJUnitAttributes(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        boolean testcase = "testcase".equals(reader.getLocalName());
+        boolean timed = false;
+        for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+            String namespaceURI = reader.getAttributeNamespace(i);
+            if (namespaceURI != null && namespaceURI.length() != 0) {
+                continue;
+            }
+            String name = reader.getAttributeLocalName(i);
+            if ("time".equals(name) && (testcase || "testsuite".equals(reader.getLocalName()))) {
+                writer.writeAttribute(name, normalizeTime(reader.getAttributeValue(i)));
+                timed = true;
+            } else {
+                writer.writeAttribute(name, reader.getAttributeValue(i));
+            }
+        }
+        if (testcase && !timed) {
+            writer.writeAttribute("time", "0");
+        }
+    }
+
+    /**
+     * Writes the text content of the current element, and leaves the reader on the end of the element
+     */
+    private static void copyTextContent(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    copyText(reader, writer);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Normalizes a time written with the separators of a locale to a decimal with a '.' separator
+     * <ul>
+     * <li>commas separating groups of three digits are thousands separators: 1,234 and 1,234.5 give 1234 and
+     * 1234.5</li>
+     * <li>dots separating groups of three digits before a comma are thousands separators, the comma is the decimal
+     * separator: 1.234,5 gives 1234.5</li>
+     * <li>otherwise a single comma is the decimal separator: 1,5 and 0,123 give 1.5 and 0.123</li>
+     * </ul>
+     * A time matching none of these forms is kept as it is, to be reported by the validation of the output.
+     *
+     * @param time the time given by the report
+     * @return the normalized time, 0 for an empty time
+     */
+    protected static String normalizeTime(String time) {
+        String value = time.trim();
+        if (value.length() == 0) {
+            return "0";
+        }
+        if (value.indexOf(',') == -1) {
+            return value;
+        }
+        if (COMMA_GROUPED_TIME.matcher(value).matches()) {
+            return value.replace(",", "");
+        }
+        if (DOT_GROUPED_TIME.matcher(value).matches()) {
+            return value.replace(".", "").replace(',', '.');
+        }
+        if (COMMA_DECIMAL_TIME.matcher(value).matches()) {
+            return value.replace(',', '.');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,343 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.metrics.model;
+
+import com.thalesgroup.dtkit.util.converter.Compression;
+import com.thalesgroup.dtkit.util.converter.ConversionException;
+import com.thalesgroup.dtkit.util.converter.FileSourceFactory;
+import com.thalesgroup.dtkit.util.validator.SchemaKey;
+import com.thalesgroup.dtkit.util.validator.ValidationError;
+import com.thalesgroup.dtkit.util.validator.ValidationException;
+import com.thalesgroup.dtkit.util.validator.ValidationService;
+import org.codehaus.jackson.annotate.JsonIgnore;
+
+import javax.xml.stream.*;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Base class of the tools converted in Java by streaming, without XSL
+ * <p/>
+ * The input is read with a StAX reader and the result is written with a StAX writer while the input is read: no tree
+ * is built, and the memory used doesn't depend on the size of the report. This fits the formats whose conversion is
+ * an element to element mapping, for which a full XSLT pass is a waste.
+ * <p/>
+ * Subclasses implement {@link #convert(XMLStreamReader, XMLStreamWriter, Map)} with the helpers of this class
+ * ({@link #nextElement(XMLStreamReader)}, {@link #copyAttributes(XMLStreamReader, XMLStreamWriter)},
+ * {@link #copyElement(XMLStreamReader, XMLStreamWriter)}, {@link #skipElement(XMLStreamReader)}).
+ * The input is validated against the xsds given by {@link #getInputXsdNameList()}, if any, and the output against
+ * the xsds of the output format.
+ */
+@SuppressWarnings("unused")
+public abstract class InputMetricStAX extends InputMetricOther {
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        XML_INPUT_FACTORY.setXMLResolver(new XMLResolver() {
+            public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace) {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+        });
+    }
+
+    /**
+     * Gets the Class (namespace) of the input xsd resources
+     *
+     * @return the resource class (for loading)
+     */
+    @JsonIgnore
+    public Class getInputXsdClass() {
+        return this.getClass();
+    }
+
+    /**
+     * Gives the xsd names of the input files, relative to {@link #getInputXsdClass()}
+     *
+     * @return the xsd names, null if the input files are not validated
+     */
+    @JsonIgnore
+    public String[] getInputXsdNameList() {
+        return null;
+    }
+
+    /**
+     * Converts the input document, from its start to its end
+     * The reader is positioned on the start of the document, and the start and end of the output document are
+     * written by the caller.
+     *
+     * @param reader the input document
+     * @param writer the output document
+     * @param params the conversion parameters, may be null
+     * @throws XMLStreamException when the input can't be read or the output can't be written
+     */
+    protected abstract void convert(XMLStreamReader reader, XMLStreamWriter writer, Map<String, Object> params) throws XMLStreamException;
+
+    @Override
+    public void convert(File inputFile, File outFile, Map<String, Object> params) throws ConversionException {
+        InputStream inputStream = null;
+        OutputStream outputStream = null;
+        try {
+            inputStream = FileSourceFactory.newInputStream(inputFile);
+            outputStream = FileSourceFactory.newOutputStream(outFile);
+            convertStream(inputStream, outputStream, inputFile.toURI().toString(), params);
+            outputStream.close();
+            outputStream = null;
+        } catch (IOException ioe) {
+            throw new ConversionException("Conversion Error", ioe);
+        } finally {
+            FileSourceFactory.close(inputStream);
+            FileSourceFactory.closeOrFail(outputStream);
+        }
+    }
+
+    /**
+     * Converts the input stream while it is read, the streams are not closed
+     */
+    @Override
+    public void convert(InputStream inputStream, OutputStream outputStream, Map<String, Object> params) throws ConversionException {
+        try {
+            convertStream(Compression.decompressing(inputStream), outputStream, null, params);
+        } catch (IOException ioe) {
+            throw new ConversionException("Conversion Error", ioe);
+        }
+    }
+
+    private void convertStream(InputStream inputStream, OutputStream outputStream, String systemId, Map<String, Object> params) throws ConversionException {
+        XMLStreamReader reader = null;
+        XMLStreamWriter writer = null;
+        try {
+            BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(outputStream, 64 * 1024);
+            //The factories are not guaranteed to be thread safe
+            synchronized (XML_INPUT_FACTORY) {
+                reader = XML_INPUT_FACTORY.createXMLStreamReader(systemId, inputStream);
+            }
+            synchronized (XML_OUTPUT_FACTORY) {
+                writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(bufferedOutputStream, "UTF-8");
+            }
+            writer.writeStartDocument("UTF-8", "1.0");
+            convert(reader, writer, params);
+            writer.writeEndDocument();
+            writer.flush();
+            bufferedOutputStream.flush();
+        } catch (XMLStreamException xse) {
+            throw new ConversionException("Conversion Error", xse);
+        } catch (IOException ioe) {
+            throw new ConversionException("Conversion Error", ioe);
+        } finally {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+                if (writer != null) {
+                    writer.close();
+                }
+            } catch (XMLStreamException xse) {
+                //The underlying streams are closed by the caller
+            }
+        }
+    }
+
+    /**
+     * Moves to the next start or end of element, skipping the text, comments and processing instructions
+     *
+     * @param reader the input document
+     * @return the event of the reached element, {@link XMLStreamConstants#END_DOCUMENT} at the end of the document
+     * @throws XMLStreamException when the input can't be read
+     */
+    protected static int nextElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_ELEMENT) {
+                return event;
+            }
+        }
+        return XMLStreamConstants.END_DOCUMENT;
+    }
+
+    /**
+     * Writes the start of the current element of the reader, with its name unchanged
+     *
+     * @param reader the input document, on a start of element
+     * @param writer the output document
+     * @throws XMLStreamException when the input can't be read or the output can't be written
+     */
+    protected static void copyStartElement(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        String namespaceURI = reader.getNamespaceURI();
+        if (namespaceURI == null || namespaceURI.length() == 0) {
+            writer.writeStartElement(reader.getLocalName());
+        } else {
+            String prefix = reader.getPrefix();
+            writer.writeStartElement(prefix == null ? "" : prefix, reader.getLocalName(), namespaceURI);
+        }
+        for (int i = 0, count = reader.getNamespaceCount(); i < count; i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            if (prefix == null || prefix.length() == 0) {
+                writer.writeDefaultNamespace(reader.getNamespaceURI(i));
+            } else {
+                writer.writeNamespace(prefix, reader.getNamespaceURI(i));
+            }
+        }
+    }
+
+    /**
+     * Copies the attributes of the current element of the reader
+     *
+     * @param reader the input document, on a start of element
+     * @param writer the output document, just after the start of an element
+     * @throws XMLStreamException when the input can't be read or the output can't be written
+     */
+    protected static void copyAttributes(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+            String namespaceURI = reader.getAttributeNamespace(i);
+            if (namespaceURI == null || namespaceURI.length() == 0) {
+                writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            } else {
+                writer.writeAttribute(reader.getAttributePrefix(i), namespaceURI, reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+        }
+    }
+
+    /**
+     * Copies the text of the current event of the reader, without copying the characters
+     *
+     * @param reader the input document, on a text event
+     * @param writer the output document
+     * @throws XMLStreamException when the input can't be read or the output can't be written
+     */
+    protected static void copyText(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+    }
+
+    /**
+     * Copies the current element of the reader with all its content
+     * The reader is left on the end of the element.
+     *
+     * @param reader the input document, on a start of element
+     * @param writer the output document
+     * @throws XMLStreamException when the input can't be read or the output can't be written
+     */
+    protected static void copyElement(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        int depth = 0;
+        do {
+            switch (reader.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    copyStartElement(reader, writer);
+                    copyAttributes(reader, writer);
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    writer.writeEndElement();
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    copyText(reader, writer);
+                    break;
+                case XMLStreamConstants.CDATA:
+                    writer.writeCData(reader.getText());
+                    break;
+                default:
+                    //Comments and processing instructions are dropped
+                    break;
+            }
+        } while (depth > 0 && reader.hasNext() && reader.next() != XMLStreamConstants.END_DOCUMENT);
+    }
+
+    /**
+     * Skips the current element of the reader with all its content
+     * The reader is left on the end of the element.
+     *
+     * @param reader the input document, on a start of element
+     * @throws XMLStreamException when the input can't be read
+     */
+    protected static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = nextElement(reader);
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /*
+    *  Validates the input file against the current grammar of the tool
+    */
+    @Override
+    public boolean validateInputFile(File inputXMLFile) throws ValidationException {
+        ValidationResult result = validateInput(inputXMLFile);
+        setInputValidationErrors(new ArrayList<ValidationError>(result.getErrors()));
+        return result.isValid();
+    }
+
+    /*
+     *  Validates the input file against the current grammar of the tool, without changing the state of the tool
+     */
+    @Override
+    public ValidationResult validateInput(File inputXMLFile) throws ValidationException {
+        if (getInputXsdNameList() == null) {
+            return ValidationResult.VALID;
+        }
+        return new ValidationResult(newValidationService().processValidation(
+                SchemaKey.fromResources(getInputXsdClass(), getInputXsdNameList()), inputXMLFile));
+    }
+
+    /*
+     *  Validates the output file against the current grammar of the format
+     */
+    @Override
+    public boolean validateOutputFile(File inputXMLFile) throws ValidationException {
+        ValidationResult result = validateOutput(inputXMLFile);
+        setOutputValidationErrors(new ArrayList<ValidationError>(result.getErrors()));
+        return result.isValid();
+    }
+
+    /*
+     *  Validates the output file against the current grammar of the format, without changing the state of the tool
+     */
+    @Override
+    public ValidationResult validateOutput(File outputXMLFile) throws ValidationException {
+        if (getOutputFormatType() == null || getOutputFormatType().getXsdNameList() == null) {
+            return ValidationResult.VALID;
+        }
+        return new ValidationResult(newValidationService().processValidation(
+                SchemaKey.fromResources(getOutputFormatType().getClass(), getOutputFormatType().getXsdNameList()), outputXMLFile));
+    }
+
+    private ValidationService newValidationService() {
+        ValidationService validationService = new ValidationService();
+        validationService.setLabel(getLabel());
+        return validationService;
+    }
+}
@@ -25,15 +25,28 @@ package com.thalesgroup.dtkit.metrics.model;
 
 import com.thalesgroup.dtkit.util.converter.ConversionException;
 import com.thalesgroup.dtkit.util.converter.ConversionService;
+import com.thalesgroup.dtkit.util.converter.FileSourceFactory;
+import com.thalesgroup.dtkit.util.converter.MemoryBudget;
+import com.thalesgroup.dtkit.util.converter.SAXSourceFactory;
+import com.thalesgroup.dtkit.util.converter.XslKey;
+import com.thalesgroup.dtkit.util.validator.SchemaKey;
+import com.thalesgroup.dtkit.util.validator.ValidationError;
 import com.thalesgroup.dtkit.util.validator.ValidationException;
+import com.thalesgroup.dtkit.util.validator.ValidationHandler;
 import com.thalesgroup.dtkit.util.validator.ValidationService;
+import net.sf.saxon.s9api.Serializer;
 import org.codehaus.jackson.annotate.JsonIgnore;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 
-import javax.xml.transform.Source;
-import javax.xml.transform.stream.StreamSource;
+import javax.xml.transform.sax.SAXSource;
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 @SuppressWarnings("unused")
 public abstract class InputMetricXSL extends InputMetric {
@@ -171,16 +184,77 @@ public abstract class InputMetricXSL extends InputMetric {
         return "xunit/" + getToolName() + "/" + getToolVersion();
     }
 
+    /**
+     * Gives the identity of the current xsl of the tool, used to share its compiled form between conversions
+     *
+     * @return the xsl key
+     */
+    @JsonIgnore
+    public XslKey getXslKey() {
+        if (getXslFile() != null) {
+            return XslKey.fromFile(getXslFile());
+        }
+        return XslKey.fromResource(getXslResourceClass(), getXslName());
+    }
+
+    /**
+     * Tells whether the current xsl of the tool can be applied record by record.
+     * A streamable xsl transforms each child of the input root element independently of its siblings,
+     * so large reports are converted without building the whole input document in memory.
+     *
+     * @return true if the xsl is streamable, false by default
+     */
+    @JsonIgnore
+    public boolean isXslStreamable() {
+        return false;
+    }
+
+    /**
+     * Gives the ratio between the heap used by an input document of the tool and the size of its file,
+     * used to estimate the memory needed by a conversion, see {@link MemoryBudget}.
+     * Tools whose reports are mostly made of small elements and attributes need a larger factor.
+     *
+     * @return the expansion factor, {@link MemoryBudget#DEFAULT_EXPANSION_FACTOR} by default
+     */
+    @JsonIgnore
+    public double getMemoryExpansionFactor() {
+        return MemoryBudget.DEFAULT_EXPANSION_FACTOR;
+    }
+
+    /**
+     * The converter version includes a hash of the content of the current xsl of the tool and of its modules
+     *
+     * @return the converter version
+     */
+    @Override
+    @JsonIgnore
+    public String getConverterVersion() {
+        return super.getConverterVersion() + ":" + getXslKey().computeDigest();
+    }
+
     /*
      *  Convert the input file against the current xsl of the tool and put the result in the outFile
      */
     @Override
     public void convert(File inputFile, File outFile, Map<String, Object> params) throws ConversionException {
-        ConversionService conversionService = new ConversionService();
-        if (getXslFile() == null) {
-            conversionService.convert(new StreamSource(this.getXslResourceClass().getResourceAsStream(this.getXslName())), inputFile, outFile, params);
+        ConversionService conversionService = newConversionService();
+        if (isXslStreamable()) {
+            conversionService.convertStreaming(getXslKey(), inputFile, outFile, params);
         } else {
-            conversionService.convert(getXslFile(), inputFile, outFile, params);
+            conversionService.convert(getXslKey(), inputFile, outFile, params);
+        }
+    }
+
+    /*
+     *  Convert the input stream against the current xsl of the tool and write the result in the output stream
+     */
+    @Override
+    public void convert(InputStream inputStream, OutputStream outputStream, Map<String, Object> params) throws ConversionException {
+        ConversionService conversionService = newConversionService();
+        if (isXslStreamable()) {
+            conversionService.convertStreaming(getXslKey(), new InputSource(inputStream), outputStream, params);
+        } else {
+            conversionService.convert(getXslKey(), new InputSource(inputStream), outputStream, params);
         }
     }
 
@@ -203,8 +277,8 @@ public abstract class InputMetricXSL extends InputMetric {
      *          The exception is catched by the API client (as Hudson plugin)
      */
     public void convert(File inputFile, File outFile, File externalXsl, Map<String, Object> params) throws ConversionException {
-        ConversionService conversionService = new ConversionService();
-        conversionService.convert(externalXsl, inputFile, outFile, params);
+        ConversionService conversionService = newConversionService();
+        conversionService.convert(XslKey.fromFile(externalXsl), inputFile, outFile, params);
     }
 
     /**
@@ -221,8 +295,39 @@ public abstract class InputMetricXSL extends InputMetric {
      *          The exception is catched by the API client (as Hudson plugin)
      */
     public void convert(File inputFile, File outFile, String externalXslContent, Map<String, Object> params) throws ConversionException {
-        ConversionService conversionService = new ConversionService();
-        conversionService.convert(new StreamSource(new StringReader(externalXslContent)), inputFile, outFile, params);
+        ConversionService conversionService = newConversionService();
+        conversionService.convert(XslKey.fromContent(externalXslContent), inputFile, outFile, params);
+    }
+
+    /**
+     * Converts an input file with the current xsl of several tools reading the same input format, for example to
+     * publish a report both as test results and as quality metrics.
+     * The input is parsed once for all the tools, see {@link ConversionService#convertMultiple(File, Map, Map, ExecutorService)};
+     * the streamable xsls are applied to the parsed input as well.
+     *
+     * @param inputFile the input file to convert
+     * @param outputs   the output file of each tool
+     * @param params    the conversion parameters, given to all the tools
+     * @param executor  the executor running the conversions concurrently, null to run them in the calling thread
+     * @throws ConversionException an application Exception to throw when there is an error of conversion
+     */
+    public static void convertMultiple(File inputFile, Map<InputMetricXSL, File> outputs, Map<String, Object> params, ExecutorService executor) throws ConversionException {
+        if (outputs.isEmpty()) {
+            return;
+        }
+        ConversionService conversionService = outputs.keySet().iterator().next().newConversionService();
+        Map<XslKey, File> xslOutputs = new LinkedHashMap<XslKey, File>();
+        Map<XslKey, String> labels = new HashMap<XslKey, String>();
+        for (Map.Entry<InputMetricXSL, File> output : outputs.entrySet()) {
+            InputMetricXSL inputMetric = output.getKey();
+            // the single tree must fit the most demanding tool
+            if (inputMetric.getMemoryExpansionFactor() > conversionService.getExpansionFactor()) {
+                conversionService.setExpansionFactor(inputMetric.getMemoryExpansionFactor());
+            }
+            xslOutputs.put(inputMetric.getXslKey(), output.getValue());
+            labels.put(inputMetric.getXslKey(), inputMetric.getLabel());
+        }
+        conversionService.convertMultiple(inputFile, xslOutputs, labels, params, executor);
     }
 
     /*
@@ -230,28 +335,23 @@ public abstract class InputMetricXSL extends InputMetric {
     */
     @Override
     public boolean validateInputFile(File inputXMLFile) throws ValidationException {
+        ValidationResult result = validateInput(inputXMLFile);
+        setInputValidationErrors(new ArrayList<ValidationError>(result.getErrors()));
+        return result.isValid();
+    }
 
-        ValidationService validationService = new ValidationService();
+    /*
+     *  Validates the input file against the current grammar of the tool, without changing the state of the tool
+     */
+    @Override
+    public ValidationResult validateInput(File inputXMLFile) throws ValidationException {
 
         if ((this.getInputXsdNameList() == null) && (this.getInputXsdFileList() == null)) {
-            return true;
+            return ValidationResult.VALID;
         }
 
-        if (this.getInputXsdFileList() != null) {
-            setInputValidationErrors(validationService.processValidation(getInputXsdFileList(), inputXMLFile));
-        }
-
-        if (getInputXsdNameList() != null) {
-            StreamSource[] streamSources = new StreamSource[getInputXsdNameList().length];
-            for (int i = 0; i < streamSources.length; i++) {
-                streamSources[i] = new StreamSource(this.getInputXsdClass().getResourceAsStream(getInputXsdNameList()[i]));
-            }
-
-            setInputValidationErrors(validationService.processValidation(streamSources, inputXMLFile));
-        }
-
-
-        return getInputValidationErrors().size() == 0;
+        ValidationService validationService = newValidationService();
+        return new ValidationResult(validationService.processValidation(getInputSchemaKey(), inputXMLFile));
     }
 
     /*
@@ -260,26 +360,147 @@ public abstract class InputMetricXSL extends InputMetric {
 
     @Override
     public boolean validateOutputFile(File inputXMLFile) throws ValidationException {
+        ValidationResult result = validateOutput(inputXMLFile);
+        setOutputValidationErrors(new ArrayList<ValidationError>(result.getErrors()));
+        return result.isValid();
+    }
+
+    /*
+     *  Validates the output file against the current grammar of the format, without changing the state of the tool
+     */
+    @Override
+    public ValidationResult validateOutput(File outputXMLFile) throws ValidationException {
 
         //If no format is specified, exit validation and returns true
         if (this.getOutputFormatType() == null) {
-            return true;
+            return ValidationResult.VALID;
         }
 
         //If there no given xsd, exit validation and returns true
         if (this.getOutputXsdNameList() == null) {
-            return true;
+            return ValidationResult.VALID;
         }
 
         //Validate given XSD
-        Source[] sources = new Source[getOutputXsdNameList().length];
-        for (int i = 0; i < sources.length; i++) {
-            sources[i] = new StreamSource(this.getOutputFormatType().getClass().getResourceAsStream(getOutputXsdNameList()[i]));
+        ValidationService validationService = newValidationService();
+        return new ValidationResult(validationService.processValidation(getOutputSchemaKey(), outputXMLFile));
+    }
+
+    /**
+     * Gives the identity of the grammar of the input files, used to share its compiled form between validations
+     * The xsd names have precedence over the xsd files.
+     *
+     * @return the schema key, null if there is no input grammar
+     */
+    @JsonIgnore
+    public SchemaKey getInputSchemaKey() {
+        if (getInputXsdNameList() != null) {
+            return SchemaKey.fromResources(this.getInputXsdClass(), getInputXsdNameList());
+        }
+        if (getInputXsdFileList() != null) {
+            return SchemaKey.fromFiles(getInputXsdFileList());
         }
+        return null;
+    }
+
+    /**
+     * Gives the identity of the grammar of the output format, used to share its compiled form between validations
+     *
+     * @return the schema key, null if there is no output grammar
+     */
+    @JsonIgnore
+    public SchemaKey getOutputSchemaKey() {
+        if (getOutputFormatType() == null || getOutputXsdNameList() == null) {
+            return null;
+        }
+        return SchemaKey.fromResources(this.getOutputFormatType().getClass(), getOutputXsdNameList());
+    }
+
+    /**
+     * Validates, converts and validates the result in a single pass
+     * The input file is validated while it is parsed for the conversion and the result is validated while it
+     * is written; the input file is read once and the output file written once.
+     * The conversion is done even if the input file is not valid: the caller decides what to do with the output
+     * file from the validation errors, available through {@link #getInputValidationErrors()} and
+     * {@link #getOutputValidationErrors()}.
+     *
+     * @param inputFile the input file to convert
+     * @param outFile   the output file to convert
+     * @param params    the conversion parameters
+     * @return true if both the input and the output files are valid, false otherwise
+     * @throws ConversionException an application Exception to throw when there is an error of conversion
+     * @throws ValidationException an application Exception to throw when a grammar can't be read
+     * @see #process(File, File, Map)
+     */
+    public boolean validateAndConvert(File inputFile, File outFile, Map<String, Object> params) throws ConversionException, ValidationException {
+        ValidatedConversionResult result = process(inputFile, outFile, params);
+        setInputValidationErrors(new ArrayList<ValidationError>(result.getInputValidation().getErrors()));
+        setOutputValidationErrors(new ArrayList<ValidationError>(result.getOutputValidation().getErrors()));
+        return result.isValid();
+    }
+
+    /**
+     * Validates, converts and validates the result in a single pass, without changing the state of the tool
+     * The tool can be shared by concurrent conversions, the validation errors are given by the returned result.
+     *
+     * @param inputFile the input file to convert
+     * @param outFile   the output file to convert
+     * @param params    the conversion parameters
+     * @return the validation results of the input and the output files
+     * @throws ConversionException an application Exception to throw when there is an error of conversion
+     * @throws ValidationException an application Exception to throw when a grammar can't be read
+     */
+    public ValidatedConversionResult process(File inputFile, File outFile, Map<String, Object> params) throws ConversionException, ValidationException {
+        ValidationService validationService = newValidationService();
+        ConversionService conversionService = newConversionService();
+
+        ValidationHandler inputHandler = new ValidationHandler();
+        XMLReader xmlReader = SAXSourceFactory.newXMLReader();
+        SchemaKey inputSchemaKey = getInputSchemaKey();
+        if (inputSchemaKey != null) {
+            xmlReader = validationService.newValidatingXMLReader(xmlReader, inputSchemaKey, inputHandler);
+        }
+
+        MemoryBudget.Grant grant = conversionService.reserveMemory(inputFile, false);
+        InputStream fis = null;
+        OutputStream fos = null;
+        ValidationHandler outputHandler = new ValidationHandler();
+        try {
+            InputSource inputSource = FileSourceFactory.newInputSource(inputFile);
+            fis = inputSource.getByteStream();
+
+            fos = FileSourceFactory.newOutputStream(outFile);
+            SchemaKey outputSchemaKey = getOutputSchemaKey();
+            Serializer out = (outputSchemaKey == null) ? new Serializer() : validationService.newValidatingSerializer(outputSchemaKey, outputHandler);
+            conversionService.configureSerializer(out);
+            out.setOutputStream(fos);
+
+            conversionService.convert(getXslKey(), new SAXSource(xmlReader, inputSource), out, params);
+        } catch (IOException ioe) {
+            throw new ConversionException("Conversion Error", ioe);
+        } finally {
+            if (grant != null) {
+                grant.release();
+            }
+            FileSourceFactory.close(fis);
+            FileSourceFactory.closeOrFail(fos);
+        }
+
+        return new ValidatedConversionResult(inputFile, outFile,
+                new ValidationResult(inputHandler.getErrors()), new ValidationResult(outputHandler.getErrors()));
+    }
+
+    private ConversionService newConversionService() {
+        ConversionService conversionService = new ConversionService();
+        conversionService.setLabel(getLabel());
+        conversionService.setExpansionFactor(getMemoryExpansionFactor());
+        return conversionService;
+    }
 
+    private ValidationService newValidationService() {
         ValidationService validationService = new ValidationService();
-        setOutputValidationErrors(validationService.processValidation(sources, inputXMLFile));
-        return getOutputValidationErrors().size() == 0;
+        validationService.setLabel(getLabel());
+        return validationService;
     }
 
 
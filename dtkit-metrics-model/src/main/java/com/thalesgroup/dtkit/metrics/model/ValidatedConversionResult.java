@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.metrics.model;
+
+import java.io.File;
+import java.io.Serializable;
+
+/**
+ * Immutable result of the validation of an input file, of its conversion and of the validation of the output file
+ */
+public final class ValidatedConversionResult implements Serializable {
+
+    private final File inputFile;
+
+    private final File outputFile;
+
+    private final ValidationResult inputValidation;
+
+    private final ValidationResult outputValidation;
+
+    public ValidatedConversionResult(File inputFile, File outputFile, ValidationResult inputValidation, ValidationResult outputValidation) {
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.inputValidation = inputValidation;
+        this.outputValidation = outputValidation;
+    }
+
+    public File getInputFile() {
+        return inputFile;
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    public ValidationResult getInputValidation() {
+        return inputValidation;
+    }
+
+    public ValidationResult getOutputValidation() {
+        return outputValidation;
+    }
+
+    /**
+     * @return true if both the input and the output files are valid
+     */
+    public boolean isValid() {
+        return inputValidation.isValid() && outputValidation.isValid();
+    }
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.metrics.model;
+
+import com.thalesgroup.dtkit.util.validator.ValidationError;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable result of the validation of a file
+ * <p/>
+ * A result belongs to one validation call, so a tool returning results instead of storing the validation errors
+ * can be shared by concurrent validations.
+ */
+public final class ValidationResult implements Serializable {
+
+    /**
+     * The result of a file without any grammar to validate against
+     */
+    public static final ValidationResult VALID = new ValidationResult(Collections.<ValidationError>emptyList());
+
+    private final boolean valid;
+
+    private final List<ValidationError> errors;
+
+    /**
+     * Creates a result valid when there is no error
+     *
+     * @param errors the validation errors
+     */
+    public ValidationResult(List<ValidationError> errors) {
+        this(errors.isEmpty(), errors);
+    }
+
+    public ValidationResult(boolean valid, List<ValidationError> errors) {
+        this.valid = valid;
+        this.errors = Collections.unmodifiableList(new ArrayList<ValidationError>(errors));
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @return the unmodifiable list of the validation errors
+     */
+    public List<ValidationError> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.metrics.model;
+
+import com.thalesgroup.dtkit.util.converter.ConversionEngine;
+import com.thalesgroup.dtkit.util.converter.ConversionException;
+import com.thalesgroup.dtkit.util.converter.PrecompiledStylesheets;
+import com.thalesgroup.dtkit.util.converter.XslKey;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compiles ahead of time the stylesheets of the XSL tools, to cut the latency of their first conversion
+ * <p/>
+ * At build time, {@link #export(Collection, File)} writes the compiled stylesheets of the tools into a bundle,
+ * usually packaged at {@link PrecompiledStylesheets#DEFAULT_RESOURCE} where the default conversion engine finds it.
+ * The {@link #main(String[])} entry point allows to run it from the build. At plugin start, {@link #warmUp(Collection)}
+ * loads the stylesheets of the tools in the default conversion engine.
+ */
+public class XslPrecompiler {
+
+    private XslPrecompiler() {
+    }
+
+    /**
+     * Gives the stylesheets of tools
+     *
+     * @param inputMetricClasses the tool classes; the tools not converted by an XSL are ignored
+     * @return the keys of the stylesheets
+     * @throws InputMetricException when a tool can't be instantiated
+     */
+    public static List<XslKey> getXslKeys(Collection<Class<? extends InputMetric>> inputMetricClasses) throws InputMetricException {
+        Set<XslKey> xslKeys = new LinkedHashSet<XslKey>();
+        for (Class<? extends InputMetric> inputMetricClass : inputMetricClasses) {
+            InputMetric inputMetric = InputMetricFactory.getInstance(inputMetricClass);
+            if (inputMetric instanceof InputMetricXSL) {
+                xslKeys.add(((InputMetricXSL) inputMetric).getXslKey());
+            }
+        }
+        return new ArrayList<XslKey>(xslKeys);
+    }
+
+    /**
+     * Compiles the stylesheets of tools into a bundle file
+     *
+     * @param inputMetricClasses the tool classes
+     * @param bundleFile         the bundle file
+     * @throws InputMetricException when a tool can't be instantiated
+     * @throws ConversionException  when a stylesheet can't be compiled or the bundle can't be written
+     */
+    public static void export(Collection<Class<? extends InputMetric>> inputMetricClasses, File bundleFile) throws InputMetricException, ConversionException {
+        PrecompiledStylesheets.export(getXslKeys(inputMetricClasses), bundleFile);
+    }
+
+    /**
+     * Loads the stylesheets of tools in the default conversion engine, from its precompiled stylesheets when possible
+     *
+     * @param inputMetricClasses the tool classes
+     * @throws InputMetricException when a tool can't be instantiated
+     * @throws ConversionException  when a stylesheet can't be compiled
+     */
+    public static void warmUp(Collection<Class<? extends InputMetric>> inputMetricClasses) throws InputMetricException, ConversionException {
+        ConversionEngine.getDefault().warmUp(getXslKeys(inputMetricClasses));
+    }
+
+    /**
+     * Compiles the stylesheets of tools into a bundle file
+     *
+     * @param args the bundle file, followed by the class names of the tools
+     * @throws Exception when a tool can't be loaded or a stylesheet can't be compiled
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: XslPrecompiler <bundle file> <tool class>...");
+            System.exit(1);
+        }
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        List<Class<? extends InputMetric>> inputMetricClasses = new ArrayList<Class<? extends InputMetric>>();
+        for (int i = 1; i < args.length; i++) {
+            inputMetricClasses.add(Class.forName(args[i], true, classLoader).asSubclass(InputMetric.class));
+        }
+        export(inputMetricClasses, new File(args[0]));
+    }
+}
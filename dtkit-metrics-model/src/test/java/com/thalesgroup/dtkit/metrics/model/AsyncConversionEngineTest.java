@@ -0,0 +1,149 @@
+package com.thalesgroup.dtkit.metrics.model;
+
+import com.thalesgroup.dtkit.util.converter.ConversionResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+
+public class AsyncConversionEngineTest {
+
+    private File dir;
+
+    private final StubInputMetric inputMetric = new StubInputMetric();
+
+    @Before
+    public void createDirectory() throws Exception {
+        dir = File.createTempFile("async", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void deleteDirectory() {
+        inputMetric.release.countDown();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private File newInput(String name) throws Exception {
+        File inputFile = new File(dir, name);
+        Writer writer = new FileWriter(inputFile);
+        try {
+            writer.write("<report/>");
+        } finally {
+            writer.close();
+        }
+        return inputFile;
+    }
+
+    private File output(String name) {
+        return new File(dir, name + ".out");
+    }
+
+    @Test
+    public void callbackIsNotified() throws Exception {
+        AsyncConversionEngine engine = new AsyncConversionEngine(1, 1, AsyncConversionEngine.RejectionPolicy.ABORT);
+        try {
+            final AtomicReference<ConversionResult> notified = new AtomicReference<ConversionResult>();
+            final CountDownLatch done = new CountDownLatch(1);
+            Future<ConversionResult> future = engine.convertAsync(inputMetric, newInput("a.xml"), output("a"), null,
+                    new AsyncConversionEngine.Callback() {
+                        public void completed(ConversionResult result) {
+                            notified.set(result);
+                            done.countDown();
+                        }
+                    });
+
+            ConversionResult result = future.get(10, TimeUnit.SECONDS);
+            assertThat(result.isSuccess(), is(true));
+            assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+            assertThat(notified.get(), is(result));
+            assertThat(output("a").exists(), is(true));
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void failureIsInTheResult() throws Exception {
+        AsyncConversionEngine engine = new AsyncConversionEngine(1, 1, AsyncConversionEngine.RejectionPolicy.ABORT);
+        try {
+            ConversionResult result = engine.convertAsync(inputMetric, newInput("fail.xml"), output("fail"), null).get(10, TimeUnit.SECONDS);
+            assertThat(result.getStatus(), is(ConversionResult.Status.FAILURE));
+            assertThat(result.getError().getMessage().contains("fail.xml"), is(true));
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void abortPolicyRejectsWhenTheQueueIsFull() throws Exception {
+        AsyncConversionEngine engine = new AsyncConversionEngine(1, 1, AsyncConversionEngine.RejectionPolicy.ABORT);
+        try {
+            Future<ConversionResult> running = engine.convertAsync(inputMetric, newInput("slow.xml"), output("slow"), null);
+            Future<ConversionResult> queued = engine.convertAsync(inputMetric, newInput("a.xml"), output("a"), null);
+            try {
+                engine.convertAsync(inputMetric, newInput("b.xml"), output("b"), null);
+                fail("The conversion should be rejected.");
+            } catch (RejectedExecutionException ree) {
+                assertThat(engine.getRejectedCount(), is(1L));
+            }
+
+            inputMetric.release.countDown();
+            assertThat(running.get(10, TimeUnit.SECONDS).isSuccess(), is(true));
+            assertThat(queued.get(10, TimeUnit.SECONDS).isSuccess(), is(true));
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void callerRunsPolicyRunsInTheSubmittingThread() throws Exception {
+        AsyncConversionEngine engine = new AsyncConversionEngine(1, 1, AsyncConversionEngine.RejectionPolicy.CALLER_RUNS);
+        try {
+            engine.convertAsync(inputMetric, newInput("slow.xml"), output("slow"), null);
+            engine.convertAsync(inputMetric, newInput("a.xml"), output("a"), null);
+            Future<ConversionResult> rejected = engine.convertAsync(inputMetric, newInput("b.xml"), output("b"), null);
+
+            //Run by the caller, the conversion is done when the submission returns
+            assertThat(rejected.isDone(), is(true));
+            assertThat(rejected.get().isSuccess(), is(true));
+            assertThat(engine.getRejectedCount(), is(1L));
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void closeCancelsTheWaitingConversions() throws Exception {
+        AsyncConversionEngine engine = new AsyncConversionEngine(1, 1, AsyncConversionEngine.RejectionPolicy.ABORT);
+        engine.convertAsync(inputMetric, newInput("slow.xml"), output("slow"), null);
+        Future<ConversionResult> queued = engine.convertAsync(inputMetric, newInput("a.xml"), output("a"), null);
+
+        engine.close();
+        assertThat(engine.isClosed(), is(true));
+        assertThat(queued.isCancelled(), is(true));
+        try {
+            engine.convertAsync(inputMetric, newInput("b.xml"), output("b"), null);
+            fail("The conversion should be rejected.");
+        } catch (RejectedExecutionException ree) {
+            //The engine is closed
+        }
+    }
+}
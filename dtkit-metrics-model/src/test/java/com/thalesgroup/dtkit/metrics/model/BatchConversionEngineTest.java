@@ -0,0 +1,184 @@
+package com.thalesgroup.dtkit.metrics.model;
+
+import com.thalesgroup.dtkit.util.converter.BatchConversionResult;
+import com.thalesgroup.dtkit.util.converter.ConversionResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+public class BatchConversionEngineTest {
+
+    private File inputDir;
+
+    private File outputDir;
+
+    private final StubInputMetric inputMetric = new StubInputMetric();
+
+    @Before
+    public void createDirectories() throws Exception {
+        inputDir = File.createTempFile("inputs", "");
+        inputDir.delete();
+        inputDir.mkdirs();
+        outputDir = new File(inputDir, "out");
+    }
+
+    @After
+    public void deleteDirectories() {
+        delete(inputDir);
+    }
+
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private List<File> newInputs(String... names) throws Exception {
+        List<File> inputFiles = new ArrayList<File>();
+        for (String name : names) {
+            File inputFile = new File(inputDir, name);
+            inputFile.getParentFile().mkdirs();
+            Writer writer = new FileWriter(inputFile);
+            try {
+                writer.write("<report/>");
+            } finally {
+                writer.close();
+            }
+            inputFiles.add(inputFile);
+        }
+        return inputFiles;
+    }
+
+    @Test
+    public void stopOnErrorWaitsForRunningConversions() throws Exception {
+        BatchConversionEngine engine = new BatchConversionEngine(2);
+        inputMetric.failAfterSlow = new CountDownLatch(1);
+        try {
+            List<File> inputFiles = newInputs("slow.xml", "fail.xml", "a.xml", "b.xml", "c.xml", "d.xml");
+            BatchConversionResult result = engine.convertAll(inputMetric, inputFiles, outputDir, null);
+
+            //Nothing runs after the end of the batch
+            assertThat(inputMetric.running.get(), is(0));
+
+            List<ConversionResult> results = result.getResults();
+            assertThat(results.size(), is(inputFiles.size()));
+            for (int i = 0; i < results.size(); i++) {
+                assertThat(results.get(i).getInputFile(), is(inputFiles.get(i)));
+            }
+            //Running when the failure occurred, the slow conversion completed
+            assertThat(results.get(0).getStatus(), is(ConversionResult.Status.SUCCESS));
+            assertThat(results.get(1).getStatus(), is(ConversionResult.Status.FAILURE));
+            assertThat(results.get(5).getStatus(), is(ConversionResult.Status.CANCELLED));
+            assertThat(result.getFailures().size(), is(1));
+            for (ConversionResult conversionResult : results) {
+                assertThat(conversionResult.getOutputFile().exists(), is(conversionResult.isSuccess()));
+            }
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void continueOnError() throws Exception {
+        BatchConversionEngine engine = new BatchConversionEngine(2);
+        engine.setStopProcessingIfError(false);
+        try {
+            BatchConversionResult result = engine.convertAll(inputMetric, newInputs("a.xml", "fail.xml", "b.xml"), outputDir, null);
+
+            List<ConversionResult> results = result.getResults();
+            assertThat(results.get(0).getStatus(), is(ConversionResult.Status.SUCCESS));
+            assertThat(results.get(1).getStatus(), is(ConversionResult.Status.FAILURE));
+            assertThat(results.get(2).getStatus(), is(ConversionResult.Status.SUCCESS));
+            //The partial output of the failed conversion is removed
+            assertThat(results.get(1).getOutputFile().exists(), is(false));
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void maxConcurrentDocuments() throws Exception {
+        BatchConversionEngine engine = new BatchConversionEngine(4);
+        engine.setMaxConcurrentDocuments(1);
+        try {
+            BatchConversionResult result = engine.convertAll(inputMetric, newInputs("a.xml", "b.xml", "c.xml", "d.xml"), outputDir, null);
+
+            assertThat(result.isSuccess(), is(true));
+            assertThat(inputMetric.maxRunning.get(), is(1));
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void virtualThreadEngine() throws Exception {
+        boolean supported;
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            supported = true;
+        } catch (NoSuchMethodException nsme) {
+            supported = false;
+        }
+        BatchConversionEngine engine = BatchConversionEngine.newVirtualThreadEngine(2);
+        try {
+            assertThat(engine.isVirtualThreads(), is(supported));
+            BatchConversionResult result = engine.convertAll(inputMetric, newInputs("a.xml", "b.xml", "c.xml"), outputDir, null);
+            assertThat(result.isSuccess(), is(true));
+            assertThat(inputMetric.convertedCount.get(), is(3));
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void outputNamesAreUnique() throws Exception {
+        BatchConversionEngine engine = new BatchConversionEngine(2);
+        try {
+            List<File> inputFiles = newInputs("a/a.xml", "b/2-a.xml", "c/a.xml");
+            BatchConversionResult result = engine.convertAll(inputMetric, inputFiles, outputDir, null);
+
+            assertThat(result.isSuccess(), is(true));
+            Set<File> outputFiles = new HashSet<File>();
+            for (ConversionResult conversionResult : result.getResults()) {
+                assertThat(outputFiles.add(conversionResult.getOutputFile()), is(true));
+                assertThat(conversionResult.getOutputFile().exists(), is(true));
+            }
+            assertThat(outputDir.list().length, is(3));
+        } finally {
+            engine.close();
+        }
+    }
+
+    @Test
+    public void validateAll() throws Exception {
+        BatchConversionEngine engine = new BatchConversionEngine(2);
+        try {
+            List<ValidationResult> results = engine.validateAll(inputMetric, newInputs("a.xml", "fail.xml", "b.xml"));
+
+            assertThat(results.size(), is(3));
+            assertThat(results.get(0).isValid(), is(true));
+            assertThat(results.get(1).isValid(), is(false));
+            assertThat(results.get(2).isValid(), is(true));
+        } finally {
+            engine.close();
+        }
+    }
+}
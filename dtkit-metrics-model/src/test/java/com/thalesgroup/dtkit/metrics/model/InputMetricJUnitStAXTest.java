@@ -0,0 +1,254 @@
+package com.thalesgroup.dtkit.metrics.model;
+
+import com.thalesgroup.dtkit.util.converter.ConversionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+
+public class InputMetricJUnitStAXTest {
+
+    private File dir;
+
+    private final InputMetric streamingInputMetric = new JUnitInputMetric();
+
+    private final InputMetric xslInputMetric = new JUnitInputMetricXSL();
+
+    @Before
+    public void createDirectory() throws Exception {
+        dir = File.createTempFile("stax", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private File getFile(String name) throws Exception {
+        return new File(this.getClass().getResource(name).toURI());
+    }
+
+    private File newInput(String content) throws Exception {
+        File inputFile = new File(dir, "input.xml");
+        Writer writer = new FileWriter(inputFile);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        return inputFile;
+    }
+
+    private Element parse(File file) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().parse(file);
+        document.normalizeDocument();
+        removeIndentation(document.getDocumentElement());
+        return document.getDocumentElement();
+    }
+
+    /**
+     * The XSL conversion indents its output
+     */
+    private void removeIndentation(Node node) {
+        Node child = node.getFirstChild();
+        while (child != null) {
+            Node next = child.getNextSibling();
+            if (child.getNodeType() == Node.TEXT_NODE && child.getNodeValue().trim().length() == 0) {
+                node.removeChild(child);
+            } else {
+                removeIndentation(child);
+            }
+            child = next;
+        }
+    }
+
+    private Element getTestcase(Element testsuite, String name) {
+        NodeList testcases = testsuite.getElementsByTagName("testcase");
+        for (int i = 0; i < testcases.getLength(); i++) {
+            Element testcase = (Element) testcases.item(i);
+            if (name.equals(testcase.getAttribute("name"))) {
+                return testcase;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void sameOutputAsTheXslConversion() throws Exception {
+        File inputFile = getFile("junit-report.xml");
+        File streamingOutput = new File(dir, "stax.xml");
+        File xslOutput = new File(dir, "xsl.xml");
+
+        streamingInputMetric.convert(inputFile, streamingOutput, null);
+        xslInputMetric.convert(inputFile, xslOutput, null);
+
+        assertThat(parse(streamingOutput).isEqualNode(parse(xslOutput)), is(true));
+    }
+
+    @Test
+    public void normalizeTimes() throws Exception {
+        File outputFile = new File(dir, "output.xml");
+        streamingInputMetric.convert(getFile("junit-report.xml"), outputFile, null);
+
+        Element testsuite = parse(outputFile);
+        assertThat(getTestcase(testsuite, "fast").getAttribute("time"), is("1.5"));
+        assertThat(getTestcase(testsuite, "long").getAttribute("time"), is("1234.5"));
+        assertThat(getTestcase(testsuite, "blank").getAttribute("time"), is("0"));
+        assertThat(getTestcase(testsuite, "untimed").getAttribute("time"), is("0"));
+    }
+
+    private static final String[][] TIMES = {
+            {"1.5", "1.5"},
+            {"1,5", "1.5"},
+            {"0,123", "0.123"},
+            {"1,2345", "1.2345"},
+            {"1,234", "1234"},
+            {"1,234,567", "1234567"},
+            {"1,234.5", "1234.5"},
+            {"1.234,5", "1234.5"},
+            {"12.345.678,9", "12345678.9"},
+            {" 2,5 ", "2.5"},
+            {"", "0"},
+            {"1,2,3", "1,2,3"},
+            {"1.23,4", "1.23,4"}};
+
+    @Test
+    public void normalizeTimeSeparators() {
+        for (String[] time : TIMES) {
+            assertThat(time[0], InputMetricJUnitStAX.normalizeTime(time[0]), is(time[1]));
+        }
+    }
+
+    @Test
+    public void normalizeTimesAsTheXslConversion() throws Exception {
+        StringBuilder report = new StringBuilder("<testsuite name=\"s\" tests=\"0\" failures=\"0\" errors=\"0\">");
+        for (String[] time : TIMES) {
+            report.append("<testcase name=\"t\" classname=\"c\" time=\"").append(time[0]).append("\"/>");
+        }
+        File inputFile = newInput(report.append("</testsuite>").toString());
+        File streamingOutput = new File(dir, "stax.xml");
+        File xslOutput = new File(dir, "xsl.xml");
+
+        streamingInputMetric.convert(inputFile, streamingOutput, null);
+        xslInputMetric.convert(inputFile, xslOutput, null);
+
+        assertThat(parse(streamingOutput).isEqualNode(parse(xslOutput)), is(true));
+    }
+
+    @Test
+    public void copyJUnitElementsOnly() throws Exception {
+        File outputFile = new File(dir, "output.xml");
+        streamingInputMetric.convert(getFile("junit-report.xml"), outputFile, null);
+
+        Element testsuite = parse(outputFile);
+        //The unknown elements are removed with their content, as the attributes with a namespace
+        assertThat(testsuite.getElementsByTagName("testcase").getLength(), is(4));
+        assertThat(testsuite.getElementsByTagName("rerun").getLength(), is(0));
+        assertThat(testsuite.getElementsByTagName("flakyTests").getLength(), is(0));
+        assertThat(testsuite.getAttributes().getLength(), is(4));
+        assertThat(testsuite.getTextContent().contains("between"), is(false));
+
+        Element failure = (Element) getTestcase(testsuite, "untimed").getElementsByTagName("failure").item(0);
+        assertThat(failure.getAttribute("message"), is("expected:<1> but was:<2>"));
+        assertThat(failure.getTextContent(), is("java.lang.AssertionError: expected <1> but was <2>"));
+        assertThat(failure.getElementsByTagName("b").getLength(), is(0));
+        assertThat(getTestcase(testsuite, "untimed").getElementsByTagName("system-out").item(0).getTextContent(), is("output of the test"));
+    }
+
+    @Test
+    public void validateOutput() throws Exception {
+        File outputFile = new File(dir, "output.xml");
+        streamingInputMetric.convert(getFile("junit-report.xml"), outputFile, null);
+        assertThat(streamingInputMetric.validateOutput(outputFile).isValid(), is(true));
+
+        //A time the normalization can't fix is reported by the output grammar
+        streamingInputMetric.convert(newInput("<testsuite name=\"s\" tests=\"1\" failures=\"0\" errors=\"0\">"
+                + "<testcase name=\"t\" classname=\"c\" time=\"1,2,3\"/></testsuite>"), outputFile, null);
+        ValidationResult result = streamingInputMetric.validateOutput(outputFile);
+        assertThat(result.isValid(), is(false));
+        assertThat(streamingInputMetric.validateOutputFile(outputFile), is(false));
+        assertThat(streamingInputMetric.getOutputValidationErrors().isEmpty(), is(false));
+    }
+
+    @Test
+    public void rejectOtherReports() throws Exception {
+        try {
+            streamingInputMetric.convert(newInput("<report/>"), new File(dir, "output.xml"), null);
+            fail("The input is not a JUnit report.");
+        } catch (ConversionException ce) {
+            //The root element is checked
+        }
+    }
+
+    public static class JUnitInputMetric extends InputMetricJUnitStAX {
+
+        public JUnitInputMetric() {
+            setToolName("JUnit");
+            setToolVersion("N/A");
+            setToolType(InputType.TEST);
+            setOutputFormatType(new JUnitOutputMetric());
+        }
+    }
+
+    public static class JUnitInputMetricXSL extends InputMetricXSL {
+
+        public JUnitInputMetricXSL() {
+            setToolName("JUnit");
+            setToolVersion("N/A");
+            setToolType(InputType.TEST);
+            setOutputFormatType(new JUnitOutputMetric());
+        }
+
+        @Override
+        public String getXslName() {
+            return "junit-junit.xsl";
+        }
+
+        @Override
+        public String[] getInputXsdNameList() {
+            return null;
+        }
+    }
+
+    public static class JUnitOutputMetric extends AbstractOutputMetric {
+
+        public String getKey() {
+            return "junit";
+        }
+
+        public String getDescription() {
+            return "JUnit";
+        }
+
+        public String getVersion() {
+            return "1.0";
+        }
+
+        public String[] getXsdNameList() {
+            return new String[]{"junit.xsd"};
+        }
+    }
+}
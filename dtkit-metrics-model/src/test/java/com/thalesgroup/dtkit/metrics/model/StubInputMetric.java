@@ -0,0 +1,84 @@
+package com.thalesgroup.dtkit.metrics.model;
+
+import com.thalesgroup.dtkit.util.converter.ConversionException;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tool whose conversion depends on the name of the input file:
+ * a file named 'fail*' fails after writing a partial output, a file named 'slow*' waits for the release latch,
+ * the other files are converted after a short pause. A failure waits for the start of a slow conversion when
+ * {@link #failAfterSlow} is set.
+ */
+public class StubInputMetric extends InputMetricOther {
+
+    final CountDownLatch release = new CountDownLatch(1);
+
+    volatile CountDownLatch failAfterSlow = new CountDownLatch(0);
+
+    final AtomicInteger running = new AtomicInteger();
+
+    final AtomicInteger maxRunning = new AtomicInteger();
+
+    final AtomicInteger convertedCount = new AtomicInteger();
+
+    @Override
+    public void convert(File inputFile, File outFile, Map<String, Object> params) throws ConversionException {
+        int count = running.incrementAndGet();
+        synchronized (maxRunning) {
+            if (count > maxRunning.get()) {
+                maxRunning.set(count);
+            }
+        }
+        try {
+            String name = inputFile.getName();
+            if (name.startsWith("fail")) {
+                failAfterSlow.await(10, TimeUnit.SECONDS);
+                write(outFile, "<partial");
+                release.countDown();
+                throw new ConversionException("The input " + inputFile + " can't be converted.");
+            }
+            if (name.startsWith("slow")) {
+                failAfterSlow.countDown();
+                release.await(10, TimeUnit.SECONDS);
+            }
+            Thread.sleep(100);
+            write(outFile, "<converted/>");
+            convertedCount.incrementAndGet();
+        } catch (InterruptedException ie) {
+            throw new ConversionException(ie);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    private void write(File outFile, String content) {
+        try {
+            Writer writer = new FileWriter(outFile);
+            try {
+                writer.write(content);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException ioe) {
+            throw new ConversionException(ioe);
+        }
+    }
+
+    @Override
+    public boolean validateInputFile(File inputXMLFile) {
+        return !inputXMLFile.getName().startsWith("fail");
+    }
+
+    @Override
+    public boolean validateOutputFile(File inputXMLFile) {
+        return true;
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of the conversion of a set of input files
+ * The results are given in the order of the input files.
+ */
+public class BatchConversionResult implements Serializable {
+
+    private final List<ConversionResult> results;
+
+    private final long durationNanos;
+
+    public BatchConversionResult(List<ConversionResult> results, long durationNanos) {
+        this.results = Collections.unmodifiableList(new ArrayList<ConversionResult>(results));
+        this.durationNanos = durationNanos;
+    }
+
+    public List<ConversionResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the results with a given status
+     */
+    public List<ConversionResult> getResults(ConversionResult.Status status) {
+        List<ConversionResult> selected = new ArrayList<ConversionResult>();
+        for (ConversionResult result : results) {
+            if (result.getStatus() == status) {
+                selected.add(result);
+            }
+        }
+        return selected;
+    }
+
+    public List<ConversionResult> getFailures() {
+        return getResults(ConversionResult.Status.FAILURE);
+    }
+
+    /**
+     * @return true if all the files were converted
+     */
+    public boolean isSuccess() {
+        for (ConversionResult result : results) {
+            if (!result.isSuccess()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the elapsed time of the whole batch
+     */
+    public long getDurationMillis() {
+        return durationNanos / 1000000L;
+    }
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import org.xml.sax.InputSource;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression formats of the reports and of the converted files
+ * <p/>
+ * An input is recognized by its magic bytes, an output by its file name extension.
+ * The gzip format is handled by the JDK. The zstd format requires the zstd-jni library
+ * (com.github.luben:zstd-jni) on the classpath; it is loaded on demand.
+ */
+public enum Compression {
+
+    NONE {
+        @Override
+        public InputStream decompress(InputStream inputStream) {
+            return inputStream;
+        }
+
+        @Override
+        public OutputStream compress(OutputStream outputStream) {
+            return outputStream;
+        }
+    },
+
+    GZIP {
+        @Override
+        public InputStream decompress(InputStream inputStream) throws IOException {
+            return new GZIPInputStream(inputStream, BUFFER_SIZE);
+        }
+
+        @Override
+        public OutputStream compress(OutputStream outputStream) throws IOException {
+            return new GZIPOutputStream(outputStream, BUFFER_SIZE);
+        }
+    },
+
+    ZSTD {
+        @Override
+        public InputStream decompress(InputStream inputStream) throws IOException {
+            return (InputStream) newZstdStream("com.github.luben.zstd.ZstdInputStream", InputStream.class, inputStream);
+        }
+
+        @Override
+        public OutputStream compress(OutputStream outputStream) throws IOException {
+            return (OutputStream) newZstdStream("com.github.luben.zstd.ZstdOutputStream", OutputStream.class, outputStream);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAGIC_LENGTH = 4;
+
+    /**
+     * Wraps a stream to read its decompressed content
+     *
+     * @param inputStream the compressed stream
+     * @return the decompressing stream
+     * @throws IOException when the stream can't be decompressed
+     */
+    public abstract InputStream decompress(InputStream inputStream) throws IOException;
+
+    /**
+     * Wraps a stream to write a compressed content. The returned stream must be closed to complete the content.
+     *
+     * @param outputStream the stream receiving the compressed content
+     * @return the compressing stream
+     * @throws IOException when the content can't be compressed
+     */
+    public abstract OutputStream compress(OutputStream outputStream) throws IOException;
+
+    /**
+     * Recognizes a compression format from the first bytes of a content
+     *
+     * @param head   the first bytes of the content
+     * @param length the number of available bytes
+     * @return the compression format, NONE for an uncompressed content
+     */
+    public static Compression fromMagic(byte[] head, int length) {
+        if (length >= 2 && (head[0] & 0xFF) == 0x1F && (head[1] & 0xFF) == 0x8B) {
+            return GZIP;
+        }
+        if (length >= 4 && (head[0] & 0xFF) == 0x28 && (head[1] & 0xFF) == 0xB5
+                && (head[2] & 0xFF) == 0x2F && (head[3] & 0xFF) == 0xFD) {
+            return ZSTD;
+        }
+        return NONE;
+    }
+
+    /**
+     * Recognizes a compression format from a file name extension
+     *
+     * @param fileName the file name
+     * @return the compression format, NONE for a file name without a compression extension
+     */
+    public static Compression fromFileName(String fileName) {
+        String name = fileName.toLowerCase();
+        if (name.endsWith(".gz") || name.endsWith(".gzip")) {
+            return GZIP;
+        }
+        if (name.endsWith(".zst") || name.endsWith(".zstd")) {
+            return ZSTD;
+        }
+        return NONE;
+    }
+
+    /**
+     * Wraps a stream to read its content decompressed if it starts with the magic bytes of a compression format
+     *
+     * @param inputStream the stream, compressed or not
+     * @return the stream itself if its content is not compressed, a decompressing stream otherwise
+     * @throws IOException when the stream can't be read
+     */
+    public static InputStream decompressing(InputStream inputStream) throws IOException {
+        InputStream markableStream = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream, BUFFER_SIZE);
+        byte[] head = new byte[MAGIC_LENGTH];
+        markableStream.mark(MAGIC_LENGTH);
+        int length = 0;
+        int count;
+        while (length < MAGIC_LENGTH && (count = markableStream.read(head, length, MAGIC_LENGTH - length)) != -1) {
+            length += count;
+        }
+        markableStream.reset();
+        return fromMagic(head, length).decompress(markableStream);
+    }
+
+    /**
+     * Gives an input reading the decompressed content of a byte stream input
+     *
+     * @param inputSource the input, compressed or not
+     * @return the input itself if it has no byte stream or if its content is not compressed, a new input otherwise
+     * @throws IOException when the byte stream can't be read
+     */
+    public static InputSource decompressing(InputSource inputSource) throws IOException {
+        if (inputSource == null || inputSource.getByteStream() == null) {
+            return inputSource;
+        }
+        InputStream inputStream = decompressing(inputSource.getByteStream());
+        if (inputStream == inputSource.getByteStream()) {
+            return inputSource;
+        }
+        InputSource decompressedSource = new InputSource(inputStream);
+        decompressedSource.setSystemId(inputSource.getSystemId());
+        decompressedSource.setPublicId(inputSource.getPublicId());
+        decompressedSource.setEncoding(inputSource.getEncoding());
+        return decompressedSource;
+    }
+
+    private static Object newZstdStream(String className, Class<?> streamClass, Object stream) throws IOException {
+        try {
+            Constructor<?> constructor = Class.forName(className).getConstructor(streamClass);
+            return constructor.newInstance(stream);
+        } catch (ClassNotFoundException cnfe) {
+            throw new IOException("The zstd format requires the zstd-jni library (com.github.luben:zstd-jni) on the classpath.");
+        } catch (NoSuchMethodException nsme) {
+            throw new IOException("The zstd-jni library on the classpath is not supported: " + nsme.getMessage());
+        } catch (InstantiationException ie) {
+            throw new IOException("Error to create the zstd stream: " + ie.getMessage());
+        } catch (IllegalAccessException iae) {
+            throw new IOException("Error to create the zstd stream: " + iae.getMessage());
+        } catch (InvocationTargetException ite) {
+            Throwable cause = ite.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error to create the zstd stream: " + cause);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import net.sf.saxon.s9api.Processor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-lived owner of the Saxon processors used by the conversions
+ * <p/>
+ * A Saxon processor holds the configuration, the name pool and the function library; building it is costly.
+ * An engine creates a small pool of processors at initialization time and keeps them, with their cache of
+ * compiled stylesheets, until it is closed. A stylesheet is always compiled and run by the same processor,
+ * chosen from its key; several processors isolate the stylesheets from each other and reduce the
+ * contention on a single name pool. The transformers of the compiled stylesheets are pooled and reused by the
+ * next conversions.
+ * <p/>
+ * The engine must be initialized with {@link #init()} before use and released with {@link #close()}.
+ * The default engine, shared by the conversion services, is initialized on first access.
+ * <p/>
+ * To cut the latency of the first conversions, the stylesheets can be taken from a bundle compiled at build time,
+ * see {@link PrecompiledStylesheets}, and loaded eagerly with {@link #warmUp(Collection)}.
+ * The default engine uses the bundle found in the classpath at {@link PrecompiledStylesheets#DEFAULT_RESOURCE}.
+ */
+public class ConversionEngine {
+
+    public static final int DEFAULT_PROCESSOR_COUNT = 1;
+
+    private static ConversionEngine defaultEngine;
+
+    private final int processorCount;
+
+    private final int xsltCacheSize;
+
+    private int transformerPoolSize = XsltTransformerPool.DEFAULT_MAX_IDLE;
+
+    private boolean transformerThreadAffinity;
+
+    private final List<ProcessorConfigurer> configurers = new ArrayList<ProcessorConfigurer>();
+
+    private PrecompiledStylesheets precompiledStylesheets;
+
+    private final AtomicInteger nextProcessor = new AtomicInteger();
+
+    private volatile XsltExecutableCache[] xsltExecutableCaches;
+
+    public ConversionEngine() {
+        this(DEFAULT_PROCESSOR_COUNT, XsltExecutableCache.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates an engine
+     *
+     * @param processorCount the number of Saxon processors of the pool
+     * @param xsltCacheSize  the maximum number of compiled stylesheets kept per processor
+     */
+    public ConversionEngine(int processorCount, int xsltCacheSize) {
+        if (processorCount < 1) {
+            throw new IllegalArgumentException("The processor count must be positive: " + processorCount);
+        }
+        if (xsltCacheSize < 1) {
+            throw new IllegalArgumentException("The cache size must be positive: " + xsltCacheSize);
+        }
+        this.processorCount = processorCount;
+        this.xsltCacheSize = xsltCacheSize;
+    }
+
+    /**
+     * Gives the engine shared by default by the conversion services, initializing it if needed
+     *
+     * @return the default engine
+     */
+    public static synchronized ConversionEngine getDefault() {
+        if (defaultEngine == null || !defaultEngine.isStarted()) {
+            ConversionEngine engine = new ConversionEngine();
+            try {
+                engine.setPrecompiledStylesheets(PrecompiledStylesheets.loadResource(ConversionEngine.class.getClassLoader(), PrecompiledStylesheets.DEFAULT_RESOURCE));
+                engine.init();
+            } catch (ConversionException ce) {
+                //The precompiled stylesheets are only an optimization, the stylesheets are compiled from source
+                engine.setPrecompiledStylesheets(null);
+                engine.init();
+            }
+            defaultEngine = engine;
+        }
+        return defaultEngine;
+    }
+
+    /**
+     * Replaces the default engine
+     * The previous default engine is not closed.
+     *
+     * @param engine an initialized engine
+     */
+    public static synchronized void setDefault(ConversionEngine engine) {
+        if (engine == null) {
+            throw new NullPointerException("An engine is required.");
+        }
+        defaultEngine = engine;
+    }
+
+    /**
+     * Adds a configuration hook, applied on each processor when the engine is initialized
+     *
+     * @param configurer the configuration hook
+     * @return the current engine
+     */
+    public synchronized ConversionEngine addConfigurer(ProcessorConfigurer configurer) {
+        if (configurer == null) {
+            throw new NullPointerException("A configurer is required.");
+        }
+        if (isStarted()) {
+            throw new ConversionException("The conversion engine is already started.");
+        }
+        configurers.add(configurer);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of idle transformers kept per compiled stylesheet, 0 to disable the pooling
+     *
+     * @param transformerPoolSize the transformer pool size
+     * @return the current engine
+     */
+    public synchronized ConversionEngine setTransformerPoolSize(int transformerPoolSize) {
+        if (transformerPoolSize < 0) {
+            throw new IllegalArgumentException("The transformer pool size can't be negative: " + transformerPoolSize);
+        }
+        if (isStarted()) {
+            throw new ConversionException("The conversion engine is already started.");
+        }
+        this.transformerPoolSize = transformerPoolSize;
+        return this;
+    }
+
+    /**
+     * Keeps a transformer per thread and per compiled stylesheet, for long-lived conversion threads
+     *
+     * @param transformerThreadAffinity true to keep a transformer per thread
+     * @return the current engine
+     */
+    public synchronized ConversionEngine setTransformerThreadAffinity(boolean transformerThreadAffinity) {
+        if (isStarted()) {
+            throw new ConversionException("The conversion engine is already started.");
+        }
+        this.transformerThreadAffinity = transformerThreadAffinity;
+        return this;
+    }
+
+    /**
+     * Sets the bundle of stylesheets compiled at build time, used instead of compiling the stylesheets from source
+     *
+     * @param precompiledStylesheets the bundle, null to compile all the stylesheets from source
+     * @return the current engine
+     */
+    public synchronized ConversionEngine setPrecompiledStylesheets(PrecompiledStylesheets precompiledStylesheets) {
+        if (isStarted()) {
+            throw new ConversionException("The conversion engine is already started.");
+        }
+        this.precompiledStylesheets = precompiledStylesheets;
+        return this;
+    }
+
+    /**
+     * Creates and configures the processors
+     * Does nothing if the engine is already started.
+     */
+    public synchronized void init() {
+        if (isStarted()) {
+            return;
+        }
+        XsltExecutableCache[] caches = new XsltExecutableCache[processorCount];
+        for (int i = 0; i < processorCount; i++) {
+            Processor processor = new Processor(false);
+            XsltExecutableCache cache = new XsltExecutableCache(processor, xsltCacheSize, transformerPoolSize, transformerThreadAffinity);
+            //The bundle replaces the name pool of the processor, it is attached before any other use of the processor
+            if (precompiledStylesheets != null) {
+                cache.setPrecompiledStylesheets(precompiledStylesheets);
+            }
+            for (ProcessorConfigurer configurer : configurers) {
+                configurer.configure(processor);
+            }
+            caches[i] = cache;
+        }
+        xsltExecutableCaches = caches;
+    }
+
+    /**
+     * Releases the processors and their compiled stylesheets
+     * The engine can be initialized again afterwards.
+     */
+    public synchronized void close() {
+        XsltExecutableCache[] caches = xsltExecutableCaches;
+        xsltExecutableCaches = null;
+        if (caches != null) {
+            for (XsltExecutableCache cache : caches) {
+                cache.clear();
+            }
+        }
+    }
+
+    public boolean isStarted() {
+        return xsltExecutableCaches != null;
+    }
+
+    /**
+     * Gives a processor of the pool, for conversions with a stylesheet compiled on the fly
+     *
+     * @return a processor
+     */
+    public Processor getProcessor() {
+        XsltExecutableCache[] caches = getXsltExecutableCaches();
+        int index = (nextProcessor.getAndIncrement() & Integer.MAX_VALUE) % caches.length;
+        return caches[index].getProcessor();
+    }
+
+    /**
+     * Gives the cache of compiled stylesheets in charge of a stylesheet
+     * The stylesheet must be run with the processor of the returned cache.
+     *
+     * @param xslKey the stylesheet identity
+     * @return the cache of the processor associated to the stylesheet
+     */
+    public XsltExecutableCache getXsltExecutableCache(XslKey xslKey) {
+        XsltExecutableCache[] caches = getXsltExecutableCaches();
+        return caches[(xslKey.hashCode() & Integer.MAX_VALUE) % caches.length];
+    }
+
+    /**
+     * Loads stylesheets eagerly, typically when a plugin starts, so that their first conversions don't pay for it
+     * The stylesheets are taken from the precompiled stylesheets when possible, and compiled from source otherwise.
+     *
+     * @param xslKeys the stylesheets to load
+     * @throws ConversionException when a stylesheet can't be read or compiled
+     */
+    public void warmUp(Collection<XslKey> xslKeys) throws ConversionException {
+        for (XslKey xslKey : xslKeys) {
+            getXsltExecutableCache(xslKey).getTransformerPool(xslKey);
+        }
+    }
+
+    private XsltExecutableCache[] getXsltExecutableCaches() {
+        XsltExecutableCache[] caches = xsltExecutableCaches;
+        if (caches == null) {
+            throw new ConversionException("The conversion engine is not started.");
+        }
+        return caches;
+    }
+
+    public int getProcessorCount() {
+        return processorCount;
+    }
+
+    public int getXsltCacheSize() {
+        return xsltCacheSize;
+    }
+
+    public PrecompiledStylesheets getPrecompiledStylesheets() {
+        return precompiledStylesheets;
+    }
+
+    public int getTransformerPoolSize() {
+        return transformerPoolSize;
+    }
+
+    public boolean isTransformerThreadAffinity() {
+        return transformerThreadAffinity;
+    }
+
+    public long getXsltCacheHitCount() {
+        long count = 0;
+        for (XsltExecutableCache cache : getXsltExecutableCaches()) {
+            count += cache.getHitCount();
+        }
+        return count;
+    }
+
+    public long getXsltCacheMissCount() {
+        long count = 0;
+        for (XsltExecutableCache cache : getXsltExecutableCaches()) {
+            count += cache.getMissCount();
+        }
+        return count;
+    }
+
+    public long getXsltCacheEvictionCount() {
+        long count = 0;
+        for (XsltExecutableCache cache : getXsltExecutableCaches()) {
+            count += cache.getEvictionCount();
+        }
+        return count;
+    }
+
+    public long getPrecompiledCount() {
+        long count = 0;
+        for (XsltExecutableCache cache : getXsltExecutableCaches()) {
+            count += cache.getPrecompiledCount();
+        }
+        return count;
+    }
+}
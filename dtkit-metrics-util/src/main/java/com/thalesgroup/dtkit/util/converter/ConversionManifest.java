@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import java.io.*;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistent record of the conversions of a batch, used to convert again only the inputs that changed
+ * <p/>
+ * For each input file, the manifest records its size, its modification time, a SHA-256 hash of its content,
+ * the version of the converter and the output file. An input is up to date when the converter version is the same
+ * and its content is unchanged: the size and the modification time are compared first, the content is hashed
+ * only when the modification time changed. The output of an up to date input is kept, or copied when the
+ * output file changed.
+ * <p/>
+ * The manifest is written to a temporary file and renamed, so a crash never leaves a truncated manifest.
+ */
+public class ConversionManifest {
+
+    private static final String HEADER = "# dtkit conversion manifest 1";
+
+    private final File file;
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    private ConversionManifest(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads a manifest
+     *
+     * @param file the manifest file, missing for a first run
+     * @return the manifest, empty if the file doesn't exist or has an unknown format
+     * @throws ConversionException when the manifest file can't be read
+     */
+    public static ConversionManifest load(File file) throws ConversionException {
+        ConversionManifest manifest = new ConversionManifest(file);
+        if (!file.exists()) {
+            return manifest;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                return manifest;
+            }
+            while ((line = reader.readLine()) != null) {
+                Entry entry = Entry.parse(line);
+                if (entry != null) {
+                    manifest.entries.put(entry.getInputPath(), entry);
+                }
+            }
+            return manifest;
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to read the conversion manifest " + file, ioe);
+        } finally {
+            FileSourceFactory.close(reader);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of an input
+     * The content hash of the recorded entry is reused when the size and the modification time are unchanged.
+     *
+     * @param inputFile        the input file
+     * @param converterVersion the identity of the converter, its stylesheet and its parameters
+     * @param outputFile       the output file
+     * @return the entry describing the input
+     * @throws ConversionException when the input file can't be read
+     */
+    public Entry fingerprint(File inputFile, String converterVersion, File outputFile) throws ConversionException {
+        String inputPath = inputFile.getAbsolutePath();
+        long size = inputFile.length();
+        long lastModified = inputFile.lastModified();
+        Entry previous = get(inputPath);
+        String contentHash;
+        if (previous != null && previous.size == size && previous.lastModified == lastModified) {
+            contentHash = previous.contentHash;
+        } else {
+            contentHash = computeHash(inputFile);
+        }
+        return new Entry(inputPath, size, lastModified, contentHash, digest(converterVersion), outputFile.getAbsolutePath());
+    }
+
+    /**
+     * Tells whether the recorded output of an input can be kept
+     * When the recorded output differs from the output of the fingerprint, it is copied to the new output file.
+     *
+     * @param fingerprint the current fingerprint of the input
+     * @return true if the input doesn't need to be converted
+     */
+    public boolean reuseOutput(Entry fingerprint) {
+        Entry previous = get(fingerprint.inputPath);
+        if (previous == null || previous.size != fingerprint.size
+                || !previous.contentHash.equals(fingerprint.contentHash)
+                || !previous.converterVersion.equals(fingerprint.converterVersion)) {
+            return false;
+        }
+        File previousOutput = new File(previous.outputPath);
+        if (!previousOutput.isFile()) {
+            return false;
+        }
+        if (!previous.outputPath.equals(fingerprint.outputPath) && !copy(previousOutput, new File(fingerprint.outputPath))) {
+            return false;
+        }
+        put(fingerprint);
+        return true;
+    }
+
+    /**
+     * Records the conversion of an input
+     *
+     * @param entry the fingerprint of the converted input
+     */
+    public synchronized void put(Entry entry) {
+        entries.put(entry.inputPath, entry);
+    }
+
+    /**
+     * Forgets an input, for example after a failed conversion
+     *
+     * @param inputFile the input file
+     */
+    public synchronized void remove(File inputFile) {
+        entries.remove(inputFile.getAbsolutePath());
+    }
+
+    public synchronized Entry get(String inputPath) {
+        return entries.get(inputPath);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the manifest
+     *
+     * @throws ConversionException when the manifest can't be written
+     */
+    public synchronized void save() throws ConversionException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new ConversionException("The directory of the conversion manifest '" + dir + "' can't be created.");
+        }
+        File tmpFile = null;
+        Writer writer = null;
+        try {
+            tmpFile = File.createTempFile(file.getName(), ".tmp", dir);
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8"));
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Entry entry : entries.values()) {
+                writer.write(entry.format());
+                writer.write('\n');
+            }
+            writer.close();
+            writer = null;
+            //The rename fails on some platforms when the target exists
+            if (!tmpFile.renameTo(file) && !(file.delete() && tmpFile.renameTo(file))) {
+                throw new IOException("The manifest can't be renamed to " + file);
+            }
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to write the conversion manifest " + file, ioe);
+        } finally {
+            FileSourceFactory.close(writer);
+            if (tmpFile != null && tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    private static boolean copy(File from, File to) {
+        InputStream inputStream = null;
+        OutputStream outputStream = null;
+        try {
+            File dir = to.getAbsoluteFile().getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                return false;
+            }
+            inputStream = new FileInputStream(from);
+            outputStream = new FileOutputStream(to);
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            outputStream.close();
+            outputStream = null;
+            return true;
+        } catch (IOException ioe) {
+            to.delete();
+            return false;
+        } finally {
+            FileSourceFactory.close(inputStream);
+            FileSourceFactory.close(outputStream);
+        }
+    }
+
+    private static String computeHash(File inputFile) throws ConversionException {
+        InputStream inputStream = null;
+        try {
+            MessageDigest messageDigest = Digests.newMessageDigest("SHA-256");
+            inputStream = new FileInputStream(inputFile);
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, count);
+            }
+            return Digests.toHex(messageDigest.digest());
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to read the input file " + inputFile, ioe);
+        } finally {
+            FileSourceFactory.close(inputStream);
+        }
+    }
+
+    private static String digest(String value) throws ConversionException {
+        try {
+            return Digests.toHex(Digests.newMessageDigest("SHA-256").digest(value.getBytes("UTF-8")));
+        } catch (UnsupportedEncodingException uee) {
+            throw new ConversionException("Error to compute the converter version hash", uee);
+        }
+    }
+
+    /**
+     * Fingerprint of a converted input
+     */
+    public static class Entry implements Serializable {
+
+        private final String inputPath;
+
+        private final long size;
+
+        private final long lastModified;
+
+        private final String contentHash;
+
+        private final String converterVersion;
+
+        private final String outputPath;
+
+        public Entry(String inputPath, long size, long lastModified, String contentHash, String converterVersion, String outputPath) {
+            this.inputPath = inputPath;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.converterVersion = converterVersion;
+            this.outputPath = outputPath;
+        }
+
+        private static Entry parse(String line) {
+            String[] fields = line.split("\t");
+            if (fields.length != 6) {
+                return null;
+            }
+            try {
+                return new Entry(new File(new URI(fields[0])).getPath(), Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                        fields[3], fields[4], new File(new URI(fields[5])).getPath());
+            } catch (Exception e) {
+                //An unreadable entry is converted again
+                return null;
+            }
+        }
+
+        private String format() {
+            //The paths are written as URIs, which escape the tabs and the line separators
+            return new File(inputPath).toURI().toString() + '\t' + size + '\t' + lastModified + '\t' + contentHash
+                    + '\t' + converterVersion + '\t' + new File(outputPath).toURI().toString();
+        }
+
+        public String getInputPath() {
+            return inputPath;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        /**
+         * @return a hash of the converter version
+         */
+        public String getConverterVersion() {
+            return converterVersion;
+        }
+
+        public String getOutputPath() {
+            return outputPath;
+        }
+    }
+}
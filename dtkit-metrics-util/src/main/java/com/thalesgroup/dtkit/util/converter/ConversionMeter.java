@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import com.thalesgroup.dtkit.util.instrumentation.Instrumentation;
+import org.xml.sax.InputSource;
+
+import java.io.*;
+
+/**
+ * Measures a conversion for the instrumentation
+ * <p/>
+ * The input and output streams are wrapped to count the bytes read and written, and the time spent writing.
+ * Without instrumentation, the streams are returned unchanged and nothing is measured.
+ */
+class ConversionMeter {
+
+    private final Instrumentation instrumentation;
+
+    private final String label;
+
+    private long bytesIn = -1;
+
+    private long bytesOut = -1;
+
+    private long writeNanos;
+
+    ConversionMeter(Instrumentation instrumentation, String label) {
+        this.instrumentation = instrumentation;
+        this.label = (label == null) ? Instrumentation.UNKNOWN_LABEL : label;
+    }
+
+    boolean isEnabled() {
+        return instrumentation != null;
+    }
+
+    InputSource meter(InputSource inputSource) {
+        if (!isEnabled() || inputSource == null) {
+            return inputSource;
+        }
+        bytesIn = 0;
+        InputSource meteredSource = new InputSource(inputSource.getSystemId());
+        meteredSource.setPublicId(inputSource.getPublicId());
+        meteredSource.setEncoding(inputSource.getEncoding());
+        if (inputSource.getByteStream() != null) {
+            meteredSource.setByteStream(new FilterInputStream(inputSource.getByteStream()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        bytesIn++;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int count = super.read(b, off, len);
+                    if (count > 0) {
+                        bytesIn += count;
+                    }
+                    return count;
+                }
+            });
+        } else if (inputSource.getCharacterStream() != null) {
+            meteredSource.setCharacterStream(new FilterReader(inputSource.getCharacterStream()) {
+                @Override
+                public int read() throws IOException {
+                    int c = super.read();
+                    if (c != -1) {
+                        bytesIn++;
+                    }
+                    return c;
+                }
+
+                @Override
+                public int read(char[] cbuf, int off, int len) throws IOException {
+                    int count = super.read(cbuf, off, len);
+                    if (count > 0) {
+                        bytesIn += count;
+                    }
+                    return count;
+                }
+            });
+        } else {
+            bytesIn = -1;
+        }
+        return meteredSource;
+    }
+
+    OutputStream meter(OutputStream outputStream) {
+        if (!isEnabled()) {
+            return outputStream;
+        }
+        bytesOut = 0;
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(int b) throws IOException {
+                long start = System.nanoTime();
+                out.write(b);
+                writeNanos += System.nanoTime() - start;
+                bytesOut++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                long start = System.nanoTime();
+                out.write(b, off, len);
+                writeNanos += System.nanoTime() - start;
+                bytesOut += len;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                long start = System.nanoTime();
+                out.flush();
+                writeNanos += System.nanoTime() - start;
+            }
+        };
+    }
+
+    Writer meter(Writer writer) {
+        if (!isEnabled()) {
+            return writer;
+        }
+        bytesOut = 0;
+        return new FilterWriter(writer) {
+            @Override
+            public void write(int c) throws IOException {
+                long start = System.nanoTime();
+                out.write(c);
+                writeNanos += System.nanoTime() - start;
+                bytesOut++;
+            }
+
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                long start = System.nanoTime();
+                out.write(cbuf, off, len);
+                writeNanos += System.nanoTime() - start;
+                bytesOut += len;
+            }
+
+            @Override
+            public void write(String str, int off, int len) throws IOException {
+                long start = System.nanoTime();
+                out.write(str, off, len);
+                writeNanos += System.nanoTime() - start;
+                bytesOut += len;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                long start = System.nanoTime();
+                out.flush();
+                writeNanos += System.nanoTime() - start;
+            }
+        };
+    }
+
+    void compiled(long durationNanos, boolean cacheHit) {
+        if (isEnabled()) {
+            instrumentation.compiled(label, durationNanos, cacheHit);
+        }
+    }
+
+    void parsed(long durationNanos) {
+        if (isEnabled()) {
+            instrumentation.parsed(label, durationNanos, bytesIn);
+        }
+    }
+
+    /**
+     * Reports the transformation and, when the output was metered, the time spent writing it
+     *
+     * @param durationNanos the transformation duration, including the writes
+     */
+    void transformed(long durationNanos) {
+        if (isEnabled()) {
+            instrumentation.transformed(label, durationNanos - writeNanos);
+            if (bytesOut != -1) {
+                instrumentation.serialized(label, writeNanos, bytesOut);
+            }
+        }
+    }
+}
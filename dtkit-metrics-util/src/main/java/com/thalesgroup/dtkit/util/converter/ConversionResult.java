@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import java.io.File;
+import java.io.Serializable;
+
+/**
+ * Outcome of the conversion of one input file
+ */
+public class ConversionResult implements Serializable {
+
+    public enum Status {
+        SUCCESS, FAILURE, CANCELLED, UP_TO_DATE
+    }
+
+    private final File inputFile;
+
+    private final File outputFile;
+
+    private final Status status;
+
+    private final long durationNanos;
+
+    private final Throwable error;
+
+    public ConversionResult(File inputFile, File outputFile, Status status, long durationNanos, Throwable error) {
+        this.inputFile = inputFile;
+        this.outputFile = outputFile;
+        this.status = status;
+        this.durationNanos = durationNanos;
+        this.error = error;
+    }
+
+    public static ConversionResult success(File inputFile, File outputFile, long durationNanos) {
+        return new ConversionResult(inputFile, outputFile, Status.SUCCESS, durationNanos, null);
+    }
+
+    public static ConversionResult failure(File inputFile, File outputFile, long durationNanos, Throwable error) {
+        return new ConversionResult(inputFile, outputFile, Status.FAILURE, durationNanos, error);
+    }
+
+    public static ConversionResult cancelled(File inputFile, File outputFile) {
+        return new ConversionResult(inputFile, outputFile, Status.CANCELLED, 0, null);
+    }
+
+    /**
+     * @return the result of an input not converted again because its previous output is up to date
+     */
+    public static ConversionResult upToDate(File inputFile, File outputFile, long durationNanos) {
+        return new ConversionResult(inputFile, outputFile, Status.UP_TO_DATE, durationNanos, null);
+    }
+
+    public File getInputFile() {
+        return inputFile;
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return true if the output file holds the conversion of the input file, converted now or up to date
+     */
+    public boolean isSuccess() {
+        return status == Status.SUCCESS || status == Status.UP_TO_DATE;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getDurationMillis() {
+        return durationNanos / 1000000L;
+    }
+
+    /**
+     * @return the error of a failed conversion, null otherwise
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(status).append(" ").append(inputFile).append(" -> ").append(outputFile);
+        sb.append(" (").append(getDurationMillis()).append(" ms)");
+        if (error != null) {
+            sb.append(": ").append(error.getMessage());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,351 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe, size-bounded and content-addressed on-disk cache of conversion results
+ * <p/>
+ * A result is identified by a SHA-256 hash of the input bytes, of the stylesheet content and of the conversion
+ * parameters, so a byte-identical report converted again with the same stylesheet is served from the cache
+ * without being transformed. The modules included or imported by a stylesheet are part of its identity; the hash of
+ * a stylesheet is computed again when one of its module files changes.
+ * <p/>
+ * A result is written to a temporary file of the cache directory and renamed once complete: a result file is
+ * never seen partially written, even by another process sharing the directory. When the total size of the
+ * results exceeds the maximum size, the least recently used results are deleted. The recency survives restarts
+ * through the modification time of the result files.
+ */
+public class ConversionResultCache {
+
+    private static final String RESULT_SUFFIX = ".result";
+
+    private static final long TMP_FILE_MAX_AGE = 60L * 60 * 1000;
+
+    /**
+     * Number of stylesheet hashes kept, a content key holds the whole stylesheet
+     */
+    private static final int MAX_XSL_DIGESTS = XsltExecutableCache.DEFAULT_MAX_SIZE;
+
+    private static volatile ConversionResultCache defaultCache;
+
+    private final File directory;
+
+    private final long maxSize;
+
+    private final Map<String, Long> results = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    private final Map<XslKey, XslDigest> xslDigests = new LinkedHashMap<XslKey, XslDigest>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<XslKey, XslDigest> eldest) {
+            return size() > MAX_XSL_DIGESTS;
+        }
+    };
+
+    private long size;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a cache storing its results in a directory. The results already present in the directory are kept.
+     *
+     * @param directory the cache directory, created if needed
+     * @param maxSize   the maximum total size of the results in bytes
+     */
+    public ConversionResultCache(File directory, long maxSize) {
+        if (directory == null) {
+            throw new NullPointerException("A cache directory is required.");
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The cache size must be positive: " + maxSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new ConversionException("The cache directory '" + directory + "' can't be created.");
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        load();
+    }
+
+    /**
+     * Gives the cache used by default by the conversion services
+     *
+     * @return the default cache, null if the conversion results are not cached by default
+     */
+    public static ConversionResultCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * Sets the cache used by default by the conversion services
+     *
+     * @param cache the default cache, null to disable the caching by default
+     */
+    public static void setDefault(ConversionResultCache cache) {
+        defaultCache = cache;
+    }
+
+    private void load() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return (m1 < m2) ? -1 : ((m1 == m2) ? 0 : 1);
+            }
+        });
+        synchronized (results) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(RESULT_SUFFIX)) {
+                    long length = file.length();
+                    results.put(name.substring(0, name.length() - RESULT_SUFFIX.length()), length);
+                    size += length;
+                } else if (name.endsWith(".tmp") && file.lastModified() < System.currentTimeMillis() - TMP_FILE_MAX_AGE) {
+                    //Left by an interrupted publication
+                    file.delete();
+                }
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Computes the identity of a conversion result
+     *
+     * @param xslKey    the identity of the xsl
+     * @param inputFile the input file, hashed as it is stored
+     * @param params    the parameter map
+     * @return the key of the result
+     * @throws ConversionException when the input file or the xsl can't be read
+     */
+    public String computeKey(XslKey xslKey, File inputFile, Map<String, Object> params) throws ConversionException {
+        MessageDigest messageDigest = Digests.newMessageDigest("SHA-256");
+        update(messageDigest, getXslDigest(xslKey));
+        if (params != null) {
+            for (Map.Entry<String, Object> entry : new TreeMap<String, Object>(params).entrySet()) {
+                update(messageDigest, entry.getKey());
+                update(messageDigest, String.valueOf(entry.getValue()));
+            }
+        }
+        messageDigest.update((byte) 0);
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(inputFile);
+            digest(messageDigest, inputStream);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to read the input file " + inputFile, ioe);
+        } finally {
+            FileSourceFactory.close(inputStream);
+        }
+        return Digests.toHex(messageDigest.digest());
+    }
+
+    private String getXslDigest(XslKey xslKey) throws ConversionException {
+        XslDigest xslDigest;
+        synchronized (xslDigests) {
+            xslDigest = xslDigests.get(xslKey);
+        }
+        if (xslDigest == null || !xslDigest.isCurrent()) {
+            //Computed outside the lock, two threads may compute the same hash
+            xslDigest = XslDigest.compute(xslKey);
+            synchronized (xslDigests) {
+                xslDigests.put(xslKey, xslDigest);
+            }
+        }
+        return xslDigest.getDigest();
+    }
+
+    /**
+     * Opens a cached conversion result
+     *
+     * @param key the key of the result
+     * @return a stream on the result, to be closed by the caller, or null if the result is not cached
+     */
+    public InputStream get(String key) {
+        File file = getFile(key);
+        synchronized (results) {
+            if (results.get(key) == null) {
+                missCount.incrementAndGet();
+                return null;
+            }
+        }
+        try {
+            InputStream inputStream = new FileInputStream(file);
+            hitCount.incrementAndGet();
+            file.setLastModified(System.currentTimeMillis());
+            return inputStream;
+        } catch (FileNotFoundException fne) {
+            //Deleted by another process sharing the directory
+            synchronized (results) {
+                Long length = results.remove(key);
+                if (length != null) {
+                    size -= length;
+                }
+            }
+            missCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Stores a conversion result
+     *
+     * @param key         the key of the result
+     * @param inputStream the result content, read to the end but not closed
+     * @throws ConversionException when the result can't be written in the cache directory
+     */
+    public void put(String key, InputStream inputStream) throws ConversionException {
+        File tmpFile = null;
+        OutputStream outputStream = null;
+        try {
+            tmpFile = File.createTempFile(key, ".tmp", directory);
+            outputStream = new FileOutputStream(tmpFile);
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+            outputStream.close();
+            outputStream = null;
+            publish(key, tmpFile);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to store the conversion result in " + directory, ioe);
+        } finally {
+            FileSourceFactory.close(outputStream);
+            if (tmpFile != null && tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    private void publish(String key, File tmpFile) {
+        File file = getFile(key);
+        //A rename within a directory is atomic, a result already published by another writer is kept
+        if (!tmpFile.renameTo(file) && !file.exists()) {
+            return;
+        }
+        synchronized (results) {
+            Long previous = results.put(key, file.length());
+            size += file.length() - (previous == null ? 0 : previous);
+        }
+        evict();
+    }
+
+    private void evict() {
+        List<String> evictedKeys = new ArrayList<String>();
+        synchronized (results) {
+            Iterator<Map.Entry<String, Long>> it = results.entrySet().iterator();
+            while (size > maxSize && it.hasNext()) {
+                Map.Entry<String, Long> entry = it.next();
+                size -= entry.getValue();
+                evictedKeys.add(entry.getKey());
+                it.remove();
+            }
+        }
+        for (String key : evictedKeys) {
+            getFile(key).delete();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes all the results from the cache
+     */
+    public void clear() {
+        List<String> keys;
+        synchronized (results) {
+            keys = new ArrayList<String>(results.keySet());
+            results.clear();
+            size = 0;
+        }
+        for (String key : keys) {
+            getFile(key).delete();
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key + RESULT_SUFFIX);
+    }
+
+    private static void update(MessageDigest messageDigest, String value) {
+        try {
+            messageDigest.update(value.getBytes("UTF-8"));
+            messageDigest.update((byte) 0);
+        } catch (UnsupportedEncodingException uee) {
+            throw new ConversionException("Error to compute the conversion result key", uee);
+        }
+    }
+
+    private static void digest(MessageDigest messageDigest, InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+            messageDigest.update(buffer, 0, count);
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long getSize() {
+        synchronized (results) {
+            return size;
+        }
+    }
+
+    public int size() {
+        synchronized (results) {
+            return results.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+}
@@ -24,22 +24,155 @@
 package com.thalesgroup.dtkit.util.converter;
 
 
+import com.thalesgroup.dtkit.util.instrumentation.InstrumentationFactory;
 import net.sf.saxon.s9api.*;
 import org.w3c.dom.Document;
-import org.xml.sax.EntityResolver;
+import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Result;
 import javax.xml.transform.Source;
-import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import java.io.*;
-import java.nio.CharBuffer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class ConversionService implements Serializable {
 
+    private transient ConversionEngine conversionEngine;
+
+    private transient ConversionResultCache resultCache;
+
+    private transient MemoryBudget memoryBudget;
+
+    private double expansionFactor = MemoryBudget.DEFAULT_EXPANSION_FACTOR;
+
+    private String label;
+
+    public ConversionService() {
+    }
+
+    /**
+     * Creates a conversion service running its conversions with the given engine
+     *
+     * @param conversionEngine the conversion engine
+     */
+    public ConversionService(ConversionEngine conversionEngine) {
+        this.conversionEngine = conversionEngine;
+    }
+
+    /**
+     * Gives the engine owning the Saxon processors and the compiled stylesheets
+     *
+     * @return the conversion engine, the default engine if none was given
+     */
+    public ConversionEngine getConversionEngine() {
+        if (conversionEngine == null) {
+            return ConversionEngine.getDefault();
+        }
+        return conversionEngine;
+    }
+
+    /**
+     * Gives the cache of the conversion results of files
+     *
+     * @return the result cache, the default cache if none was given, null if the results are not cached
+     */
+    public ConversionResultCache getResultCache() {
+        if (resultCache == null) {
+            return ConversionResultCache.getDefault();
+        }
+        return resultCache;
+    }
+
+    public void setResultCache(ConversionResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Gives the budget of heap shared by the conversions of files
+     *
+     * @return the memory budget, the default budget if none was given, null if the conversions are not governed
+     */
+    public MemoryBudget getMemoryBudget() {
+        if (memoryBudget == null) {
+            return MemoryBudget.getDefault();
+        }
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public double getExpansionFactor() {
+        return expansionFactor;
+    }
+
+    /**
+     * Sets the ratio between the heap used by an input document and the size of its file, for the memory budget
+     *
+     * @param expansionFactor the expansion factor of the inputs of the converted tool
+     */
+    public void setExpansionFactor(double expansionFactor) {
+        if (expansionFactor <= 0) {
+            throw new IllegalArgumentException("The expansion factor must be positive: " + expansionFactor);
+        }
+        this.expansionFactor = expansionFactor;
+    }
+
+    /**
+     * Reserves in the memory budget the heap needed to convert an input file, waiting for it if needed
+     * The conversions of files reserve their memory themselves; this is for the conversions of sources built
+     * by the caller from a file.
+     *
+     * @param inputFile the input file
+     * @param streaming true for a streamed conversion, whose memory doesn't depend on the size of the input
+     * @return the reservation to release at the end of the conversion, null if the conversions are not governed
+     * @throws ConversionException when the thread is interrupted while waiting
+     */
+    public MemoryBudget.Grant reserveMemory(File inputFile, boolean streaming) throws ConversionException {
+        MemoryBudget budget = getMemoryBudget();
+        if (budget == null) {
+            return null;
+        }
+        try {
+            return budget.acquire(streaming ? MemoryBudget.STREAMING_ESTIMATE : MemoryBudget.estimate(inputFile, expansionFactor));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException("Interrupted while waiting for the memory to convert " + inputFile, ie);
+        }
+    }
+
+    private void release(MemoryBudget.Grant grant) {
+        if (grant != null) {
+            grant.release();
+        }
+    }
+
+    /**
+     * Gives the label of the conversions for the instrumentation, usually the label of the converted tool
+     *
+     * @return the label, null if the conversions are not labelled
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
 
     /**
      * Launches an XSLT conversion from a source to an OutputStream.
@@ -53,10 +186,12 @@ public class ConversionService implements Serializable {
      */
     public String convertAndReturn(File xslFile, InputSource inputFile, Map<String, Object> params) throws ConversionException {
         try {
-            Reader reader = new FileReader(xslFile);
-            String result = convertAndReturn(new StreamSource(reader), inputFile, params);
-            reader.close();
-            return result;
+            StreamSource xslSource = FileSourceFactory.newStreamSource(xslFile);
+            try {
+                return convertAndReturn(xslSource, inputFile, params);
+            } finally {
+                FileSourceFactory.close(xslSource);
+            }
         } catch (IOException ioe) {
             throw new ConversionException("Conversion Error", ioe);
         }
@@ -73,19 +208,23 @@ public class ConversionService implements Serializable {
      * @throws ConversionException the convert exception
      */
     public String convertAndReturn(File xslFile, File inputFile, Map<String, Object> params) throws ConversionException {
-        FileInputStream fis = null;
+        MemoryBudget.Grant grant = reserveMemory(inputFile, false);
+        InputStream fis = null;
         try {
-            Reader reader = new FileReader(xslFile);
-            fis = new FileInputStream(inputFile);
-            String result = convertAndReturn(new StreamSource(reader), new InputSource(fis), params);
-            reader.close();
-            return result;
+            StreamSource xslSource = FileSourceFactory.newStreamSource(xslFile);
+            try {
+                fis = FileSourceFactory.newInputStream(inputFile);
+                return convertAndReturn(xslSource, new InputSource(fis), params);
+            } finally {
+                FileSourceFactory.close(xslSource);
+            }
         } catch (FileNotFoundException fne) {
             throw new ConversionException(fne);
 
         } catch (IOException ioe) {
             throw new ConversionException("Conversion Error", ioe);
         } finally {
+            release(grant);
             if (fis != null) {
                 try {
                     fis.close();
@@ -107,9 +246,12 @@ public class ConversionService implements Serializable {
      */
     public void convert(File xslFile, File inputFile, File outFile, Map<String, Object> params) throws ConversionException {
         try {
-            Reader reader = new FileReader(xslFile);
-            convert(new StreamSource(reader), inputFile, outFile, params);
-            reader.close();
+            StreamSource xslSource = FileSourceFactory.newStreamSource(xslFile);
+            try {
+                convert(xslSource, inputFile, outFile, params);
+            } finally {
+                FileSourceFactory.close(xslSource);
+            }
         } catch (IOException ioe) {
             throw new ConversionException("Conversion Error", ioe);
         }
@@ -138,13 +280,17 @@ public class ConversionService implements Serializable {
      * @throws ConversionException the convert exception
      */
     public String convertAndReturn(StreamSource xslSource, File inputFile, Map<String, Object> params) throws ConversionException {
-        FileInputStream fis = null;
+        MemoryBudget.Grant grant = reserveMemory(inputFile, false);
+        InputStream fis = null;
         try {
-            fis = new FileInputStream(inputFile);
+            fis = FileSourceFactory.newInputStream(inputFile);
             return convertAndReturn(xslSource, new InputSource(fis), params);
         } catch (FileNotFoundException fne) {
             throw new ConversionException(fne);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to read the input file " + inputFile, ioe);
         } finally {
+            release(grant);
             if (fis != null) {
                 try {
                     fis.close();
@@ -166,13 +312,17 @@ public class ConversionService implements Serializable {
      * @throws ConversionException the convert exception
      */
     public void convert(StreamSource xslSource, File inputFile, File outFile, Map<String, Object> params) throws ConversionException {
-        FileInputStream fis = null;
+        MemoryBudget.Grant grant = reserveMemory(inputFile, false);
+        InputStream fis = null;
         try {
-            fis = new FileInputStream(inputFile);
+            fis = FileSourceFactory.newInputStream(inputFile);
             convert(xslSource, new InputSource(fis), outFile, params);
         } catch (FileNotFoundException fne) {
             throw new ConversionException(fne);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to read the input file " + inputFile, ioe);
         } finally {
+            release(grant);
             if (fis != null) {
                 try {
                     fis.close();
@@ -194,9 +344,12 @@ public class ConversionService implements Serializable {
      */
     public void convert(File xslFile, InputSource inputFile, File outFile, Map<String, Object> params) throws ConversionException {
         try {
-            Reader reader = new FileReader(xslFile);
-            convert(new StreamSource(reader), inputFile, outFile, params);
-            reader.close();
+            StreamSource xslSource = FileSourceFactory.newStreamSource(xslFile);
+            try {
+                convert(xslSource, inputFile, outFile, params);
+            } finally {
+                FileSourceFactory.close(xslSource);
+            }
         } catch (IOException ioe) {
             throw new ConversionException("Conversion Error", ioe);
         }
@@ -213,128 +366,795 @@ public class ConversionService implements Serializable {
      * @throws ConversionException the convert exception
      */
     public String convertAndReturn(StreamSource xslSource, InputSource inputFile, Map<String, Object> params) throws ConversionException {
+        Processor processor = getConversionEngine().getProcessor();
+        ConversionMeter meter = newMeter();
+        return convertAndReturn(processor, compile(processor, xslSource, meter), inputFile, params, meter);
+    }
+
+
+    /**
+     * Launches an XSLT conversion from a source to an OutputStream.
+     * This methods uses the net.sf.saxon packages.
+     *
+     * @param xslSource the source of the xsl
+     * @param inputFile the input file
+     * @param outFile   the output file
+     * @param params    the parameter map
+     * @throws ConversionException the convert exception
+     */
+    public void convert(StreamSource xslSource, InputSource inputFile, File outFile, Map<String, Object> params) throws ConversionException {
+        Processor processor = getConversionEngine().getProcessor();
+        ConversionMeter meter = newMeter();
+        convert(processor, compile(processor, xslSource, meter), inputFile, outFile, params, meter);
+    }
+
+
+    /**
+     * Launches an XSLT conversion from a source to an OutputStream.
+     * This methods uses the net.sf.saxon packages.
+     *
+     * @param xslSource the source of the xsl
+     * @param inputFile the input file
+     * @param outFile   the output file
+     * @throws ConversionException the convert exception
+     */
+    public void convert(StreamSource xslSource, File inputFile, File outFile) throws ConversionException {
+        convert(xslSource, inputFile, outFile, null);
+    }
 
+    /**
+     * Launches an XSLT conversion from a cached compiled stylesheet to an output file.
+     * The stylesheet is compiled once and shared through the conversion engine.
+     * With a result cache, a result already computed for the same input bytes, xsl and parameters is copied
+     * to the output file without any conversion.
+     *
+     * @param xslKey    the identity of the xsl
+     * @param inputFile the input file
+     * @param outFile   the output file
+     * @param params    the parameter map
+     * @throws ConversionException the convert exception
+     */
+    public void convert(XslKey xslKey, File inputFile, File outFile, Map<String, Object> params) throws ConversionException {
+        ConversionResultCache resultCache = getResultCache();
+        String resultKey = null;
+        if (resultCache != null) {
+            resultKey = resultCache.computeKey(xslKey, inputFile, params);
+            if (copyCachedResult(resultCache, resultKey, outFile)) {
+                return;
+            }
+        }
+        MemoryBudget.Grant grant = reserveMemory(inputFile, false);
+        InputStream fis = null;
         try {
+            fis = FileSourceFactory.newInputStream(inputFile);
+            convert(xslKey, new InputSource(fis), outFile, params);
+        } catch (FileNotFoundException fne) {
+            throw new ConversionException(fne);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to read the input file " + inputFile, ioe);
+        } finally {
+            release(grant);
+            if (fis != null) {
+                try {
+                    fis.close();
+                } catch (IOException ioe) {
+                    throw new ConversionException(ioe);
+                }
+            }
+        }
+        if (resultCache != null) {
+            storeResult(resultCache, resultKey, outFile);
+        }
+    }
 
-            javax.xml.parsers.DocumentBuilderFactory factory = javax.xml.parsers.DocumentBuilderFactory.newInstance();
-            javax.xml.parsers.DocumentBuilder builder = factory.newDocumentBuilder();
-            builder.setEntityResolver(new EntityResolver() {
-                public InputSource resolveEntity(String publicId, String systemId)
-                        throws SAXException, IOException {
-                    return new InputSource(new StringReader(""));
+    /**
+     * Launches an XSLT conversion from a cached compiled stylesheet to an output file.
+     * The stylesheet is compiled once and shared through the conversion engine.
+     *
+     * @param xslKey    the identity of the xsl
+     * @param inputFile the input source
+     * @param outFile   the output file
+     * @param params    the parameter map
+     * @throws ConversionException the convert exception
+     */
+    public void convert(XslKey xslKey, InputSource inputFile, File outFile, Map<String, Object> params) throws ConversionException {
+        XsltExecutableCache xsltExecutableCache = getConversionEngine().getXsltExecutableCache(xslKey);
+        ConversionMeter meter = newMeter();
+        convert(xsltExecutableCache.getProcessor(), load(xsltExecutableCache, xslKey, meter), inputFile, outFile, params, meter);
+    }
+
+    /**
+     * Launches an XSLT conversion from a cached compiled stylesheet and returns the result.
+     * The stylesheet is compiled once and shared through the conversion engine.
+     *
+     * @param xslKey    the identity of the xsl
+     * @param inputFile the input file
+     * @param params    the parameter map
+     * @return the converted string
+     * @throws ConversionException the convert exception
+     */
+    public String convertAndReturn(XslKey xslKey, File inputFile, Map<String, Object> params) throws ConversionException {
+        MemoryBudget.Grant grant = reserveMemory(inputFile, false);
+        InputStream fis = null;
+        try {
+            fis = FileSourceFactory.newInputStream(inputFile);
+            return convertAndReturn(xslKey, new InputSource(fis), params);
+        } catch (FileNotFoundException fne) {
+            throw new ConversionException(fne);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to read the input file " + inputFile, ioe);
+        } finally {
+            release(grant);
+            if (fis != null) {
+                try {
+                    fis.close();
+                } catch (IOException ioe) {
+                    throw new ConversionException(ioe);
                 }
-            });
+            }
+        }
+    }
 
-            Document document = builder.parse(inputFile);
-            Source source = new DOMSource(document.getDocumentElement());
+    /**
+     * Launches an XSLT conversion from a cached compiled stylesheet and returns the result.
+     * The stylesheet is compiled once and shared through the conversion engine.
+     *
+     * @param xslKey    the identity of the xsl
+     * @param inputFile the input source
+     * @param params    the parameter map
+     * @return the converted string
+     * @throws ConversionException the convert exception
+     */
+    public String convertAndReturn(XslKey xslKey, InputSource inputFile, Map<String, Object> params) throws ConversionException {
+        XsltExecutableCache xsltExecutableCache = getConversionEngine().getXsltExecutableCache(xslKey);
+        ConversionMeter meter = newMeter();
+        return convertAndReturn(xsltExecutableCache.getProcessor(), load(xsltExecutableCache, xslKey, meter), inputFile, params, meter);
+    }
 
-            // create the conversion processor with a Xslt compiler
-            Processor processor = new Processor(false);
-            XsltCompiler compiler = processor.newXsltCompiler();
+    /**
+     * Launches an XSLT conversion from a cached compiled stylesheet and keeps the result in a buffer.
+     * The result is held in memory, or in a temporary file once it exceeds the given threshold.
+     * The caller must delete the returned buffer after use.
+     *
+     * @param xslKey    the identity of the xsl
+     * @param inputFile the input source
+     * @param params    the parameter map
+     * @param threshold the maximum number of bytes kept in memory
+     * @return the buffer holding the converted content
+     * @throws ConversionException the convert exception
+     */
+    public SpillOutputStream convertAndBuffer(XslKey xslKey, InputSource inputFile, Map<String, Object> params, long threshold) throws ConversionException {
+        XsltExecutableCache xsltExecutableCache = getConversionEngine().getXsltExecutableCache(xslKey);
+        ConversionMeter meter = newMeter();
+        return convertAndBuffer(xsltExecutableCache.getProcessor(), load(xsltExecutableCache, xslKey, meter), inputFile, params, threshold, meter);
+    }
 
-            // compile and load the XSL file
-            XsltExecutable xsltExecutable = compiler.compile(xslSource);
-            XsltTransformer xsltTransformer = xsltExecutable.load();
+    /**
+     * Launches an XSLT conversion and keeps the result in a buffer.
+     * The result is held in memory, or in a temporary file once it exceeds the given threshold.
+     * The caller must delete the returned buffer after use.
+     *
+     * @param xslSource the source of the xsl
+     * @param inputFile the input source
+     * @param params    the parameter map
+     * @param threshold the maximum number of bytes kept in memory
+     * @return the buffer holding the converted content
+     * @throws ConversionException the convert exception
+     */
+    public SpillOutputStream convertAndBuffer(StreamSource xslSource, InputSource inputFile, Map<String, Object> params, long threshold) throws ConversionException {
+        Processor processor = getConversionEngine().getProcessor();
+        ConversionMeter meter = newMeter();
+        return convertAndBuffer(processor, compile(processor, xslSource, meter), inputFile, params, threshold, meter);
+    }
 
-            // create the input
-            DocumentBuilder documentBuilder = processor.newDocumentBuilder();
-            documentBuilder.setDTDValidation(false);
+    /**
+     * Launches an XSLT conversion from a cached compiled stylesheet to an OutputStream.
+     * The stream is flushed but not closed.
+     *
+     * @param xslKey       the identity of the xsl
+     * @param inputFile    the input source
+     * @param outputStream the output stream
+     * @param params       the parameter map
+     * @throws ConversionException the convert exception
+     */
+    public void convert(XslKey xslKey, InputSource inputFile, OutputStream outputStream, Map<String, Object> params) throws ConversionException {
+        ConversionMeter meter = newMeter();
+        Serializer out = newSerializer();
+        out.setOutputStream(meter.meter(outputStream));
+        convert(xslKey, inputFile, out, params, meter);
+        flush(outputStream);
+    }
 
-            XdmNode xdmNode = documentBuilder.build(source);
+    /**
+     * Launches an XSLT conversion from a cached compiled stylesheet to a Writer.
+     * The writer is flushed but not closed.
+     *
+     * @param xslKey    the identity of the xsl
+     * @param inputFile the input source
+     * @param writer    the output writer
+     * @param params    the parameter map
+     * @throws ConversionException the convert exception
+     */
+    public void convert(XslKey xslKey, InputSource inputFile, Writer writer, Map<String, Object> params) throws ConversionException {
+        ConversionMeter meter = newMeter();
+        Serializer out = newSerializer();
+        out.setOutputWriter(meter.meter(writer));
+        convert(xslKey, inputFile, out, params, meter);
+        flush(writer);
+    }
 
-            // create the output with its options
-            Serializer out = new Serializer();
-            out.setOutputProperty(Serializer.Property.INDENT, "yes");
+    /**
+     * Launches an XSLT conversion from a cached compiled stylesheet to a JAXP result.
+     * Stream, SAX and DOM (on an empty document) results are supported.
+     *
+     * @param xslKey    the identity of the xsl
+     * @param inputFile the input source
+     * @param result    the output result
+     * @param params    the parameter map
+     * @throws ConversionException the convert exception
+     */
+    public void convert(XslKey xslKey, InputSource inputFile, Result result, Map<String, Object> params) throws ConversionException {
+        convert(xslKey, inputFile, toDestination(result), params);
+        flush(result);
+    }
 
-            File fileOut = File.createTempFile("serializer", "convert");
-            FileOutputStream fos = new FileOutputStream(fileOut);
-            out.setOutputStream(fos);
+    /**
+     * Launches an XSLT conversion from a cached compiled stylesheet to a Saxon destination.
+     *
+     * @param xslKey      the identity of the xsl
+     * @param inputFile   the input source
+     * @param destination the output destination
+     * @param params      the parameter map
+     * @throws ConversionException the convert exception
+     */
+    public void convert(XslKey xslKey, InputSource inputFile, Destination destination, Map<String, Object> params) throws ConversionException {
+        convert(xslKey, inputFile, destination, params, newMeter());
+    }
 
-            // run the conversion
-            xsltTransformer.setInitialContextNode(xdmNode);
-            if (params != null) {
-                for (Map.Entry<String, Object> entry : params.entrySet()) {
-                    QName paramName = new QName(entry.getKey());
-                    XdmAtomicValue paramValue = new XdmAtomicValue(String.valueOf(entry.getValue()));
-                    xsltTransformer.setParameter(paramName, paramValue);
-                }
-            }
+    /**
+     * Launches an XSLT conversion from a source to an OutputStream.
+     * The stream is flushed but not closed.
+     *
+     * @param xslSource    the source of the xsl
+     * @param inputFile    the input source
+     * @param outputStream the output stream
+     * @param params       the parameter map
+     * @throws ConversionException the convert exception
+     */
+    public void convert(StreamSource xslSource, InputSource inputFile, OutputStream outputStream, Map<String, Object> params) throws ConversionException {
+        ConversionMeter meter = newMeter();
+        Serializer out = newSerializer();
+        out.setOutputStream(meter.meter(outputStream));
+        convert(xslSource, inputFile, out, params, meter);
+        flush(outputStream);
+    }
 
-            xsltTransformer.setDestination(out);
-            xsltTransformer.transform();
+    /**
+     * Launches an XSLT conversion from a source to a Writer.
+     * The writer is flushed but not closed.
+     *
+     * @param xslSource the source of the xsl
+     * @param inputFile the input source
+     * @param writer    the output writer
+     * @param params    the parameter map
+     * @throws ConversionException the convert exception
+     */
+    public void convert(StreamSource xslSource, InputSource inputFile, Writer writer, Map<String, Object> params) throws ConversionException {
+        ConversionMeter meter = newMeter();
+        Serializer out = newSerializer();
+        out.setOutputWriter(meter.meter(writer));
+        convert(xslSource, inputFile, out, params, meter);
+        flush(writer);
+    }
 
-            StringBuffer sb = new StringBuffer();
-            CharBuffer buffer = CharBuffer.allocate(4096);
-            int bufferLength = 0;
-            Reader reader = new FileReader(fileOut);
-            while (bufferLength != -1) {
-                bufferLength = reader.read(buffer);
-                if (bufferLength > 0) {
-                    sb.append(buffer.flip());
-                }
-            }
+    /**
+     * Launches an XSLT conversion from a source to a JAXP result.
+     * Stream, SAX and DOM (on an empty document) results are supported.
+     *
+     * @param xslSource the source of the xsl
+     * @param inputFile the input source
+     * @param result    the output result
+     * @param params    the parameter map
+     * @throws ConversionException the convert exception
+     */
+    public void convert(StreamSource xslSource, InputSource inputFile, Result result, Map<String, Object> params) throws ConversionException {
+        convert(xslSource, inputFile, toDestination(result), params);
+        flush(result);
+    }
 
-            reader.close();
-            fos.close();
+    /**
+     * Launches an XSLT conversion from a source to a Saxon destination.
+     *
+     * @param xslSource   the source of the xsl
+     * @param inputFile   the input source
+     * @param destination the output destination
+     * @param params      the parameter map
+     * @throws ConversionException the convert exception
+     */
+    public void convert(StreamSource xslSource, InputSource inputFile, Destination destination, Map<String, Object> params) throws ConversionException {
+        convert(xslSource, inputFile, destination, params, newMeter());
+    }
 
-            return sb.toString();
-        } catch (IOException ioe) {
-            throw new ConversionException("Error to convert - A file not found", ioe);
-        } catch (SaxonApiException sae) {
-            throw new ConversionException("Error to convert the input XML document", sae);
-        } catch (SAXException sae) {
-            throw new ConversionException("Error to convert - A file not found", sae);
-        } catch (ParserConfigurationException pe) {
-            throw new ConversionException("Error to convert - A file not found", pe);
-        }
+    /**
+     * Launches an XSLT conversion from a cached compiled stylesheet, reading the input from a JAXP source.
+     * A SAX source may carry a filtering XML reader, for example to validate the input while it is parsed.
+     *
+     * @param xslKey      the identity of the xsl
+     * @param inputSource the input source
+     * @param destination the output destination
+     * @param params      the parameter map
+     * @throws ConversionException the convert exception
+     */
+    public void convert(XslKey xslKey, Source inputSource, Destination destination, Map<String, Object> params) throws ConversionException {
+        XsltExecutableCache xsltExecutableCache = getConversionEngine().getXsltExecutableCache(xslKey);
+        ConversionMeter meter = newMeter();
+        transform(xsltExecutableCache.getProcessor(), load(xsltExecutableCache, xslKey, meter), inputSource, destination, params, meter);
     }
 
+    /**
+     * Launches a streamed XSLT conversion from a cached compiled stylesheet to an OutputStream.
+     * The input is converted record by record, each child of its root element being transformed alone: the memory
+     * use depends on the size of the largest record, not on the size of the input. The stylesheet must be written
+     * for this mode, see {@link StreamingConversion}. The stream is flushed but not closed.
+     *
+     * @param xslKey       the identity of the xsl
+     * @param inputFile    the input source
+     * @param outputStream the output stream
+     * @param params       the parameter map
+     * @throws ConversionException the convert exception
+     */
+    public void convertStreaming(XslKey xslKey, InputSource inputFile, OutputStream outputStream, Map<String, Object> params) throws ConversionException {
+        XsltExecutableCache xsltExecutableCache = getConversionEngine().getXsltExecutableCache(xslKey);
+        ConversionMeter meter = newMeter();
+        XsltTransformerPool transformerPool = load(xsltExecutableCache, xslKey, meter);
+        StreamingConversion.MergingSerializer out = StreamingConversion.newSerializer();
+        configureSerializer(out);
+        out.setOutputStream(meter.meter(outputStream));
+        long start = System.nanoTime();
+        new StreamingConversion(xsltExecutableCache.getProcessor(), transformerPool, params).convert(meter.meter(decompressing(inputFile)), out);
+        // the parse is part of the streamed transformation
+        meter.transformed(System.nanoTime() - start);
+        flush(outputStream);
+    }
 
     /**
-     * Launches an XSLT conversion from a source to an OutputStream.
-     * This methods uses the net.sf.saxon packages.
+     * Launches a streamed XSLT conversion from a cached compiled stylesheet to an output file.
+     * With a result cache, a result already computed for the same input bytes, xsl and parameters is copied
+     * to the output file without any conversion.
      *
-     * @param xslSource the source of the xsl
+     * @param xslKey    the identity of the xsl
      * @param inputFile the input file
      * @param outFile   the output file
      * @param params    the parameter map
      * @throws ConversionException the convert exception
+     * @see #convertStreaming(XslKey, InputSource, OutputStream, Map)
      */
-    public void convert(StreamSource xslSource, InputSource inputFile, File outFile, Map<String, Object> params) throws ConversionException {
+    public void convertStreaming(XslKey xslKey, File inputFile, File outFile, Map<String, Object> params) throws ConversionException {
+        ConversionResultCache resultCache = getResultCache();
+        String resultKey = null;
+        if (resultCache != null) {
+            resultKey = resultCache.computeKey(xslKey, inputFile, params);
+            if (copyCachedResult(resultCache, resultKey, outFile)) {
+                return;
+            }
+        }
+        MemoryBudget.Grant grant = reserveMemory(inputFile, true);
+        InputStream fis = null;
+        OutputStream fos = null;
+        try {
+            fis = FileSourceFactory.newInputStream(inputFile);
+            fos = FileSourceFactory.newOutputStream(outFile);
+            InputSource inputSource = new InputSource(fis);
+            inputSource.setSystemId(inputFile.toURI().toString());
+            convertStreaming(xslKey, inputSource, fos, params);
+        } catch (FileNotFoundException fne) {
+            throw new ConversionException(fne);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to write the output file " + outFile, ioe);
+        } finally {
+            release(grant);
+            FileSourceFactory.close(fis);
+            FileSourceFactory.closeOrFail(fos);
+        }
+        if (resultCache != null) {
+            storeResult(resultCache, resultKey, outFile);
+        }
+    }
 
+    /**
+     * Launches several XSLT conversions of the same input file from cached compiled stylesheets, each stylesheet
+     * writing its own output file.
+     * The input is parsed once, see {@link #convertMultiple(InputSource, Map, Map, ExecutorService)}.
+     * With a result cache, the outputs already computed are copied and the input is converted only for the others.
+     *
+     * @param inputFile the input file
+     * @param outputs   the output file of each stylesheet
+     * @param params    the parameter map, given to all the stylesheets
+     * @param executor  the executor running the transformations, null to run them in the calling thread
+     * @throws ConversionException the convert exception
+     */
+    public void convertMultiple(File inputFile, Map<XslKey, File> outputs, Map<String, Object> params, ExecutorService executor) throws ConversionException {
+        convertMultiple(inputFile, outputs, null, params, executor);
+    }
+
+    /**
+     * Launches several XSLT conversions of the same input file from cached compiled stylesheets, each stylesheet
+     * writing its own output file and being instrumented under its own label.
+     *
+     * @param inputFile the input file
+     * @param outputs   the output file of each stylesheet
+     * @param labels    the instrumentation label of each stylesheet, the label of the service when missing; may be null
+     * @param params    the parameter map, given to all the stylesheets
+     * @param executor  the executor running the transformations, null to run them in the calling thread
+     * @throws ConversionException the convert exception
+     * @see #convertMultiple(File, Map, Map, ExecutorService)
+     */
+    public void convertMultiple(File inputFile, Map<XslKey, File> outputs, Map<XslKey, String> labels, Map<String, Object> params, ExecutorService executor) throws ConversionException {
+        ConversionResultCache resultCache = getResultCache();
+        Map<XslKey, File> pendingOutputs = new LinkedHashMap<XslKey, File>();
+        Map<XslKey, String> resultKeys = new LinkedHashMap<XslKey, String>();
+        for (Map.Entry<XslKey, File> output : outputs.entrySet()) {
+            if (resultCache != null) {
+                String resultKey = resultCache.computeKey(output.getKey(), inputFile, params);
+                if (copyCachedResult(resultCache, resultKey, output.getValue())) {
+                    continue;
+                }
+                resultKeys.put(output.getKey(), resultKey);
+            }
+            pendingOutputs.put(output.getKey(), output.getValue());
+        }
+        if (pendingOutputs.isEmpty()) {
+            return;
+        }
+        // a single tree is built whatever the number of stylesheets
+        MemoryBudget.Grant grant = reserveMemory(inputFile, false);
+        InputStream fis = null;
+        try {
+            fis = FileSourceFactory.newInputStream(inputFile);
+            InputSource inputSource = new InputSource(fis);
+            inputSource.setSystemId(inputFile.toURI().toString());
+            convertMultiple(inputSource, pendingOutputs, labels, params, executor);
+        } catch (FileNotFoundException fne) {
+            throw new ConversionException(fne);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to read the input file " + inputFile, ioe);
+        } finally {
+            release(grant);
+            FileSourceFactory.close(fis);
+        }
+        for (Map.Entry<XslKey, String> resultKey : resultKeys.entrySet()) {
+            storeResult(resultCache, resultKey.getValue(), pendingOutputs.get(resultKey.getKey()));
+        }
+    }
+
+    /**
+     * Launches several XSLT conversions of the same input from cached compiled stylesheets, each stylesheet
+     * writing its own output file, for example to publish a report in several formats.
+     * The input is parsed once into a Saxon tree, which is immutable and shared by all the stylesheets: the parse
+     * cost is paid once instead of once per stylesheet. With an executor, the stylesheets are applied concurrently
+     * to the tree, otherwise one after the other in the calling thread.
+     * <p/>
+     * A tree can only be transformed by stylesheets compiled with its processor: the stylesheets are all run by the
+     * processor in charge of the first one, which compiles its own copy of the others when the engine has several
+     * processors.
+     *
+     * @param inputFile the input source
+     * @param outputs   the output file of each stylesheet
+     * @param params    the parameter map, given to all the stylesheets
+     * @param executor  the executor running the transformations, null to run them in the calling thread
+     * @throws ConversionException the convert exception, the first one in the order of the outputs when several
+     *                             conversions fail
+     */
+    public void convertMultiple(InputSource inputFile, Map<XslKey, File> outputs, Map<String, Object> params, ExecutorService executor) throws ConversionException {
+        convertMultiple(inputFile, outputs, null, params, executor);
+    }
+
+    /**
+     * Launches several XSLT conversions of the same input from cached compiled stylesheets, each stylesheet
+     * writing its own output file and being instrumented under its own label.
+     * The shared parse is instrumented under the label of the service.
+     *
+     * @param inputFile the input source
+     * @param outputs   the output file of each stylesheet
+     * @param labels    the instrumentation label of each stylesheet, the label of the service when missing; may be null
+     * @param params    the parameter map, given to all the stylesheets
+     * @param executor  the executor running the transformations, null to run them in the calling thread
+     * @throws ConversionException the convert exception
+     * @see #convertMultiple(InputSource, Map, Map, ExecutorService)
+     */
+    public void convertMultiple(InputSource inputFile, Map<XslKey, File> outputs, Map<XslKey, String> labels, Map<String, Object> params, ExecutorService executor) throws ConversionException {
+        if (outputs.isEmpty()) {
+            return;
+        }
+        XsltExecutableCache xsltExecutableCache = getConversionEngine().getXsltExecutableCache(outputs.keySet().iterator().next());
+
+        ConversionMeter meter = newMeter(label);
+        long start = System.nanoTime();
+        XdmNode xdmNode = buildDocument(xsltExecutableCache.getProcessor(), SAXSourceFactory.newSAXSource(meter.meter(decompressing(inputFile))));
+        meter.parsed(System.nanoTime() - start);
+
+        List<TreeConversion> conversions = new ArrayList<TreeConversion>(outputs.size());
+        for (Map.Entry<XslKey, File> output : outputs.entrySet()) {
+            String outputLabel = (labels == null) ? null : labels.get(output.getKey());
+            conversions.add(new TreeConversion(xsltExecutableCache, output.getKey(), xdmNode, output.getValue(), params,
+                    (outputLabel == null) ? label : outputLabel));
+        }
+
+        if (executor == null) {
+            for (TreeConversion conversion : conversions) {
+                conversion.call();
+            }
+            return;
+        }
         try {
+            for (Future<Void> future : executor.invokeAll(conversions)) {
+                future.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException("Interrupted while converting the input XML document", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof ConversionException) {
+                throw (ConversionException) ee.getCause();
+            }
+            throw new ConversionException("Error to convert the input XML document", ee.getCause());
+        }
+    }
+
+    /**
+     * Conversion of an input tree by one of the stylesheets of a multiple conversion
+     */
+    private class TreeConversion implements Callable<Void> {
+
+        private final XsltExecutableCache xsltExecutableCache;
+
+        private final XslKey xslKey;
+
+        private final XdmNode xdmNode;
 
-            javax.xml.parsers.DocumentBuilderFactory factory = javax.xml.parsers.DocumentBuilderFactory.newInstance();
-            javax.xml.parsers.DocumentBuilder builder = factory.newDocumentBuilder();
-            builder.setEntityResolver(new EntityResolver() {
-                public InputSource resolveEntity(String publicId, String systemId)
-                        throws SAXException, IOException {
-                    return new InputSource(new StringReader(""));
+        private final File outFile;
+
+        private final Map<String, Object> params;
+
+        private final String label;
+
+        private TreeConversion(XsltExecutableCache xsltExecutableCache, XslKey xslKey, XdmNode xdmNode, File outFile, Map<String, Object> params, String label) {
+            this.xsltExecutableCache = xsltExecutableCache;
+            this.xslKey = xslKey;
+            this.xdmNode = xdmNode;
+            this.outFile = outFile;
+            this.params = params;
+            this.label = label;
+        }
+
+        public Void call() throws ConversionException {
+            ConversionMeter meter = newMeter(label);
+            XsltTransformerPool transformerPool = load(xsltExecutableCache, xslKey, meter);
+            OutputStream fos = null;
+            try {
+                fos = FileSourceFactory.newOutputStream(outFile);
+                Serializer out = newSerializer();
+                out.setOutputStream(meter.meter(fos));
+                transform(transformerPool, xdmNode, out, params, meter);
+            } catch (IOException ioe) {
+                throw new ConversionException("Error to write the output file " + outFile, ioe);
+            } finally {
+                FileSourceFactory.closeOrFail(fos);
+            }
+            return null;
+        }
+    }
+
+    private boolean copyCachedResult(ConversionResultCache resultCache, String resultKey, File outFile) throws ConversionException {
+        InputStream cachedResult = resultCache.get(resultKey);
+        if (cachedResult == null) {
+            return false;
+        }
+        OutputStream fos = null;
+        try {
+            fos = FileSourceFactory.newOutputStream(outFile);
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = cachedResult.read(buffer)) != -1) {
+                fos.write(buffer, 0, count);
+            }
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to write the output file " + outFile, ioe);
+        } finally {
+            FileSourceFactory.close(cachedResult);
+            FileSourceFactory.closeOrFail(fos);
+        }
+        return true;
+    }
+
+    private void storeResult(ConversionResultCache resultCache, String resultKey, File outFile) throws ConversionException {
+        // the cache holds the uncompressed result, the output file is compressed according to its name
+        InputStream fis = null;
+        try {
+            fis = Compression.fromFileName(outFile.getName()).decompress(new FileInputStream(outFile));
+            resultCache.put(resultKey, fis);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to read the output file " + outFile, ioe);
+        } finally {
+            FileSourceFactory.close(fis);
+        }
+    }
+
+    /**
+     * Sets the output options of the conversions on a serializer
+     *
+     * @param out the serializer to configure
+     * @return the configured serializer
+     */
+    public Serializer configureSerializer(Serializer out) {
+        out.setOutputProperty(Serializer.Property.INDENT, "yes");
+        return out;
+    }
+
+    private Destination toDestination(Result result) throws ConversionException {
+        if (result instanceof StreamResult) {
+            StreamResult streamResult = (StreamResult) result;
+            Serializer out = newSerializer();
+            if (streamResult.getWriter() != null) {
+                out.setOutputWriter(streamResult.getWriter());
+            } else if (streamResult.getOutputStream() != null) {
+                out.setOutputStream(streamResult.getOutputStream());
+            } else if (streamResult.getSystemId() != null) {
+                try {
+                    out.setOutputFile(new File(new URI(streamResult.getSystemId())));
+                } catch (URISyntaxException use) {
+                    out.setOutputFile(new File(streamResult.getSystemId()));
+                } catch (IllegalArgumentException iae) {
+                    out.setOutputFile(new File(streamResult.getSystemId()));
                 }
-            });
+            } else {
+                throw new ConversionException("The stream result has no output.");
+            }
+            return out;
+        }
+        if (result instanceof SAXResult) {
+            return new SAXDestination(((SAXResult) result).getHandler());
+        }
+        if (result instanceof DOMResult) {
+            Node node = ((DOMResult) result).getNode();
+            if (!(node instanceof Document)) {
+                throw new ConversionException("The DOM result must hold an empty document.");
+            }
+            return new DOMDestination((Document) node);
+        }
+        throw new ConversionException("Unsupported result type: " + (result == null ? null : result.getClass().getName()));
+    }
 
-            Document document = builder.parse(inputFile);
-            Source source = new DOMSource(document.getDocumentElement());
+    private void flush(Result result) throws ConversionException {
+        if (result instanceof StreamResult) {
+            flush(((StreamResult) result).getWriter());
+            flush(((StreamResult) result).getOutputStream());
+        }
+    }
 
-            // create the conversion processor with a Xslt compiler
-            Processor processor = new Processor(false);
-            XsltCompiler compiler = processor.newXsltCompiler();
+    private void flush(Flushable flushable) throws ConversionException {
+        if (flushable != null) {
+            try {
+                flushable.flush();
+            } catch (IOException ioe) {
+                throw new ConversionException("Error to convert - The output can't be written", ioe);
+            }
+        }
+    }
+
+    private ConversionMeter newMeter() {
+        return newMeter(label);
+    }
+
+    private ConversionMeter newMeter(String label) {
+        return new ConversionMeter(InstrumentationFactory.getInstance(), label);
+    }
 
-            // compile and load the XSL file
+    private void convert(XslKey xslKey, InputSource inputFile, Destination destination, Map<String, Object> params, ConversionMeter meter) throws ConversionException {
+        XsltExecutableCache xsltExecutableCache = getConversionEngine().getXsltExecutableCache(xslKey);
+        transform(xsltExecutableCache.getProcessor(), load(xsltExecutableCache, xslKey, meter), inputFile, destination, params, meter);
+    }
+
+    private void convert(StreamSource xslSource, InputSource inputFile, Destination destination, Map<String, Object> params, ConversionMeter meter) throws ConversionException {
+        Processor processor = getConversionEngine().getProcessor();
+        transform(processor, compile(processor, xslSource, meter), inputFile, destination, params, meter);
+    }
+
+    private XsltTransformerPool load(XsltExecutableCache xsltExecutableCache, XslKey xslKey, ConversionMeter meter) throws ConversionException {
+        long start = System.nanoTime();
+        XsltTransformerPool transformerPool = xsltExecutableCache.getTransformerPoolIfPresent(xslKey);
+        boolean cacheHit = transformerPool != null;
+        if (!cacheHit) {
+            transformerPool = xsltExecutableCache.getTransformerPool(xslKey);
+        }
+        meter.compiled(System.nanoTime() - start, cacheHit);
+        return transformerPool;
+    }
+
+    private XsltTransformerPool compile(Processor processor, StreamSource xslSource, ConversionMeter meter) throws ConversionException {
+        try {
+            long start = System.nanoTime();
+            XsltCompiler compiler = processor.newXsltCompiler();
             XsltExecutable xsltExecutable = compiler.compile(xslSource);
-            XsltTransformer xsltTransformer = xsltExecutable.load();
+            meter.compiled(System.nanoTime() - start, false);
+            //compiled for a single conversion, its transformer is not pooled
+            return new XsltTransformerPool(processor, xsltExecutable, 0, false);
+        } catch (SaxonApiException sae) {
+            throw new ConversionException("Error to convert the input XML document", sae);
+        }
+    }
 
-            // create the input
-            DocumentBuilder documentBuilder = processor.newDocumentBuilder();
-            documentBuilder.setDTDValidation(false);
+    private String convertAndReturn(Processor processor, XsltTransformerPool transformerPool, InputSource inputFile, Map<String, Object> params, ConversionMeter meter) throws ConversionException {
+        StringWriter writer = new StringWriter();
+        Serializer out = newSerializer();
+        out.setOutputWriter(meter.meter(writer));
+        transform(processor, transformerPool, inputFile, out, params, meter);
+        return writer.toString();
+    }
+
+    private SpillOutputStream convertAndBuffer(Processor processor, XsltTransformerPool transformerPool, InputSource inputFile, Map<String, Object> params, long threshold, ConversionMeter meter) throws ConversionException {
+        SpillOutputStream outputStream = new SpillOutputStream(threshold);
+        try {
+            Serializer out = newSerializer();
+            out.setOutputStream(meter.meter(outputStream));
+            transform(processor, transformerPool, inputFile, out, params, meter);
+            outputStream.close();
+            return outputStream;
+        } catch (IOException ioe) {
+            outputStream.delete();
+            throw new ConversionException("Error to convert - A file not found", ioe);
+        } catch (ConversionException ce) {
+            outputStream.delete();
+            throw ce;
+        }
+    }
+
+    private void convert(Processor processor, XsltTransformerPool transformerPool, InputSource inputFile, File outFile, Map<String, Object> params, ConversionMeter meter) throws ConversionException {
+        OutputStream fos = null;
+        try {
+            fos = FileSourceFactory.newOutputStream(outFile);
+            Serializer out = newSerializer();
+            out.setOutputStream(meter.meter(fos));
+            transform(processor, transformerPool, inputFile, out, params, meter);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to convert - A file not found", ioe);
+        } finally {
+            FileSourceFactory.closeOrFail(fos);
+        }
+    }
+
+    private Serializer newSerializer() {
+        return configureSerializer(new Serializer());
+    }
+
+    private void transform(Processor processor, XsltTransformerPool transformerPool, InputSource inputFile, Destination out, Map<String, Object> params, ConversionMeter meter) throws ConversionException {
+        transform(processor, transformerPool, SAXSourceFactory.newSAXSource(meter.meter(decompressing(inputFile))), out, params, meter);
+    }
+
+    private InputSource decompressing(InputSource inputFile) throws ConversionException {
+        try {
+            return Compression.decompressing(inputFile);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to read the input XML document", ioe);
+        }
+    }
+
+    private void transform(Processor processor, XsltTransformerPool transformerPool, Source inputSource, Destination out, Map<String, Object> params, ConversionMeter meter) throws ConversionException {
 
-            XdmNode xdmNode = documentBuilder.build(source);
+        // create the input, parsed once straight into the Saxon tree
+        long start = System.nanoTime();
+        XdmNode xdmNode = buildDocument(processor, inputSource);
+        meter.parsed(System.nanoTime() - start);
 
-            // create the output with its options
-            Serializer out = new Serializer();
-            out.setOutputProperty(Serializer.Property.INDENT, "yes");
-            FileOutputStream fos = new FileOutputStream(outFile);
-            out.setOutputStream(fos);
+        transform(transformerPool, xdmNode, out, params, meter);
+    }
+
+    private void transform(XsltTransformerPool transformerPool, XdmNode xdmNode, Destination out, Map<String, Object> params, ConversionMeter meter) throws ConversionException {
+
+        try {
+
+            // take a transformer of the compiled XSL, given back to its pool after a successful conversion
+            XsltTransformer xsltTransformer = transformerPool.borrow();
 
             // run the conversion
             xsltTransformer.setInitialContextNode(xdmNode);
@@ -347,32 +1167,47 @@ public class ConversionService implements Serializable {
             }
 
             xsltTransformer.setDestination(out);
+            long start = System.nanoTime();
             xsltTransformer.transform();
+            meter.transformed(System.nanoTime() - start);
+
+            transformerPool.release(xsltTransformer);
 
-            fos.close();
-        } catch (IOException ioe) {
-            throw new ConversionException("Error to convert - A file not found", ioe);
         } catch (SaxonApiException sae) {
             throw new ConversionException("Error to convert the input XML document", sae);
-        } catch (SAXException sae) {
-            throw new ConversionException("Error to convert - A file not found", sae);
-        } catch (ParserConfigurationException pe) {
-            throw new ConversionException("Error to convert - A file not found", pe);
         }
     }
 
+    /**
+     * Parses an input document into a Saxon tree
+     * The input is read once by a SAX parser feeding directly the Saxon document builder;
+     * the external DTDs are ignored.
+     *
+     * @param processor the processor that will run the transformation
+     * @param inputFile the input source
+     * @return the Saxon tree of the document
+     * @throws ConversionException when the input can't be parsed
+     */
+    public XdmNode buildDocument(Processor processor, InputSource inputFile) throws ConversionException {
+        return buildDocument(processor, SAXSourceFactory.newSAXSource(inputFile));
+    }
 
     /**
-     * Launches an XSLT conversion from a source to an OutputStream.
-     * This methods uses the net.sf.saxon packages.
+     * Parses an input document into a Saxon tree
      *
-     * @param xslSource the source of the xsl
-     * @param inputFile the input file
-     * @param outFile   the output file
-     * @throws ConversionException the convert exception
+     * @param processor   the processor that will run the transformation
+     * @param inputSource the input source
+     * @return the Saxon tree of the document
+     * @throws ConversionException when the input can't be parsed
      */
-    public void convert(StreamSource xslSource, File inputFile, File outFile) throws ConversionException {
-        convert(xslSource, inputFile, outFile, null);
+    public XdmNode buildDocument(Processor processor, Source inputSource) throws ConversionException {
+        try {
+            DocumentBuilder documentBuilder = processor.newDocumentBuilder();
+            documentBuilder.setDTDValidation(false);
+            return documentBuilder.build(inputSource);
+        } catch (SaxonApiException sae) {
+            throw new ConversionException("Error to convert the input XML document", sae);
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -29,4 +29,8 @@ public class ConversionServiceFactory {
     public static ConversionService getInstance() {
         return new ConversionService();
     }
+
+    public static ConversionService getInstance(ConversionEngine conversionEngine) {
+        return new ConversionService(conversionEngine);
+    }
 }
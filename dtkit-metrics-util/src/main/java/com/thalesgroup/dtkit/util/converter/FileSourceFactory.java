@@ -0,0 +1,476 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import org.xml.sax.InputSource;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Opens the report, stylesheet and grammar files read by the services
+ * <p/>
+ * A file is read through its {@link FileChannel} into a direct buffer reused by the thread, and copied from it
+ * into the buffers of the parsers. A file larger than the mapping threshold, when one is set, is memory-mapped
+ * instead, which saves the read calls but not the copy into the parsers.
+ * <p/>
+ * The files are always given to the parsers as bytes with their system id, so the parsers detect the encoding
+ * from the byte order mark and the XML declaration as specified by XML 1.0, instead of decoding the files with
+ * the platform charset.
+ * <p/>
+ * Compressed files are recognized by their magic bytes and decompressed while they are read. Output files
+ * are compressed when their name ends with a compression extension, see {@link Compression}.
+ */
+public class FileSourceFactory {
+
+    /**
+     * Default size above which a file is memory-mapped: files are not mapped unless a threshold is set
+     */
+    public static final long DEFAULT_MAP_THRESHOLD = 0;
+
+    /**
+     * Size of the mapped regions, a mapping is limited to 2GB
+     */
+    private static final long MAP_REGION_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * Size of the direct buffers the files are read into
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Direct buffer of each thread, taken by the stream reading a file until it is closed
+     */
+    private static final ThreadLocal<ByteBuffer> READ_BUFFERS = new ThreadLocal<ByteBuffer>();
+
+    private static volatile long mapThreshold = DEFAULT_MAP_THRESHOLD;
+
+    /**
+     * Gives the size above which a file is memory-mapped
+     *
+     * @return the threshold in bytes, 0 if files are never mapped
+     */
+    public static long getMapThreshold() {
+        return mapThreshold;
+    }
+
+    /**
+     * Sets the size above which a file is memory-mapped.
+     * The mapped regions are released only when they are garbage collected, not when the stream is closed:
+     * until then, a mapped file can't be deleted or replaced on some platforms, as on Windows.
+     *
+     * @param mapThreshold the threshold in bytes, 0 to never map files
+     */
+    public static void setMapThreshold(long mapThreshold) {
+        if (mapThreshold < 0) {
+            throw new IllegalArgumentException("The map threshold must be positive or 0.");
+        }
+        FileSourceFactory.mapThreshold = mapThreshold;
+    }
+
+    /**
+     * Opens a file for reading
+     *
+     * @param file the file to read
+     * @return a stream on the file content, decompressed if needed, to be closed by the caller
+     * @throws FileNotFoundException when the file can't be opened
+     * @throws IOException           when the file can't be read or mapped
+     */
+    public static InputStream newInputStream(File file) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            long threshold = mapThreshold;
+            if (threshold > 0 && file.length() > threshold) {
+                return Compression.decompressing(new MappedInputStream(fis, fis.getChannel().size()));
+            }
+            return Compression.decompressing(new ChannelInputStream(fis));
+        } catch (IOException ioe) {
+            close(fis);
+            throw ioe;
+        } catch (RuntimeException re) {
+            close(fis);
+            throw re;
+        }
+    }
+
+    /**
+     * Opens a file for writing, compressed according to its name extension
+     *
+     * @param file the file to write
+     * @return a stream to the file, to be closed by the caller to complete the file
+     * @throws IOException when the file can't be created
+     */
+    public static OutputStream newOutputStream(File file) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            return Compression.fromFileName(file.getName()).compress(fos);
+        } catch (IOException ioe) {
+            fos.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Creates a SAX input for a file
+     *
+     * @param file the file to read
+     * @return the input with its byte stream and its system id, the stream is to be closed by the caller
+     * @throws FileNotFoundException when the file can't be opened
+     * @throws IOException           when the file can't be read
+     */
+    public static InputSource newInputSource(File file) throws IOException {
+        InputSource inputSource = new InputSource(newInputStream(file));
+        inputSource.setSystemId(file.toURI().toString());
+        return inputSource;
+    }
+
+    /**
+     * Creates a JAXP source for a file
+     *
+     * @param file the file to read
+     * @return the source with its byte stream and its system id, the stream is to be closed by the caller
+     * @throws FileNotFoundException when the file can't be opened
+     * @throws IOException           when the file can't be read
+     */
+    public static StreamSource newStreamSource(File file) throws IOException {
+        return new StreamSource(newInputStream(file), file.toURI().toString());
+    }
+
+    /**
+     * Closes the byte stream and the character stream of a source, ignoring the errors
+     *
+     * @param source the source, may be null
+     */
+    public static void close(Source source) {
+        if (source instanceof StreamSource) {
+            close(((StreamSource) source).getInputStream());
+            close(((StreamSource) source).getReader());
+        }
+    }
+
+    /**
+     * Closes the streams of sources, ignoring the errors
+     *
+     * @param sources the sources, some of them may be null
+     */
+    public static void close(Source[] sources) {
+        for (Source source : sources) {
+            close(source);
+        }
+    }
+
+    /**
+     * Gives the absolute name of a classpath resource, as {@link Class#getResource(String)} resolves it
+     *
+     * @param clazz the class used to load the resource
+     * @param name  the resource name, relative to the class package or absolute if it starts with a '/'
+     * @return the resource name for the class loader, without a leading '/'
+     */
+    public static String getResourceName(Class clazz, String name) {
+        if (name.startsWith("/")) {
+            return name.substring(1);
+        }
+        Class c = clazz;
+        while (c.isArray()) {
+            c = c.getComponentType();
+        }
+        String className = c.getName();
+        int index = className.lastIndexOf('.');
+        if (index == -1) {
+            return name;
+        }
+        return className.substring(0, index).replace('.', '/') + "/" + name;
+    }
+
+    /**
+     * Closes a stream opened by this factory, ignoring the errors
+     *
+     * @param closeable the stream, may be null
+     */
+    public static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * Closes a stream, reporting the errors: closing an output stream writes its last bytes
+     *
+     * @param closeable the stream, may be null
+     * @throws ConversionException when the stream can't be closed
+     */
+    public static void closeOrFail(Closeable closeable) throws ConversionException {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ioe) {
+                throw new ConversionException(ioe);
+            }
+        }
+    }
+
+    /**
+     * Stream reading a file through its channel into a direct buffer
+     */
+    private static class ChannelInputStream extends InputStream {
+
+        private final FileInputStream fis;
+
+        private final FileChannel channel;
+
+        private ByteBuffer buffer;
+
+        /**
+         * Position in the file of the first byte of the buffer
+         */
+        private long bufferPosition;
+
+        private long markPosition = -1;
+
+        private ChannelInputStream(FileInputStream fis) {
+            this.fis = fis;
+            this.channel = fis.getChannel();
+            ByteBuffer readBuffer = READ_BUFFERS.get();
+            if (readBuffer == null) {
+                readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            } else {
+                READ_BUFFERS.set(null);
+            }
+            readBuffer.clear();
+            readBuffer.limit(0);
+            this.buffer = readBuffer;
+        }
+
+        private boolean fill() throws IOException {
+            if (buffer == null) {
+                throw new IOException("The stream is closed.");
+            }
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+            bufferPosition = channel.position();
+            buffer.clear();
+            int count = channel.read(buffer);
+            buffer.flip();
+            return count > 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0 || !fill()) {
+                return 0;
+            }
+            if (n <= buffer.remaining()) {
+                buffer.position(buffer.position() + (int) n);
+                return n;
+            }
+            long skipped = buffer.remaining();
+            long position = Math.min(channel.size(), channel.position() + n - skipped);
+            skipped += position - channel.position();
+            buffer.position(buffer.limit());
+            channel.position(position);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (buffer == null) {
+                return 0;
+            }
+            long available = buffer.remaining() + channel.size() - channel.position();
+            return (int) Math.min(Math.max(available, 0), Integer.MAX_VALUE);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readLimit) {
+            if (buffer != null) {
+                markPosition = bufferPosition + buffer.position();
+            }
+        }
+
+        @Override
+        public void reset() throws IOException {
+            if (markPosition == -1) {
+                throw new IOException("The stream is not marked.");
+            }
+            if (buffer == null) {
+                throw new IOException("The stream is closed.");
+            }
+            if (markPosition >= bufferPosition && markPosition <= bufferPosition + buffer.limit()) {
+                buffer.position((int) (markPosition - bufferPosition));
+            } else {
+                buffer.position(buffer.limit());
+                channel.position(markPosition);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (buffer != null) {
+                //The buffer is given back to the closing thread, for its next file
+                READ_BUFFERS.set(buffer);
+                buffer = null;
+            }
+            fis.close();
+        }
+    }
+
+    /**
+     * Stream reading a file through regions mapped one after the other
+     * A region is released when it is garbage collected, after the stream is closed.
+     */
+    private static class MappedInputStream extends InputStream {
+
+        private final FileInputStream fis;
+
+        private final long size;
+
+        private long position;
+
+        private MappedByteBuffer buffer;
+
+        private long markPosition = -1;
+
+        private MappedInputStream(FileInputStream fis, long size) throws IOException {
+            this.fis = fis;
+            this.size = size;
+            nextRegion();
+        }
+
+        private boolean nextRegion() throws IOException {
+            if (buffer != null && buffer.hasRemaining()) {
+                return true;
+            }
+            if (position >= size) {
+                return false;
+            }
+            long regionSize = Math.min(MAP_REGION_SIZE, size - position);
+            buffer = fis.getChannel().map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+            position += regionSize;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextRegion()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextRegion()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && nextRegion()) {
+                int count = (int) Math.min(n - skipped, buffer.remaining());
+                buffer.position(buffer.position() + count);
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            long available = (buffer == null ? 0 : buffer.remaining()) + size - position;
+            return (int) Math.min(available, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readLimit) {
+            markPosition = (buffer == null) ? position : position - buffer.remaining();
+        }
+
+        @Override
+        public void reset() throws IOException {
+            if (markPosition == -1) {
+                throw new IOException("The stream is not marked.");
+            }
+            long regionStart = (buffer == null) ? position : position - buffer.limit();
+            if (buffer != null && markPosition >= regionStart) {
+                buffer.position((int) (markPosition - regionStart));
+            } else {
+                buffer = null;
+                position = markPosition;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            buffer = null;
+            position = size;
+            fis.close();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control of the conversions by a global heap budget
+ * <p/>
+ * A conversion building its input document in memory needs a heap proportional to the size of its input. Before
+ * starting, it reserves an estimate of that memory in the budget, and waits while the budget is exhausted by the
+ * running conversions; the reservation is released at its end. So a few huge reports converted at the same time
+ * are run one after the other instead of exhausting the heap, while the small ones still run in parallel.
+ * <p/>
+ * A conversion needing more than the whole budget is not refused: it reserves the whole budget, and so runs alone
+ * (the serial lane). A streamed conversion, see {@link StreamingConversion}, only reserves
+ * {@link #STREAMING_ESTIMATE} whatever the size of its input (the streaming lane).
+ * The conversions are admitted in their order of arrival, so a large conversion is not starved by the small ones.
+ * <p/>
+ * There is no budget by default: the conversions are governed once a budget is installed as the default one,
+ * for example {@code MemoryBudget.setDefault(MemoryBudget.ofMaxMemory(0.5))}, or given to a conversion service.
+ */
+public class MemoryBudget {
+
+    /**
+     * The default ratio between the heap used by a document in memory and the size of its XML file
+     */
+    public static final double DEFAULT_EXPANSION_FACTOR = 6;
+
+    /**
+     * The memory reserved by a streamed conversion
+     */
+    public static final long STREAMING_ESTIMATE = 16L * 1024 * 1024;
+
+    /**
+     * The memory needed by a conversion besides its document: transformer, parser and output buffers
+     */
+    public static final long CONVERSION_OVERHEAD = 1024L * 1024;
+
+    /**
+     * The assumed compression ratio of the inputs whose uncompressed size can't be read
+     */
+    private static final int COMPRESSION_RATIO = 10;
+
+    private static volatile MemoryBudget defaultBudget;
+
+    private final long budget;
+
+    private final LinkedList<Object> waiters = new LinkedList<Object>();
+
+    private long used;
+
+    private final AtomicLong admittedCount = new AtomicLong();
+
+    private final AtomicLong waitCount = new AtomicLong();
+
+    private final AtomicLong serialCount = new AtomicLong();
+
+    /**
+     * Creates a budget
+     *
+     * @param budget the heap shared by the conversions in bytes
+     */
+    public MemoryBudget(long budget) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("The memory budget must be positive: " + budget);
+        }
+        this.budget = budget;
+    }
+
+    /**
+     * Creates a budget sized on the maximum heap of the JVM
+     *
+     * @param ratio the part of the maximum heap given to the conversions, between 0 and 1
+     * @return the budget
+     */
+    public static MemoryBudget ofMaxMemory(double ratio) {
+        if (ratio <= 0 || ratio > 1) {
+            throw new IllegalArgumentException("The part of the heap must be between 0 and 1: " + ratio);
+        }
+        return new MemoryBudget((long) (Runtime.getRuntime().maxMemory() * ratio));
+    }
+
+    /**
+     * Gives the budget shared by default by the conversion services
+     *
+     * @return the default budget, null if the conversions are not governed, which is the default
+     */
+    public static MemoryBudget getDefault() {
+        return defaultBudget;
+    }
+
+    /**
+     * Replaces the default budget
+     *
+     * @param budget the new default budget, null to let all the conversions run at once again
+     */
+    public static void setDefault(MemoryBudget budget) {
+        defaultBudget = budget;
+    }
+
+    /**
+     * Estimates the heap needed to convert an input file in memory
+     *
+     * @param inputFile       the input file, compressed or not
+     * @param expansionFactor the ratio between the heap used by the document and the size of the XML
+     * @return the estimated memory in bytes
+     */
+    public static long estimate(File inputFile, double expansionFactor) {
+        return (long) (getUncompressedLength(inputFile) * expansionFactor) + CONVERSION_OVERHEAD;
+    }
+
+    /**
+     * Gives the size of the XML of a file, read from the gzip trailer for a gzip file
+     */
+    private static long getUncompressedLength(File inputFile) {
+        long length = inputFile.length();
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(inputFile, "r");
+            byte[] head = new byte[4];
+            int count = file.read(head);
+            Compression compression = Compression.fromMagic(head, Math.max(count, 0));
+            if (compression == Compression.NONE) {
+                return length;
+            }
+            if (compression == Compression.GZIP && length >= 18) {
+                //The gzip trailer ends with the uncompressed size modulo 2^32, in little endian
+                file.seek(length - 4);
+                long size = (file.read() & 0xFFL) | (file.read() & 0xFFL) << 8 | (file.read() & 0xFFL) << 16 | (file.read() & 0xFFL) << 24;
+                if (size >= length) {
+                    return size;
+                }
+            }
+            return length * COMPRESSION_RATIO;
+        } catch (IOException ioe) {
+            //The conversion will report the error
+            return length;
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException ioe) {
+                    //Nothing more to do with the input
+                }
+            }
+        }
+    }
+
+    /**
+     * Reserves memory, waiting for it if needed
+     * A request larger than the budget reserves the whole budget.
+     *
+     * @param bytes the requested memory in bytes
+     * @return the reservation, to release at the end of the conversion
+     * @throws InterruptedException when the thread is interrupted while waiting
+     */
+    public Grant acquire(long bytes) throws InterruptedException {
+        long granted = Math.max(0, Math.min(bytes, budget));
+        Object waiter = new Object();
+        synchronized (this) {
+            waiters.addLast(waiter);
+            boolean waited = false;
+            try {
+                while (waiters.getFirst() != waiter || used + granted > budget) {
+                    waited = true;
+                    wait();
+                }
+            } catch (InterruptedException ie) {
+                waiters.remove(waiter);
+                notifyAll();
+                throw ie;
+            }
+            waiters.removeFirst();
+            used += granted;
+            admittedCount.incrementAndGet();
+            if (waited) {
+                waitCount.incrementAndGet();
+            }
+            if (bytes > budget) {
+                serialCount.incrementAndGet();
+            }
+            //The next waiter may fit in the remaining budget
+            notifyAll();
+        }
+        return new Grant(granted);
+    }
+
+    private synchronized void release(long granted) {
+        used -= granted;
+        notifyAll();
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the memory currently reserved in bytes
+     */
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    /**
+     * @return the number of reservations waiting for memory
+     */
+    public synchronized int getWaitingCount() {
+        return waiters.size();
+    }
+
+    public long getAdmittedCount() {
+        return admittedCount.get();
+    }
+
+    /**
+     * @return the number of reservations which had to wait for memory
+     */
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    /**
+     * @return the number of reservations larger than the budget, run alone
+     */
+    public long getSerialCount() {
+        return serialCount.get();
+    }
+
+    /**
+     * A reservation of memory in a budget
+     */
+    public final class Grant {
+
+        private final long bytes;
+
+        private boolean released;
+
+        private Grant(long bytes) {
+            this.bytes = bytes;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Gives the memory back to the budget, only the first call has an effect
+         */
+        public void release() {
+            synchronized (MemoryBudget.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            MemoryBudget.this.release(bytes);
+        }
+    }
+}
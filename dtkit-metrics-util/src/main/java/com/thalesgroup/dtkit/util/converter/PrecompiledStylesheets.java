@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import net.sf.saxon.Configuration;
+import net.sf.saxon.PreparedStylesheet;
+import net.sf.saxon.Version;
+import net.sf.saxon.om.NamePool;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.XsltExecutable;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Bundle of stylesheets compiled ahead of time
+ * <p/>
+ * Compiling its stylesheet is the main cost of the first conversion of a tool. The stylesheets can be compiled at
+ * build time and exported into a bundle with {@link #export(Collection, OutputStream)}; a conversion engine loads
+ * the bundle at initialization time and uses its stylesheets instead of compiling them from source.
+ * A stylesheet of the bundle is identified by the SHA-256 hash of its content and of the modules it includes or
+ * imports, see {@link XslKey#computeDigest()}: a stylesheet modified since the export, or one of its modules, is
+ * compiled from source again.
+ * <p/>
+ * The bundle is the Java serialization of the Saxon compiled stylesheets, with the name pool they share. It can
+ * only be read by the Saxon version which wrote it; a bundle written by another version is ignored.
+ * The default conversion engine loads the bundle found in the classpath at {@link #DEFAULT_RESOURCE}, if any.
+ */
+public class PrecompiledStylesheets {
+
+    public static final String DEFAULT_RESOURCE = "META-INF/dtkit/stylesheets.xslc";
+
+    private static final String MAGIC = "dtkit-xslc";
+
+    private final Set<String> digests;
+
+    private final byte[] stylesheets;
+
+    private PrecompiledStylesheets(Set<String> digests, byte[] stylesheets) {
+        this.digests = Collections.unmodifiableSet(digests);
+        this.stylesheets = stylesheets;
+    }
+
+    /**
+     * Compiles stylesheets and writes them into a bundle
+     *
+     * @param xslKeys      the stylesheets to compile
+     * @param outputStream the bundle stream, not closed
+     * @throws ConversionException when a stylesheet can't be compiled or serialized
+     */
+    public static void export(Collection<XslKey> xslKeys, OutputStream outputStream) throws ConversionException {
+        Processor processor = new Processor(false);
+        XsltExecutableCache xsltExecutableCache = new XsltExecutableCache(processor, Math.max(1, xslKeys.size()));
+        Map<String, PreparedStylesheet> compiledStylesheets = new LinkedHashMap<String, PreparedStylesheet>();
+        for (XslKey xslKey : xslKeys) {
+            String digest = xslKey.computeDigest();
+            if (!compiledStylesheets.containsKey(digest)) {
+                compiledStylesheets.put(digest, xsltExecutableCache.get(xslKey).getUnderlyingCompiledStylesheet());
+            }
+        }
+
+        try {
+            DataOutputStream out = new DataOutputStream(outputStream);
+            out.writeUTF(MAGIC);
+            out.writeUTF(Version.getProductVersion());
+            out.writeInt(compiledStylesheets.size());
+            for (String digest : compiledStylesheets.keySet()) {
+                out.writeUTF(digest);
+            }
+            ObjectOutputStream objectOutputStream = new ObjectOutputStream(out);
+            //The stylesheets are written with the name pool holding the codes of their names
+            objectOutputStream.writeObject(processor.getUnderlyingConfiguration().getNamePool());
+            objectOutputStream.writeObject(compiledStylesheets);
+            objectOutputStream.flush();
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to export the compiled stylesheets", ioe);
+        }
+    }
+
+    /**
+     * Compiles stylesheets and writes them into a bundle file
+     *
+     * @param xslKeys    the stylesheets to compile
+     * @param bundleFile the bundle file, its parent directories are created if needed
+     * @throws ConversionException when a stylesheet can't be compiled or serialized, or the file can't be written
+     */
+    public static void export(Collection<XslKey> xslKeys, File bundleFile) throws ConversionException {
+        File parent = bundleFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new ConversionException("Can't create the directory " + parent);
+        }
+        OutputStream outputStream = null;
+        try {
+            outputStream = new BufferedOutputStream(new FileOutputStream(bundleFile));
+            export(xslKeys, outputStream);
+            outputStream.close();
+            outputStream = null;
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to write the compiled stylesheets to " + bundleFile, ioe);
+        } finally {
+            FileSourceFactory.close(outputStream);
+        }
+    }
+
+    /**
+     * Reads a bundle
+     *
+     * @param inputStream the bundle stream, not closed
+     * @return the bundle, null if it was written by another Saxon version
+     * @throws ConversionException when the stream isn't a bundle or can't be read
+     */
+    public static PrecompiledStylesheets load(InputStream inputStream) throws ConversionException {
+        try {
+            DataInputStream in = new DataInputStream(inputStream);
+            if (!MAGIC.equals(in.readUTF())) {
+                throw new ConversionException("The stream is not a bundle of compiled stylesheets.");
+            }
+            if (!Version.getProductVersion().equals(in.readUTF())) {
+                return null;
+            }
+            int count = in.readInt();
+            Set<String> digests = new HashSet<String>();
+            for (int i = 0; i < count; i++) {
+                digests.add(in.readUTF());
+            }
+            ByteArrayOutputStream stylesheets = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                stylesheets.write(buffer, 0, read);
+            }
+            return new PrecompiledStylesheets(digests, stylesheets.toByteArray());
+        } catch (UTFDataFormatException udfe) {
+            throw new ConversionException("The stream is not a bundle of compiled stylesheets.", udfe);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to read the compiled stylesheets", ioe);
+        }
+    }
+
+    /**
+     * Reads a bundle file
+     *
+     * @param bundleFile the bundle file
+     * @return the bundle, null if it was written by another Saxon version
+     * @throws ConversionException when the file isn't a bundle or can't be read
+     */
+    public static PrecompiledStylesheets load(File bundleFile) throws ConversionException {
+        InputStream inputStream = null;
+        try {
+            inputStream = FileSourceFactory.newInputStream(bundleFile);
+            return load(inputStream);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to read the compiled stylesheets from " + bundleFile, ioe);
+        } finally {
+            FileSourceFactory.close(inputStream);
+        }
+    }
+
+    /**
+     * Reads a bundle from the classpath
+     *
+     * @param classLoader the class loader of the resource
+     * @param name        the absolute resource name
+     * @return the bundle, null if the resource doesn't exist or was written by another Saxon version
+     * @throws ConversionException when the resource isn't a bundle or can't be read
+     */
+    public static PrecompiledStylesheets loadResource(ClassLoader classLoader, String name) throws ConversionException {
+        InputStream inputStream = (classLoader == null) ? ClassLoader.getSystemResourceAsStream(name) : classLoader.getResourceAsStream(name);
+        if (inputStream == null) {
+            return null;
+        }
+        try {
+            return load(new BufferedInputStream(inputStream));
+        } finally {
+            FileSourceFactory.close(inputStream);
+        }
+    }
+
+    /**
+     * Gives the stylesheets of the bundle
+     *
+     * @return the SHA-256 hashes of the contents of the stylesheets
+     */
+    public Set<String> getDigests() {
+        return digests;
+    }
+
+    public int size() {
+        return digests.size();
+    }
+
+    /**
+     * Deserializes a copy of the compiled stylesheets for a processor
+     * The name pool of the processor is replaced by the name pool of the bundle, so this must be done before the
+     * processor compiles a stylesheet or builds a document.
+     *
+     * @param processor the processor running the stylesheets
+     * @return the compiled stylesheets, by SHA-256 hash of their content
+     * @throws ConversionException when the stylesheets can't be deserialized
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, XsltExecutable> attach(Processor processor) throws ConversionException {
+        try {
+            ObjectInputStream in = new BundleInputStream(new ByteArrayInputStream(stylesheets));
+            NamePool namePool = (NamePool) in.readObject();
+            Map<String, PreparedStylesheet> compiledStylesheets = (Map<String, PreparedStylesheet>) in.readObject();
+
+            Configuration configuration = processor.getUnderlyingConfiguration();
+            configuration.setNamePool(namePool);
+            Map<String, XsltExecutable> executables = new HashMap<String, XsltExecutable>();
+            for (Map.Entry<String, PreparedStylesheet> entry : compiledStylesheets.entrySet()) {
+                PreparedStylesheet compiledStylesheet = entry.getValue();
+                compiledStylesheet.setConfiguration(configuration);
+                compiledStylesheet.getExecutable().setConfiguration(configuration);
+                executables.put(entry.getKey(), new PrecompiledExecutable(processor, compiledStylesheet));
+            }
+            return Collections.unmodifiableMap(executables);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to deserialize the compiled stylesheets", ioe);
+        } catch (ClassNotFoundException cnfe) {
+            throw new ConversionException("Error to deserialize the compiled stylesheets", cnfe);
+        }
+    }
+
+    /**
+     * Resolves the Saxon classes with the class loader of the library rather than the caller's one
+     */
+    private static class BundleInputStream extends ObjectInputStream {
+
+        private BundleInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, PrecompiledStylesheets.class.getClassLoader());
+            } catch (ClassNotFoundException cnfe) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+
+    private static class PrecompiledExecutable extends XsltExecutable {
+
+        private PrecompiledExecutable(Processor processor, PreparedStylesheet compiledStylesheet) {
+            super(processor, compiledStylesheet);
+        }
+    }
+}
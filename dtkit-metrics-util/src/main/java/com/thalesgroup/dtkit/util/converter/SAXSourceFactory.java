@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.sax.SAXSource;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Builds the SAX sources used to feed the input documents straight into Saxon
+ * <p/>
+ * The input is parsed once, directly into the Saxon tree, without an intermediate DOM.
+ * External DTDs and entities are never loaded.
+ */
+public class SAXSourceFactory {
+
+    /**
+     * Entity resolver ignoring all the external DTDs and entities
+     */
+    public static final EntityResolver IGNORE_EXTERNAL_ENTITY_RESOLVER = new EntityResolver() {
+        public InputSource resolveEntity(String publicId, String systemId)
+                throws SAXException, IOException {
+            return new InputSource(new StringReader(""));
+        }
+    };
+
+    private static final SAXParserFactory SAX_PARSER_FACTORY = SAXParserFactory.newInstance();
+
+    static {
+        SAX_PARSER_FACTORY.setNamespaceAware(true);
+        SAX_PARSER_FACTORY.setValidating(false);
+    }
+
+    /**
+     * Creates a namespace aware XML reader ignoring external entities
+     *
+     * @return a new XML reader
+     * @throws ConversionException when no parser can be created
+     */
+    public static XMLReader newXMLReader() throws ConversionException {
+        try {
+            XMLReader xmlReader;
+            //The factory is not guaranteed to be thread safe
+            synchronized (SAX_PARSER_FACTORY) {
+                xmlReader = SAX_PARSER_FACTORY.newSAXParser().getXMLReader();
+            }
+            xmlReader.setEntityResolver(IGNORE_EXTERNAL_ENTITY_RESOLVER);
+            return xmlReader;
+        } catch (ParserConfigurationException pe) {
+            throw new ConversionException("Error to create the XML parser", pe);
+        } catch (SAXException sae) {
+            throw new ConversionException("Error to create the XML parser", sae);
+        }
+    }
+
+    /**
+     * Creates a SAX source for an input
+     *
+     * @param inputSource the input
+     * @return the SAX source to give to Saxon
+     * @throws ConversionException when no parser can be created
+     */
+    public static SAXSource newSAXSource(InputSource inputSource) throws ConversionException {
+        return new SAXSource(newXMLReader(), inputSource);
+    }
+}
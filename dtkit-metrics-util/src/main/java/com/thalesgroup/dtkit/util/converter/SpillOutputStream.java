@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import java.io.*;
+
+/**
+ * Output stream kept in memory until a size threshold, then spilled to a temporary file
+ * <p/>
+ * Small conversion results never touch the disk; very large ones don't exhaust the heap.
+ * The caller must call {@link #delete()} once the content is consumed to remove the temporary file, if any.
+ */
+public class SpillOutputStream extends OutputStream {
+
+    public static final long DEFAULT_THRESHOLD = 8 * 1024 * 1024;
+
+    private final long threshold;
+
+    private final File directory;
+
+    private ByteArrayOutputStream memoryOutputStream = new ByteArrayOutputStream(4096);
+
+    private OutputStream currentOutputStream = memoryOutputStream;
+
+    private File file;
+
+    private long size;
+
+    private boolean closed;
+
+    public SpillOutputStream() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public SpillOutputStream(long threshold) {
+        this(threshold, null);
+    }
+
+    /**
+     * Creates a stream
+     *
+     * @param threshold the maximum number of bytes kept in memory
+     * @param directory the directory of the temporary file, the default temporary directory if null
+     */
+    public SpillOutputStream(long threshold, File directory) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("The threshold must not be negative: " + threshold);
+        }
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkThreshold(1);
+        currentOutputStream.write(b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkThreshold(len);
+        currentOutputStream.write(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        currentOutputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            currentOutputStream.close();
+        }
+    }
+
+    private void checkThreshold(int count) throws IOException {
+        if (closed) {
+            throw new IOException("The stream is closed.");
+        }
+        if (memoryOutputStream != null && size + count > threshold) {
+            file = File.createTempFile("conversion", ".out", directory);
+            OutputStream fileOutputStream = new BufferedOutputStream(new FileOutputStream(file));
+            memoryOutputStream.writeTo(fileOutputStream);
+            memoryOutputStream = null;
+            currentOutputStream = fileOutputStream;
+        }
+    }
+
+    /**
+     * @return true if the content is still held in memory, false if it was spilled to a file
+     */
+    public boolean isInMemory() {
+        return memoryOutputStream != null;
+    }
+
+    /**
+     * @return the temporary file holding the content, null if the content is in memory
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Gives a stream on the written content
+     *
+     * @return an input stream to read the content
+     * @throws IOException when the temporary file can't be read
+     */
+    public InputStream getInputStream() throws IOException {
+        closeForRead();
+        if (isInMemory()) {
+            return new ByteArrayInputStream(memoryOutputStream.toByteArray());
+        }
+        return new BufferedInputStream(new FileInputStream(file));
+    }
+
+    /**
+     * Copies the written content
+     *
+     * @param outputStream the target stream
+     * @throws IOException when the content can't be copied
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        closeForRead();
+        if (isInMemory()) {
+            memoryOutputStream.writeTo(outputStream);
+            return;
+        }
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, length);
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Decodes the written content
+     *
+     * @param charsetName the encoding of the content
+     * @return the content
+     * @throws IOException when the content can't be read
+     */
+    public String toString(String charsetName) throws IOException {
+        closeForRead();
+        if (isInMemory()) {
+            return memoryOutputStream.toString(charsetName);
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream((int) Math.min(size, Integer.MAX_VALUE));
+        writeTo(content);
+        return content.toString(charsetName);
+    }
+
+    /**
+     * Releases the content, deleting the temporary file if any
+     *
+     * @return true if there is no more temporary file
+     */
+    public boolean delete() {
+        try {
+            close();
+        } catch (IOException ioe) {
+            //The file is deleted anyway
+        }
+        memoryOutputStream = null;
+        boolean deleted = file == null || !file.exists() || file.delete();
+        if (deleted) {
+            file = null;
+        }
+        return deleted;
+    }
+
+    private void closeForRead() throws IOException {
+        if (!closed) {
+            close();
+        }
+        if (memoryOutputStream == null && file == null) {
+            throw new IOException("The content is deleted.");
+        }
+    }
+}
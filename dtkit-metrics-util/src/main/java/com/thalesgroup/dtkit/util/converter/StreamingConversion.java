@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import net.sf.saxon.Configuration;
+import net.sf.saxon.Controller;
+import net.sf.saxon.event.NamespaceReducer;
+import net.sf.saxon.event.PipelineConfiguration;
+import net.sf.saxon.event.Receiver;
+import net.sf.saxon.event.ReceivingContentHandler;
+import net.sf.saxon.om.Axis;
+import net.sf.saxon.om.AxisIterator;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.s9api.*;
+import net.sf.saxon.tinytree.TinyBuilder;
+import net.sf.saxon.trans.XPathException;
+import net.sf.saxon.type.Type;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Conversion of a large document, record by record
+ * <p/>
+ * The input is read with SAX and split on the children of its root element, the records (for example the
+ * testsuites or the testcases of a report). Each record is built alone in a small Saxon tree, under a copy of the
+ * root element, and transformed by the stylesheet. The result root element is written once, from the result of
+ * the first record, followed by the content of the result root element of each record.
+ * <p/>
+ * The memory use is bounded by the size of the largest record, whatever the size of the document. The stylesheet
+ * must be streamable in this sense: the result of a record only depends on the record and on the root element,
+ * the attributes of the result root element don't depend on the records, and the text directly under the input
+ * root element is ignored.
+ */
+class StreamingConversion {
+
+    private final Processor processor;
+
+    private final XsltTransformerPool transformerPool;
+
+    private final Map<String, Object> params;
+
+    StreamingConversion(Processor processor, XsltTransformerPool transformerPool, Map<String, Object> params) {
+        this.processor = processor;
+        this.transformerPool = transformerPool;
+        this.params = params;
+    }
+
+    /**
+     * Runs the conversion
+     *
+     * @param inputFile the input document
+     * @param out       the serializer of the result, see {@link #newSerializer()}
+     * @throws ConversionException when the conversion fails
+     */
+    void convert(InputSource inputFile, MergingSerializer out) throws ConversionException {
+        XsltTransformer xsltTransformer = transformerPool.borrow();
+        if (params != null) {
+            for (Map.Entry<String, Object> entry : params.entrySet()) {
+                xsltTransformer.setParameter(new QName(entry.getKey()), new XdmAtomicValue(String.valueOf(entry.getValue())));
+            }
+        }
+        RecordMerger merger = new RecordMerger(xsltTransformer, out);
+        RecordSplitter splitter = new RecordSplitter(merger);
+        try {
+            XMLReader xmlReader = SAXSourceFactory.newXMLReader();
+            xmlReader.setContentHandler(splitter);
+            xmlReader.parse(inputFile);
+            merger.close();
+        } catch (SAXException sae) {
+            Exception cause = (sae.getException() != null) ? sae.getException() : sae;
+            throw new ConversionException("Error to convert the input XML document", cause);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to convert the input XML document", ioe);
+        } catch (XPathException xpe) {
+            throw new ConversionException("Error to convert the input XML document", xpe);
+        }
+        transformerPool.release(xsltTransformer);
+    }
+
+    static MergingSerializer newSerializer() {
+        return new MergingSerializer();
+    }
+
+    /**
+     * Serializer giving its receiver, configured with the output properties of the stylesheet
+     */
+    static class MergingSerializer extends Serializer {
+
+        private Receiver getReceiver(Controller controller) throws SaxonApiException {
+            return getReceiver(controller.getConfiguration(), controller, controller.getOutputProperties());
+        }
+    }
+
+    /**
+     * Transforms each record and writes the merged result
+     */
+    private class RecordMerger {
+
+        private final XsltTransformer xsltTransformer;
+
+        private final MergingSerializer serializer;
+
+        private Receiver out;
+
+        private RecordMerger(XsltTransformer xsltTransformer, MergingSerializer serializer) {
+            this.xsltTransformer = xsltTransformer;
+            this.serializer = serializer;
+        }
+
+        private void transform(NodeInfo record) throws SaxonApiException, XPathException {
+            XdmDestination destination = new XdmDestination();
+            xsltTransformer.setInitialContextNode(processor.newDocumentBuilder().wrap(record));
+            xsltTransformer.setDestination(destination);
+            xsltTransformer.transform();
+
+            NodeInfo resultRoot = getRootElement(destination.getXdmNode().getUnderlyingNode());
+            if (resultRoot == null) {
+                return;
+            }
+            if (out == null) {
+                open(resultRoot);
+            }
+            AxisIterator children = resultRoot.iterateAxis(Axis.CHILD);
+            NodeInfo child;
+            while ((child = (NodeInfo) children.next()) != null) {
+                child.copy(out, NodeInfo.ALL_NAMESPACES, true, 0);
+            }
+        }
+
+        private void open(NodeInfo resultRoot) throws SaxonApiException, XPathException {
+            Controller controller = xsltTransformer.getUnderlyingController();
+            //The records are copied with their in-scope namespaces, the reducer removes the redundant declarations
+            NamespaceReducer namespaceReducer = new NamespaceReducer();
+            namespaceReducer.setUnderlyingReceiver(serializer.getReceiver(controller));
+            out = namespaceReducer;
+            out.setPipelineConfiguration(controller.makePipelineConfiguration());
+            out.open();
+            out.startDocument(0);
+            out.startElement(resultRoot.getNameCode(), resultRoot.getTypeAnnotation(), 0, 0);
+            int[] namespaces = resultRoot.getDeclaredNamespaces(null);
+            for (int i = 0; i < namespaces.length && namespaces[i] != -1; i++) {
+                out.namespace(namespaces[i], 0);
+            }
+            AxisIterator attributes = resultRoot.iterateAxis(Axis.ATTRIBUTE);
+            NodeInfo attribute;
+            while ((attribute = (NodeInfo) attributes.next()) != null) {
+                out.attribute(attribute.getNameCode(), attribute.getTypeAnnotation(), attribute.getStringValueCS(), 0, 0);
+            }
+            out.startContent();
+        }
+
+        private void close() throws XPathException {
+            if (out == null) {
+                throw new ConversionException("The streamed conversion didn't produce a root element.");
+            }
+            out.endElement();
+            out.endDocument();
+            out.close();
+        }
+
+        private NodeInfo getRootElement(NodeInfo document) {
+            AxisIterator children = document.iterateAxis(Axis.CHILD);
+            NodeInfo child;
+            while ((child = (NodeInfo) children.next()) != null) {
+                if (child.getNodeKind() == Type.ELEMENT) {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Splits the SAX events of the document in records, each built in its own tree under a copy of the root element
+     */
+    private class RecordSplitter extends DefaultHandler {
+
+        private final RecordMerger merger;
+
+        private final Configuration configuration = processor.getUnderlyingConfiguration();
+
+        private final List<String[]> rootPrefixMappings = new ArrayList<String[]>();
+
+        private final List<String[]> pendingPrefixMappings = new ArrayList<String[]>();
+
+        private String[] rootName;
+
+        private Attributes rootAttributes;
+
+        private TinyBuilder builder;
+
+        private ReceivingContentHandler recordHandler;
+
+        private int depth;
+
+        private boolean recordFound;
+
+        private RecordSplitter(RecordMerger merger) {
+            this.merger = merger;
+        }
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri) throws SAXException {
+            if (depth == 0) {
+                rootPrefixMappings.add(new String[]{prefix, uri});
+            } else if (depth == 1) {
+                pendingPrefixMappings.add(new String[]{prefix, uri});
+            } else {
+                recordHandler.startPrefixMapping(prefix, uri);
+            }
+        }
+
+        @Override
+        public void endPrefixMapping(String prefix) throws SAXException {
+            if (depth > 1) {
+                recordHandler.endPrefixMapping(prefix);
+            }
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if (depth == 0) {
+                rootName = new String[]{uri, localName, qName};
+                rootAttributes = new AttributesImpl(attributes);
+            } else if (depth == 1) {
+                startRecord();
+                for (String[] mapping : pendingPrefixMappings) {
+                    recordHandler.startPrefixMapping(mapping[0], mapping[1]);
+                }
+                pendingPrefixMappings.clear();
+                recordHandler.startElement(uri, localName, qName, attributes);
+            } else {
+                recordHandler.startElement(uri, localName, qName, attributes);
+            }
+            depth++;
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            depth--;
+            if (depth == 0) {
+                if (!recordFound) {
+                    //A root element without record is converted alone
+                    startRecord();
+                    endRecord();
+                }
+            } else if (depth == 1) {
+                recordHandler.endElement(uri, localName, qName);
+                endRecord();
+            } else {
+                recordHandler.endElement(uri, localName, qName);
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (depth > 1) {
+                recordHandler.characters(ch, start, length);
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            if (depth > 1) {
+                recordHandler.ignorableWhitespace(ch, start, length);
+            }
+        }
+
+        @Override
+        public void processingInstruction(String target, String data) throws SAXException {
+            if (depth > 1) {
+                recordHandler.processingInstruction(target, data);
+            }
+        }
+
+        private void startRecord() throws SAXException {
+            recordFound = true;
+            PipelineConfiguration pipelineConfiguration = configuration.makePipelineConfiguration();
+            builder = new TinyBuilder();
+            builder.setPipelineConfiguration(pipelineConfiguration);
+            recordHandler = new ReceivingContentHandler();
+            recordHandler.setPipelineConfiguration(pipelineConfiguration);
+            recordHandler.setReceiver(builder);
+            recordHandler.startDocument();
+            for (String[] mapping : rootPrefixMappings) {
+                recordHandler.startPrefixMapping(mapping[0], mapping[1]);
+            }
+            recordHandler.startElement(rootName[0], rootName[1], rootName[2], rootAttributes);
+        }
+
+        private void endRecord() throws SAXException {
+            recordHandler.endElement(rootName[0], rootName[1], rootName[2]);
+            for (String[] mapping : rootPrefixMappings) {
+                recordHandler.endPrefixMapping(mapping[0]);
+            }
+            recordHandler.endDocument();
+            NodeInfo record = builder.getCurrentRoot();
+            builder = null;
+            recordHandler = null;
+            try {
+                merger.transform(record);
+            } catch (SaxonApiException sae) {
+                throw new SAXException(sae);
+            } catch (XPathException xpe) {
+                throw new SAXException(xpe);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hash of a stylesheet and of its modules, with the state of the module files when it was computed
+ * <p/>
+ * The hash is no longer current once a module file is modified, for example an included stylesheet that the key
+ * of the main stylesheet doesn't identify.
+ */
+class XslDigest {
+
+    private final String digest;
+
+    private final List<File> files = new ArrayList<File>();
+
+    private final List<Long> lastModifiedTimes = new ArrayList<Long>();
+
+    private final List<Long> lengths = new ArrayList<Long>();
+
+    private XslDigest(String digest, Set<String> moduleLocations) {
+        this.digest = digest;
+        for (String moduleLocation : moduleLocations) {
+            if (moduleLocation.startsWith("file:")) {
+                File file = new File(URI.create(moduleLocation));
+                files.add(file);
+                lastModifiedTimes.add(file.lastModified());
+                lengths.add(file.length());
+            }
+        }
+    }
+
+    /**
+     * Computes the hash of a stylesheet, see {@link XslKey#computeDigest()}
+     *
+     * @param xslKey the stylesheet
+     * @return the hash
+     * @throws ConversionException when a module of the stylesheet can't be read
+     */
+    static XslDigest compute(XslKey xslKey) throws ConversionException {
+        Set<String> moduleLocations = new LinkedHashSet<String>();
+        String digest = xslKey.computeDigest(moduleLocations);
+        return new XslDigest(digest, moduleLocations);
+    }
+
+    String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Tells whether the module files are unchanged since the hash was computed
+     *
+     * @return true if the hash is current
+     */
+    boolean isCurrent() {
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            if (file.lastModified() != lastModifiedTimes.get(i) || file.length() != lengths.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,421 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Identity of an XSL stylesheet
+ * <p/>
+ * A key identifies a stylesheet independently of the stream used to read it, so that a compiled form
+ * can be shared between conversions. Three kinds of keys are supported:
+ * <ul>
+ * <li>a classpath resource, identified by its absolute name and the URL it is loaded from</li>
+ * <li>a file, identified by its canonical path, its last modification time and its size</li>
+ * <li>an XSL content, identified by a SHA-1 hash of the content</li>
+ * </ul>
+ */
+public abstract class XslKey implements Serializable {
+
+    /**
+     * Opens a new source for the stylesheet
+     *
+     * @return a source to compile
+     * @throws IOException when the stylesheet can't be read
+     */
+    public abstract Source openSource() throws IOException;
+
+    /**
+     * Computes a SHA-256 hash of the stylesheet content, to identify the version of the stylesheet across runs.
+     * The modules included or imported by the stylesheet, directly or not, are part of the hash: they are resolved
+     * against the system id of the including module, as the compiler does. The locations of the modules are not
+     * part of the hash, so that the hash doesn't change when the stylesheets are installed elsewhere.
+     *
+     * @return the hexadecimal hash of the content
+     * @throws ConversionException when a module of the stylesheet can't be read
+     */
+    public String computeDigest() throws ConversionException {
+        return computeDigest(new LinkedHashSet<String>());
+    }
+
+    /**
+     * Computes the hash of the stylesheet content, see {@link #computeDigest()}
+     *
+     * @param moduleLocations receives the system ids of the modules read, the system id of the main module is
+     *                        missing when the stylesheet has no location
+     * @return the hexadecimal hash of the content
+     * @throws ConversionException when a module of the stylesheet can't be read
+     */
+    String computeDigest(Set<String> moduleLocations) throws ConversionException {
+        MessageDigest messageDigest = Digests.newMessageDigest("SHA-256");
+        Source source = null;
+        try {
+            source = openSource();
+            if (source.getSystemId() != null) {
+                moduleLocations.add(source.getSystemId());
+            }
+            digestModule(source, messageDigest, moduleLocations);
+            return Digests.toHex(messageDigest.digest());
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to read the xsl " + this, ioe);
+        } finally {
+            FileSourceFactory.close(source);
+        }
+    }
+
+    /**
+     * Hashes the content of a module, then the modules it includes or imports, in document order
+     */
+    private void digestModule(Source source, MessageDigest messageDigest, Set<String> visitedModules) throws IOException {
+        InputStream inputStream = (source instanceof StreamSource) ? ((StreamSource) source).getInputStream() : null;
+        Reader reader = (source instanceof StreamSource) ? ((StreamSource) source).getReader() : null;
+        InputSource inputSource;
+        if (inputStream != null) {
+            //The parser closes its input, the stream is read to its end once parsed
+            inputSource = new InputSource(new FilterInputStream(new DigestInputStream(inputStream, messageDigest)) {
+                @Override
+                public void close() {
+                }
+            });
+        } else if (reader != null) {
+            inputSource = new InputSource(new DigestReader(reader, messageDigest));
+        } else {
+            messageDigest.update(toString().getBytes("UTF-8"));
+            return;
+        }
+        inputSource.setSystemId(source.getSystemId());
+        ModuleHandler moduleHandler = new ModuleHandler();
+        try {
+            XMLReader xmlReader = SAXSourceFactory.newXMLReader();
+            xmlReader.setContentHandler(moduleHandler);
+            xmlReader.parse(inputSource);
+        } catch (SAXException sae) {
+            throw new ConversionException("Error to read the xsl " + this + " - " + source.getSystemId(), sae);
+        }
+        //The parser may stop before the end of the stream
+        drain(inputSource);
+        messageDigest.update((byte) 0);
+
+        for (String href : moduleHandler.hrefs) {
+            String location = resolve(source.getSystemId(), href);
+            if (visitedModules.add(location)) {
+                InputStream moduleStream = new URL(location).openStream();
+                try {
+                    digestModule(new StreamSource(moduleStream, location), messageDigest, visitedModules);
+                } finally {
+                    FileSourceFactory.close(moduleStream);
+                }
+            }
+        }
+    }
+
+    private void drain(InputSource inputSource) throws IOException {
+        if (inputSource.getByteStream() != null) {
+            byte[] buffer = new byte[8192];
+            while (inputSource.getByteStream().read(buffer) != -1) {
+            }
+        } else {
+            char[] buffer = new char[8192];
+            while (inputSource.getCharacterStream().read(buffer) != -1) {
+            }
+        }
+    }
+
+    private String resolve(String systemId, String href) throws IOException {
+        try {
+            URI uri = new URI(href);
+            if (!uri.isAbsolute()) {
+                if (systemId == null) {
+                    throw new FileNotFoundException("The xsl module '" + href + "' of " + this + " can't be resolved without the location of the stylesheet.");
+                }
+                uri = new URI(systemId).resolve(uri);
+            }
+            return uri.toString();
+        } catch (URISyntaxException use) {
+            throw new FileNotFoundException("The xsl module '" + href + "' of " + this + " can't be resolved: " + use.getMessage());
+        }
+    }
+
+    /**
+     * Collects the locations of the modules included or imported by a module
+     */
+    private static class ModuleHandler extends DefaultHandler {
+
+        private static final String XSLT_NAMESPACE = "http://www.w3.org/1999/XSL/Transform";
+
+        private final List<String> hrefs = new ArrayList<String>();
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (XSLT_NAMESPACE.equals(uri) && ("include".equals(localName) || "import".equals(localName))) {
+                String href = attributes.getValue("", "href");
+                if (href != null) {
+                    hrefs.add(href);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hashes the characters read, encoded in UTF-8
+     */
+    private static class DigestReader extends FilterReader {
+
+        private final MessageDigest messageDigest;
+
+        private DigestReader(Reader reader, MessageDigest messageDigest) {
+            super(reader);
+            this.messageDigest = messageDigest;
+        }
+
+        @Override
+        public void close() {
+            //The parser closes its input, the reader is read to its end once parsed
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c != -1) {
+                messageDigest.update(String.valueOf((char) c).getBytes("UTF-8"));
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                messageDigest.update(new String(buffer, offset, count).getBytes("UTF-8"));
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Builds a key for an XSL resource loaded from the classpath
+     *
+     * @param clazz the class used to load the resource
+     * @param name  the resource name, relative to the class package or absolute if it starts with a '/'
+     * @return the stylesheet key
+     */
+    public static XslKey fromResource(Class clazz, String name) {
+        if (clazz == null) {
+            throw new NullPointerException("A resource class is required.");
+        }
+        if (name == null) {
+            throw new NullPointerException("A resource name is required.");
+        }
+        String resourceName = FileSourceFactory.getResourceName(clazz, name);
+        ClassLoader classLoader = clazz.getClassLoader();
+        URL url = (classLoader == null) ? ClassLoader.getSystemResource(resourceName) : classLoader.getResource(resourceName);
+        return new ResourceKey(resourceName, url);
+    }
+
+    /**
+     * Builds a key for an XSL file
+     *
+     * @param file the xsl file
+     * @return the stylesheet key
+     */
+    public static XslKey fromFile(File file) {
+        if (file == null) {
+            throw new NullPointerException("A xsl file is required.");
+        }
+        File canonicalFile;
+        try {
+            canonicalFile = file.getCanonicalFile();
+        } catch (IOException ioe) {
+            canonicalFile = file.getAbsoluteFile();
+        }
+        return new FileKey(canonicalFile, canonicalFile.lastModified(), canonicalFile.length());
+    }
+
+    /**
+     * Builds a key for an XSL content
+     *
+     * @param content the xsl content
+     * @return the stylesheet key
+     */
+    public static XslKey fromContent(String content) {
+        if (content == null) {
+            throw new NullPointerException("A xsl content is required.");
+        }
+        return new ContentKey(content);
+    }
+
+    /**
+     * The resource is resolved when the key is built: the key doesn't retain the class loader,
+     * so that a cached stylesheet doesn't keep a plugin class loader alive, and stays equal once deserialized
+     */
+    private static class ResourceKey extends XslKey {
+
+        private final String name;
+
+        private final String url;
+
+        private ResourceKey(String name, URL url) {
+            this.name = name;
+            this.url = (url == null) ? null : url.toExternalForm();
+        }
+
+        @Override
+        public Source openSource() throws IOException {
+            if (url == null) {
+                throw new FileNotFoundException("The xsl resource '" + name + "' can't be found.");
+            }
+            return new StreamSource(new URL(url).openStream(), url);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ResourceKey that = (ResourceKey) o;
+
+            return name.equals(that.name) && (url == null ? that.url == null : url.equals(that.url));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = name.hashCode();
+            result = 31 * result + (url != null ? url.hashCode() : 0);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "resource:" + name;
+        }
+    }
+
+    private static class FileKey extends XslKey {
+
+        private final File file;
+
+        private final long lastModified;
+
+        private final long length;
+
+        private FileKey(File file, long lastModified, long length) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        @Override
+        public Source openSource() throws IOException {
+            if (!file.exists()) {
+                throw new FileNotFoundException("The xsl file '" + file + "' can't be found.");
+            }
+            return FileSourceFactory.newStreamSource(file);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            FileKey that = (FileKey) o;
+
+            return lastModified == that.lastModified && length == that.length && file.equals(that.file);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = file.hashCode();
+            result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+            result = 31 * result + (int) (length ^ (length >>> 32));
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "file:" + file.getPath();
+        }
+    }
+
+    private static class ContentKey extends XslKey {
+
+        private final String content;
+
+        private final String hash;
+
+        private ContentKey(String content) {
+            this.content = content;
+            this.hash = sha1(content);
+        }
+
+        @Override
+        public Source openSource() {
+            return new StreamSource(new StringReader(content));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ContentKey that = (ContentKey) o;
+
+            return hash.equals(that.hash) && content.equals(that.content);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "content:" + hash;
+        }
+
+        private static String sha1(String content) {
+            try {
+                return Digests.toHex(Digests.newMessageDigest("SHA-1").digest(content.getBytes("UTF-8")));
+            } catch (UnsupportedEncodingException uee) {
+                throw new ConversionException("Error to compute the xsl content hash", uee);
+            }
+        }
+    }
+}
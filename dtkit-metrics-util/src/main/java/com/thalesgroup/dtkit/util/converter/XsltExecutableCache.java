@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XsltCompiler;
+import net.sf.saxon.s9api.XsltExecutable;
+
+import javax.xml.transform.Source;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe and bounded cache of compiled stylesheets
+ * <p/>
+ * The stylesheets are compiled with the processor given at construction time; the returned executables must
+ * therefore be run against documents built by this same processor.
+ * When the cache is full, the least recently used stylesheet is evicted.
+ * Each compiled stylesheet comes with its pool of reusable transformers.
+ * <p/>
+ * With a bundle of precompiled stylesheets, a stylesheet found in the bundle is taken from it instead of being
+ * compiled from source, see {@link PrecompiledStylesheets}.
+ * <p/>
+ * A stylesheet is identified by its key, which doesn't cover the modules it includes or imports: the files of
+ * the modules are checked on each access, and the stylesheet is compiled again when one of them changes.
+ */
+public class XsltExecutableCache {
+
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private final Processor processor;
+
+    private final int maxSize;
+
+    private final int transformerPoolSize;
+
+    private final boolean transformerThreadAffinity;
+
+    private final Map<XslKey, XsltTransformerPool> executables;
+
+    private final Map<XslKey, XslDigest> xslDigests = new HashMap<XslKey, XslDigest>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private final AtomicLong precompiledCount = new AtomicLong();
+
+    private volatile Map<String, XsltExecutable> precompiledExecutables = Collections.emptyMap();
+
+    public XsltExecutableCache(Processor processor) {
+        this(processor, DEFAULT_MAX_SIZE);
+    }
+
+    public XsltExecutableCache(Processor processor, int maxSize) {
+        this(processor, maxSize, XsltTransformerPool.DEFAULT_MAX_IDLE, false);
+    }
+
+    /**
+     * Creates a cache
+     *
+     * @param processor                 the processor compiling the stylesheets
+     * @param maxSize                   the maximum number of compiled stylesheets
+     * @param transformerPoolSize       the maximum number of idle transformers kept per stylesheet
+     * @param transformerThreadAffinity true to keep a transformer per thread and per stylesheet
+     */
+    public XsltExecutableCache(Processor processor, int maxSize, int transformerPoolSize, boolean transformerThreadAffinity) {
+        if (processor == null) {
+            throw new NullPointerException("A processor is required.");
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The cache size must be positive: " + maxSize);
+        }
+        if (transformerPoolSize < 0) {
+            throw new IllegalArgumentException("The transformer pool size can't be negative: " + transformerPoolSize);
+        }
+        this.processor = processor;
+        this.maxSize = maxSize;
+        this.transformerPoolSize = transformerPoolSize;
+        this.transformerThreadAffinity = transformerThreadAffinity;
+        this.executables = new LinkedHashMap<XslKey, XsltTransformerPool>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<XslKey, XsltTransformerPool> eldest) {
+                if (size() > XsltExecutableCache.this.maxSize) {
+                    xslDigests.remove(eldest.getKey());
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the compiled form of a stylesheet, compiling it on the first access
+     *
+     * @param xslKey the stylesheet identity
+     * @return the compiled stylesheet
+     * @throws ConversionException when the stylesheet can't be read or compiled
+     */
+    public XsltExecutable get(XslKey xslKey) throws ConversionException {
+        return getTransformerPool(xslKey).getXsltExecutable();
+    }
+
+    /**
+     * Gets the pool of transformers of a stylesheet, compiling the stylesheet on the first access
+     *
+     * @param xslKey the stylesheet identity
+     * @return the transformer pool of the compiled stylesheet
+     * @throws ConversionException when the stylesheet can't be read or compiled
+     */
+    public XsltTransformerPool getTransformerPool(XslKey xslKey) throws ConversionException {
+        XsltTransformerPool transformerPool;
+        synchronized (executables) {
+            transformerPool = getCurrent(xslKey);
+        }
+        if (transformerPool != null) {
+            hitCount.incrementAndGet();
+            return transformerPool;
+        }
+
+        missCount.incrementAndGet();
+        //The compilation is done outside the lock, a concurrent compilation of the same stylesheet is harmless
+        XslDigest xslDigest = XslDigest.compute(xslKey);
+        transformerPool = new XsltTransformerPool(processor, compile(xslKey, xslDigest), transformerPoolSize, transformerThreadAffinity);
+        synchronized (executables) {
+            XsltTransformerPool previous = getCurrent(xslKey);
+            if (previous != null) {
+                return previous;
+            }
+            executables.put(xslKey, transformerPool);
+            xslDigests.put(xslKey, xslDigest);
+        }
+        return transformerPool;
+    }
+
+    /**
+     * Gets the pool of transformers of a stylesheet if the stylesheet is already compiled
+     * A found stylesheet is counted as a cache hit; nothing is counted otherwise.
+     *
+     * @param xslKey the stylesheet identity
+     * @return the transformer pool of the compiled stylesheet, null if it isn't compiled yet
+     */
+    public XsltTransformerPool getTransformerPoolIfPresent(XslKey xslKey) {
+        XsltTransformerPool transformerPool;
+        synchronized (executables) {
+            transformerPool = getCurrent(xslKey);
+        }
+        if (transformerPool != null) {
+            hitCount.incrementAndGet();
+        }
+        return transformerPool;
+    }
+
+    /**
+     * Gets a compiled stylesheet whose modules are unchanged, the caller holds the lock of the cache
+     */
+    private XsltTransformerPool getCurrent(XslKey xslKey) {
+        XsltTransformerPool transformerPool = executables.get(xslKey);
+        if (transformerPool != null && !xslDigests.get(xslKey).isCurrent()) {
+            executables.remove(xslKey);
+            xslDigests.remove(xslKey);
+            return null;
+        }
+        return transformerPool;
+    }
+
+    /**
+     * Attaches a bundle of precompiled stylesheets to the processor of the cache
+     * The name pool of the processor is replaced by the one of the bundle: the bundle must be attached before the
+     * cache compiles a stylesheet and before the processor builds a document.
+     *
+     * @param precompiledStylesheets the bundle
+     * @throws ConversionException when the bundle can't be deserialized
+     */
+    public void setPrecompiledStylesheets(PrecompiledStylesheets precompiledStylesheets) throws ConversionException {
+        if (precompiledStylesheets == null) {
+            throw new NullPointerException("A bundle of precompiled stylesheets is required.");
+        }
+        precompiledExecutables = precompiledStylesheets.attach(processor);
+    }
+
+    private XsltExecutable compile(XslKey xslKey, XslDigest xslDigest) throws ConversionException {
+        Map<String, XsltExecutable> precompiled = precompiledExecutables;
+        if (!precompiled.isEmpty()) {
+            //The hash covers the modules of the stylesheet, a stylesheet whose modules changed is compiled again
+            XsltExecutable xsltExecutable = precompiled.get(xslDigest.getDigest());
+            if (xsltExecutable != null) {
+                precompiledCount.incrementAndGet();
+                return xsltExecutable;
+            }
+        }
+
+        Source source = null;
+        try {
+            source = xslKey.openSource();
+            XsltCompiler compiler = processor.newXsltCompiler();
+            return compiler.compile(source);
+        } catch (IOException ioe) {
+            throw new ConversionException("Error to read the xsl " + xslKey, ioe);
+        } catch (SaxonApiException sae) {
+            throw new ConversionException("Error to compile the xsl " + xslKey, sae);
+        } finally {
+            FileSourceFactory.close(source);
+        }
+    }
+
+    /**
+     * Removes a stylesheet from the cache
+     *
+     * @param xslKey the stylesheet identity
+     */
+    public void invalidate(XslKey xslKey) {
+        synchronized (executables) {
+            executables.remove(xslKey);
+            xslDigests.remove(xslKey);
+        }
+    }
+
+    /**
+     * Removes all the stylesheets from the cache
+     */
+    public void clear() {
+        synchronized (executables) {
+            executables.clear();
+            xslDigests.clear();
+        }
+    }
+
+    public Processor getProcessor() {
+        return processor;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getTransformerPoolSize() {
+        return transformerPoolSize;
+    }
+
+    public boolean isTransformerThreadAffinity() {
+        return transformerThreadAffinity;
+    }
+
+    public int size() {
+        synchronized (executables) {
+            return executables.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Gives the number of stylesheets taken from the precompiled stylesheets rather than compiled from source
+     *
+     * @return the precompiled stylesheet count
+     */
+    public long getPrecompiledCount() {
+        return precompiledCount.get();
+    }
+}
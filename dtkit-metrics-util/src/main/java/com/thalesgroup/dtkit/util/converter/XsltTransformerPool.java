@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.converter;
+
+import net.sf.saxon.Controller;
+import net.sf.saxon.s9api.*;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.StringReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of reusable transformers of a compiled stylesheet
+ * <p/>
+ * Loading a transformer creates a new Saxon controller with its bindery and resolvers. A pool keeps the transformers
+ * released after a successful conversion and gives them back for the next conversions of the same stylesheet.
+ * A released transformer is reset: its parameters, its context node, its destination and the documents it loaded
+ * are cleared, so that an idle transformer doesn't hold any document.
+ * <p/>
+ * With thread affinity, each thread keeps its last released transformer for itself, without contention on the
+ * shared idle transformers; this suits long-lived worker threads converting the same stylesheets.
+ */
+public class XsltTransformerPool {
+
+    public static final int DEFAULT_MAX_IDLE = 8;
+
+    private static final Destination DISCARD_DESTINATION = new SAXDestination(new DefaultHandler());
+
+    private final Processor processor;
+
+    private final XsltExecutable xsltExecutable;
+
+    private final int maxIdle;
+
+    private final boolean threadAffinity;
+
+    private final BlockingQueue<XsltTransformer> idleTransformers;
+
+    private final ThreadLocal<XsltTransformer> threadTransformer = new ThreadLocal<XsltTransformer>();
+
+    private final AtomicLong createdCount = new AtomicLong();
+
+    private final AtomicLong reusedCount = new AtomicLong();
+
+    private volatile XdmNode emptyDocument;
+
+    public XsltTransformerPool(Processor processor, XsltExecutable xsltExecutable) {
+        this(processor, xsltExecutable, DEFAULT_MAX_IDLE, false);
+    }
+
+    /**
+     * Creates a pool
+     *
+     * @param processor      the processor that compiled the stylesheet
+     * @param xsltExecutable the compiled stylesheet
+     * @param maxIdle        the maximum number of idle transformers kept, 0 to disable the pooling
+     * @param threadAffinity true to keep a transformer per thread in addition to the shared idle transformers
+     */
+    public XsltTransformerPool(Processor processor, XsltExecutable xsltExecutable, int maxIdle, boolean threadAffinity) {
+        if (processor == null) {
+            throw new NullPointerException("A processor is required.");
+        }
+        if (xsltExecutable == null) {
+            throw new NullPointerException("A compiled stylesheet is required.");
+        }
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("The maximum number of idle transformers can't be negative: " + maxIdle);
+        }
+        this.processor = processor;
+        this.xsltExecutable = xsltExecutable;
+        this.maxIdle = maxIdle;
+        this.threadAffinity = threadAffinity;
+        this.idleTransformers = new ArrayBlockingQueue<XsltTransformer>(Math.max(1, maxIdle));
+    }
+
+    /**
+     * Takes a transformer from the pool, loading a new one if none is idle
+     *
+     * @return a transformer, to give back with {@link #release(XsltTransformer)} after a successful conversion
+     */
+    public XsltTransformer borrow() {
+        XsltTransformer xsltTransformer = null;
+        if (threadAffinity) {
+            xsltTransformer = threadTransformer.get();
+            threadTransformer.remove();
+        }
+        if (xsltTransformer == null && maxIdle > 0) {
+            xsltTransformer = idleTransformers.poll();
+        }
+        if (xsltTransformer != null) {
+            reusedCount.incrementAndGet();
+            return xsltTransformer;
+        }
+        createdCount.incrementAndGet();
+        return xsltExecutable.load();
+    }
+
+    /**
+     * Gives back a transformer after a successful conversion
+     * The transformer is reset, then kept if the pool isn't full. A transformer whose conversion failed must not
+     * be released.
+     *
+     * @param xsltTransformer a transformer borrowed from this pool
+     * @throws ConversionException when the transformer can't be reset
+     */
+    public void release(XsltTransformer xsltTransformer) throws ConversionException {
+        if (maxIdle == 0 && !threadAffinity) {
+            return;
+        }
+        reset(xsltTransformer);
+        if (threadAffinity && threadTransformer.get() == null) {
+            threadTransformer.set(xsltTransformer);
+            return;
+        }
+        if (maxIdle > 0) {
+            idleTransformers.offer(xsltTransformer);
+        }
+    }
+
+    private void reset(XsltTransformer xsltTransformer) throws ConversionException {
+        //Release the references to the last document and output, kept by the transformer itself
+        xsltTransformer.setInitialContextNode(getEmptyDocument());
+        xsltTransformer.setDestination(DISCARD_DESTINATION);
+        Controller controller = xsltTransformer.getUnderlyingController();
+        controller.clearParameters();
+        controller.clearDocumentPool();
+        controller.reset();
+    }
+
+    private XdmNode getEmptyDocument() throws ConversionException {
+        XdmNode document = emptyDocument;
+        if (document == null) {
+            try {
+                document = processor.newDocumentBuilder().build(new StreamSource(new StringReader("<empty/>")));
+            } catch (SaxonApiException sae) {
+                throw new ConversionException("Error to reset a transformer", sae);
+            }
+            emptyDocument = document;
+        }
+        return document;
+    }
+
+    /**
+     * Removes the idle transformers
+     * The transformers kept by the threads are released when the threads end or the pool is discarded.
+     */
+    public void clear() {
+        idleTransformers.clear();
+    }
+
+    public Processor getProcessor() {
+        return processor;
+    }
+
+    public XsltExecutable getXsltExecutable() {
+        return xsltExecutable;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public boolean isThreadAffinity() {
+        return threadAffinity;
+    }
+
+    public int getIdleCount() {
+        return idleTransformers.size();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getReusedCount() {
+        return reusedCount.get();
+    }
+}
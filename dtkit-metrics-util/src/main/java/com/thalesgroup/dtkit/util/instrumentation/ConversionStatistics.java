@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.instrumentation;
+
+import javax.management.*;
+import javax.management.openmbean.*;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * JMX view of a {@link HistogramInstrumentation}
+ * <p/>
+ * Each tool is a row of the tool statistics: conversions and validations counts, mean, 50th and 99th percentiles
+ * and maximum durations of each step, compiled stylesheet cache hits and misses, bytes read and written and
+ * validation errors.
+ */
+public class ConversionStatistics implements ConversionStatisticsMBean {
+
+    public static final String OBJECT_NAME = "com.thalesgroup.dtkit:type=ConversionStatistics";
+
+    private static final String[] ITEM_NAMES = {
+            "label", "conversions",
+            "parseMeanMillis", "parseP99Millis",
+            "compileMeanMillis", "compileCacheHits", "compileCacheMisses",
+            "transformMeanMillis", "transformP50Millis", "transformP99Millis", "transformMaxMillis",
+            "serializeMeanMillis", "serializeP99Millis",
+            "bytesIn", "bytesOut",
+            "validations", "validationMeanMillis", "validationP99Millis", "validationErrors"};
+
+    private final HistogramInstrumentation instrumentation;
+
+    public ConversionStatistics(HistogramInstrumentation instrumentation) {
+        if (instrumentation == null) {
+            throw new NullPointerException("An instrumentation is required.");
+        }
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Registers the statistics of the default instrumentation in the platform MBean server
+     *
+     * @return the name of the registered MBean
+     * @throws JMException when the MBean can't be registered
+     */
+    public static ObjectName register() throws JMException {
+        Instrumentation instrumentation = InstrumentationFactory.getInstance();
+        if (!(instrumentation instanceof HistogramInstrumentation)) {
+            throw new IllegalStateException("The default instrumentation doesn't keep statistics: " + instrumentation);
+        }
+        ObjectName objectName = new ObjectName(OBJECT_NAME);
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        if (mBeanServer.isRegistered(objectName)) {
+            mBeanServer.unregisterMBean(objectName);
+        }
+        mBeanServer.registerMBean(new ConversionStatistics((HistogramInstrumentation) instrumentation), objectName);
+        return objectName;
+    }
+
+    public String[] getToolLabels() {
+        List<String> labels = instrumentation.getToolLabels();
+        return labels.toArray(new String[labels.size()]);
+    }
+
+    public TabularData getToolStatistics() throws OpenDataException {
+        OpenType[] itemTypes = new OpenType[ITEM_NAMES.length];
+        itemTypes[0] = SimpleType.STRING;
+        for (int i = 1; i < itemTypes.length; i++) {
+            itemTypes[i] = SimpleType.LONG;
+        }
+        CompositeType rowType = new CompositeType("ToolStatistics", "Conversion statistics of a tool",
+                ITEM_NAMES, ITEM_NAMES, itemTypes);
+        TabularType tabularType = new TabularType("ToolStatisticsTable", "Conversion statistics of the tools",
+                rowType, new String[]{"label"});
+
+        TabularDataSupport tabularData = new TabularDataSupport(tabularType);
+        for (String label : instrumentation.getToolLabels()) {
+            ToolStatistics stats = instrumentation.getToolStatistics(label);
+            Object[] values = {
+                    label, stats.getTransformTimes().getCount(),
+                    millis(stats.getParseTimes().getMeanNanos()), millis(stats.getParseTimes().getPercentileNanos(99)),
+                    millis(stats.getCompileTimes().getMeanNanos()), stats.getCompileCacheHits(), stats.getCompileCacheMisses(),
+                    millis(stats.getTransformTimes().getMeanNanos()), millis(stats.getTransformTimes().getPercentileNanos(50)),
+                    millis(stats.getTransformTimes().getPercentileNanos(99)), millis(stats.getTransformTimes().getMaxNanos()),
+                    millis(stats.getSerializeTimes().getMeanNanos()), millis(stats.getSerializeTimes().getPercentileNanos(99)),
+                    stats.getBytesIn(), stats.getBytesOut(),
+                    stats.getValidationTimes().getCount(), millis(stats.getValidationTimes().getMeanNanos()),
+                    millis(stats.getValidationTimes().getPercentileNanos(99)), stats.getValidationErrors()};
+            tabularData.put(new CompositeDataSupport(rowType, ITEM_NAMES, values));
+        }
+        return tabularData;
+    }
+
+    public void reset() {
+        instrumentation.reset();
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1000000L;
+    }
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of durations
+ * <p/>
+ * The durations are counted in buckets of powers of two nanoseconds, so the percentiles are approximated by the
+ * upper bound of their bucket (within a factor of two), bounded by the maximum duration.
+ */
+public class Histogram {
+
+    private static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration
+     *
+     * @param durationNanos the duration in nanoseconds, negative durations are counted as zero
+     */
+    public void record(long durationNanos) {
+        long value = Math.max(0, durationNanos);
+        buckets.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long currentMax;
+        do {
+            currentMax = max.get();
+        } while (value > currentMax && !max.compareAndSet(currentMax, value));
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return total.get();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public long getMeanNanos() {
+        long currentCount = count.get();
+        return currentCount == 0 ? 0 : total.get() / currentCount;
+    }
+
+    /**
+     * Gives an approximation of a percentile
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the percentile in nanoseconds, 0 if there is no recorded duration
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 100: " + percentile);
+        }
+        long[] counts = new long[BUCKET_COUNT];
+        long currentCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            currentCount += counts[i];
+        }
+        if (currentCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(currentCount * percentile / 100));
+        long cumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulated += counts[i];
+            if (cumulated >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    private static int bucket(long value) {
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
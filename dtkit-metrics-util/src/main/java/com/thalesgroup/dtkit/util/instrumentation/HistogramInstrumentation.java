@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.instrumentation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory instrumentation keeping histograms of the durations for each tool
+ * <p/>
+ * The statistics can be read directly or through JMX with {@link ConversionStatistics}.
+ */
+public class HistogramInstrumentation implements Instrumentation {
+
+    private final ConcurrentMap<String, ToolStatistics> tools = new ConcurrentHashMap<String, ToolStatistics>();
+
+    public void parsed(String label, long durationNanos, long bytesIn) {
+        getOrCreate(label).recordParse(durationNanos, bytesIn);
+    }
+
+    public void compiled(String label, long durationNanos, boolean cacheHit) {
+        getOrCreate(label).recordCompile(durationNanos, cacheHit);
+    }
+
+    public void transformed(String label, long durationNanos) {
+        getOrCreate(label).recordTransform(durationNanos);
+    }
+
+    public void serialized(String label, long durationNanos, long bytesOut) {
+        getOrCreate(label).recordSerialize(durationNanos, bytesOut);
+    }
+
+    public void validated(String label, long durationNanos, long bytesIn, int errorCount) {
+        getOrCreate(label).recordValidation(durationNanos, bytesIn, errorCount);
+    }
+
+    /**
+     * @return the sorted labels of the instrumented tools
+     */
+    public List<String> getToolLabels() {
+        List<String> labels = new ArrayList<String>(tools.keySet());
+        Collections.sort(labels);
+        return labels;
+    }
+
+    /**
+     * Gives the statistics of a tool
+     *
+     * @param label the tool label
+     * @return the statistics, null if nothing was recorded for the tool
+     */
+    public ToolStatistics getToolStatistics(String label) {
+        return tools.get(label);
+    }
+
+    /**
+     * Clears the statistics of all the tools
+     */
+    public void reset() {
+        for (ToolStatistics toolStatistics : tools.values()) {
+            toolStatistics.reset();
+        }
+    }
+
+    private ToolStatistics getOrCreate(String label) {
+        String key = (label == null) ? UNKNOWN_LABEL : label;
+        ToolStatistics toolStatistics = tools.get(key);
+        if (toolStatistics == null) {
+            ToolStatistics newToolStatistics = new ToolStatistics(key);
+            toolStatistics = tools.putIfAbsent(key, newToolStatistics);
+            if (toolStatistics == null) {
+                toolStatistics = newToolStatistics;
+            }
+        }
+        return toolStatistics;
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.instrumentation;
+
+/**
+ * Instrumentation SPI of the conversion and validation services
+ * <p/>
+ * The services report the cost of each step of their processing, grouped by a label (usually the label of the
+ * tool, as given by <code>InputMetric.getLabel()</code>). The implementations are called from the conversion
+ * threads and must be thread-safe and cheap. The durations are in nanoseconds; a size is -1 when it is unknown.
+ */
+public interface Instrumentation {
+
+    /**
+     * Label of the processing done without a tool label
+     */
+    public static final String UNKNOWN_LABEL = "unknown";
+
+    /**
+     * An input document has been parsed
+     *
+     * @param label         the tool label
+     * @param durationNanos the parse duration
+     * @param bytesIn       the size of the input
+     */
+    public void parsed(String label, long durationNanos, long bytesIn);
+
+    /**
+     * A stylesheet has been loaded, from the cache of compiled stylesheets or by compiling it
+     *
+     * @param label         the tool label
+     * @param durationNanos the load duration, including the compilation on a cache miss
+     * @param cacheHit      true if the stylesheet was already compiled
+     */
+    public void compiled(String label, long durationNanos, boolean cacheHit);
+
+    /**
+     * A transformation has been run
+     *
+     * @param label         the tool label
+     * @param durationNanos the transformation duration, without the time spent writing the output
+     */
+    public void transformed(String label, long durationNanos);
+
+    /**
+     * The result of a transformation has been written
+     * Saxon serializes while it transforms: the duration is the time spent writing the serialized output.
+     *
+     * @param label         the tool label
+     * @param durationNanos the write duration
+     * @param bytesOut      the size of the output
+     */
+    public void serialized(String label, long durationNanos, long bytesOut);
+
+    /**
+     * A document has been validated
+     *
+     * @param label         the tool label
+     * @param durationNanos the validation duration
+     * @param bytesIn       the size of the validated document
+     * @param errorCount    the number of validation errors
+     */
+    public void validated(String label, long durationNanos, long bytesIn, int errorCount);
+}
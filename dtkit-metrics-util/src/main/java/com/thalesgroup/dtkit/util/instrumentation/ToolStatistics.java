@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of the conversions and validations of a tool
+ */
+public class ToolStatistics {
+
+    private final String label;
+
+    private final Histogram parseTimes = new Histogram();
+
+    private final Histogram compileTimes = new Histogram();
+
+    private final Histogram transformTimes = new Histogram();
+
+    private final Histogram serializeTimes = new Histogram();
+
+    private final Histogram validationTimes = new Histogram();
+
+    private final AtomicLong compileCacheHits = new AtomicLong();
+
+    private final AtomicLong bytesIn = new AtomicLong();
+
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    private final AtomicLong validationErrors = new AtomicLong();
+
+    public ToolStatistics(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public Histogram getParseTimes() {
+        return parseTimes;
+    }
+
+    public Histogram getCompileTimes() {
+        return compileTimes;
+    }
+
+    public Histogram getTransformTimes() {
+        return transformTimes;
+    }
+
+    public Histogram getSerializeTimes() {
+        return serializeTimes;
+    }
+
+    public Histogram getValidationTimes() {
+        return validationTimes;
+    }
+
+    public long getCompileCacheHits() {
+        return compileCacheHits.get();
+    }
+
+    public long getCompileCacheMisses() {
+        return compileTimes.getCount() - compileCacheHits.get();
+    }
+
+    /**
+     * @return the number of bytes parsed for the conversions and the validations
+     */
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    /**
+     * @return the number of bytes written by the conversions
+     */
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    public long getValidationErrors() {
+        return validationErrors.get();
+    }
+
+    void recordParse(long durationNanos, long size) {
+        parseTimes.record(durationNanos);
+        addSize(bytesIn, size);
+    }
+
+    void recordCompile(long durationNanos, boolean cacheHit) {
+        if (cacheHit) {
+            compileCacheHits.incrementAndGet();
+        }
+        compileTimes.record(durationNanos);
+    }
+
+    void recordTransform(long durationNanos) {
+        transformTimes.record(durationNanos);
+    }
+
+    void recordSerialize(long durationNanos, long size) {
+        serializeTimes.record(durationNanos);
+        addSize(bytesOut, size);
+    }
+
+    void recordValidation(long durationNanos, long size, int errorCount) {
+        validationTimes.record(durationNanos);
+        addSize(bytesIn, size);
+        validationErrors.addAndGet(errorCount);
+    }
+
+    void reset() {
+        parseTimes.reset();
+        compileTimes.reset();
+        transformTimes.reset();
+        serializeTimes.reset();
+        validationTimes.reset();
+        compileCacheHits.set(0);
+        bytesIn.set(0);
+        bytesOut.set(0);
+        validationErrors.set(0);
+    }
+
+    private void addSize(AtomicLong counter, long size) {
+        if (size > 0) {
+            counter.addAndGet(size);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.validator;
+
+import com.thalesgroup.dtkit.util.converter.FileSourceFactory;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.Source;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe and bounded cache of compiled XML schemas
+ * <p/>
+ * A compiled schema is immutable and can be shared by concurrent validations.
+ * When the cache is full, the least recently used schema is evicted.
+ * <p/>
+ * The warnings and the recoverable errors reported while compiling a grammar are kept with it and reported again
+ * on each use. A grammar that can't be compiled is kept too, so that it is not compiled again for each validation:
+ * its error is reported on each use until the grammar is invalidated.
+ */
+public class SchemaCache {
+
+    public static final int DEFAULT_MAX_SIZE = 32;
+
+    private static final SchemaCache DEFAULT_CACHE = new SchemaCache(DEFAULT_MAX_SIZE);
+
+    private final int maxSize;
+
+    private final Map<SchemaKey, CompiledSchema> schemas;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private final AtomicLong failureCount = new AtomicLong();
+
+    public SchemaCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The cache size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.schemas = new LinkedHashMap<SchemaKey, CompiledSchema>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SchemaKey, CompiledSchema> eldest) {
+                if (size() > SchemaCache.this.maxSize) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gives the cache shared by default by the validation services
+     *
+     * @return the default cache
+     */
+    public static SchemaCache getDefault() {
+        return DEFAULT_CACHE;
+    }
+
+    /**
+     * Gets the compiled form of a grammar, compiling it on the first access
+     *
+     * @param schemaKey the identity of the xsd files
+     * @return the compiled schema
+     * @throws SAXException        when the grammar is not valid
+     * @throws ValidationException when a xsd file can't be read
+     */
+    public Schema get(SchemaKey schemaKey) throws SAXException, ValidationException {
+        return get(schemaKey, null);
+    }
+
+    /**
+     * Gets the compiled form of a grammar, compiling it on the first access
+     * The warnings and the errors reported by the compilation of the grammar are added to the given handler.
+     *
+     * @param schemaKey the identity of the xsd files
+     * @param handler   the handler collecting the errors of the grammar, may be null
+     * @return the compiled schema
+     * @throws SAXException        when the grammar is not valid
+     * @throws ValidationException when a xsd file can't be read
+     */
+    public Schema get(SchemaKey schemaKey, ValidationHandler handler) throws SAXException, ValidationException {
+        CompiledSchema compiledSchema;
+        synchronized (schemas) {
+            compiledSchema = schemas.get(schemaKey);
+        }
+        if (compiledSchema != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+            //The compilation is done outside the lock, a concurrent compilation of the same grammar is harmless
+            compiledSchema = compile(schemaKey);
+            synchronized (schemas) {
+                CompiledSchema previous = schemas.get(schemaKey);
+                if (previous != null) {
+                    compiledSchema = previous;
+                } else {
+                    schemas.put(schemaKey, compiledSchema);
+                }
+            }
+        }
+
+        if (handler != null) {
+            handler.getErrors().addAll(compiledSchema.errors);
+        }
+        if (compiledSchema.failure != null) {
+            throw new SAXException(compiledSchema.failure.getMessage(), compiledSchema.failure);
+        }
+        return compiledSchema.schema;
+    }
+
+    private CompiledSchema compile(SchemaKey schemaKey) throws ValidationException {
+        Source[] sources;
+        try {
+            sources = schemaKey.openSources();
+        } catch (IOException ioe) {
+            throw new ValidationException("Validation error", ioe);
+        }
+        ValidationHandler handler = new ValidationHandler();
+        try {
+            //A schema factory is not thread safe, a new one is used for each compilation
+            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            schemaFactory.setErrorHandler(handler);
+            return new CompiledSchema(schemaFactory.newSchema(sources), handler.getErrors(), null);
+        } catch (SAXException sae) {
+            failureCount.incrementAndGet();
+            return new CompiledSchema(null, handler.getErrors(), sae);
+        } finally {
+            FileSourceFactory.close(sources);
+        }
+    }
+
+    /**
+     * Removes a grammar from the cache
+     *
+     * @param schemaKey the identity of the xsd files
+     */
+    public void invalidate(SchemaKey schemaKey) {
+        synchronized (schemas) {
+            schemas.remove(schemaKey);
+        }
+    }
+
+    /**
+     * Removes all the grammars from the cache
+     */
+    public void clear() {
+        synchronized (schemas) {
+            schemas.clear();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        synchronized (schemas) {
+            return schemas.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Gives the number of compilations that failed
+     *
+     * @return the number of grammars that couldn't be compiled
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * The result of the compilation of a grammar
+     */
+    private static class CompiledSchema {
+
+        private final Schema schema;
+
+        private final List<ValidationError> errors;
+
+        private final SAXException failure;
+
+        private CompiledSchema(Schema schema, List<ValidationError> errors, SAXException failure) {
+            this.schema = schema;
+            this.errors = new ArrayList<ValidationError>(errors);
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.validator;
+
+import com.thalesgroup.dtkit.util.converter.FileSourceFactory;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import java.io.*;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * Identity of a set of XSD files forming a grammar
+ * <p/>
+ * The XSD files are either classpath resources, identified by their absolute name and the URL they are loaded from,
+ * or files, identified by their canonical path, their last modification time and their size.
+ */
+public class SchemaKey implements Serializable {
+
+    private final String[] resourceNames;
+
+    /**
+     * Resolved when the key is built, the key doesn't retain the class loader of the resources
+     */
+    private final String[] resourceUrls;
+
+    private final File[] files;
+
+    private final long[] lastModifiedTimes;
+
+    private final long[] lengths;
+
+    private SchemaKey(String[] resourceNames, String[] resourceUrls, File[] files) {
+        this.resourceNames = resourceNames;
+        this.resourceUrls = resourceUrls;
+        this.files = files;
+        int count = (files == null) ? 0 : files.length;
+        this.lastModifiedTimes = new long[count];
+        this.lengths = new long[count];
+        for (int i = 0; i < count; i++) {
+            lastModifiedTimes[i] = files[i].lastModified();
+            lengths[i] = files[i].length();
+        }
+    }
+
+    /**
+     * Builds a key for XSD resources loaded from the classpath
+     *
+     * @param clazz the class used to load the resources
+     * @param names the resource names, relative to the class package or absolute if they start with a '/'
+     * @return the schema key
+     */
+    public static SchemaKey fromResources(Class clazz, String... names) {
+        if (clazz == null) {
+            throw new NullPointerException("A resource class is required.");
+        }
+        if (names == null || names.length == 0) {
+            throw new IllegalArgumentException("At least one xsd is required.");
+        }
+        ClassLoader classLoader = clazz.getClassLoader();
+        String[] resourceNames = new String[names.length];
+        String[] resourceUrls = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            resourceNames[i] = FileSourceFactory.getResourceName(clazz, names[i]);
+            URL url = (classLoader == null) ? ClassLoader.getSystemResource(resourceNames[i]) : classLoader.getResource(resourceNames[i]);
+            resourceUrls[i] = (url == null) ? null : url.toExternalForm();
+        }
+        return new SchemaKey(resourceNames, resourceUrls, null);
+    }
+
+    /**
+     * Builds a key for XSD files
+     *
+     * @param xsdFiles the xsd files
+     * @return the schema key
+     */
+    public static SchemaKey fromFiles(File... xsdFiles) {
+        if (xsdFiles == null || xsdFiles.length == 0) {
+            throw new IllegalArgumentException("At least one xsd is required.");
+        }
+        File[] canonicalFiles = new File[xsdFiles.length];
+        for (int i = 0; i < xsdFiles.length; i++) {
+            try {
+                canonicalFiles[i] = xsdFiles[i].getCanonicalFile();
+            } catch (IOException ioe) {
+                canonicalFiles[i] = xsdFiles[i].getAbsoluteFile();
+            }
+        }
+        return new SchemaKey(null, null, canonicalFiles);
+    }
+
+    /**
+     * Opens new sources for the XSD files
+     * The caller must close the returned sources.
+     *
+     * @return the sources to compile
+     * @throws IOException when a xsd can't be read
+     */
+    public Source[] openSources() throws IOException {
+        if (files != null) {
+            Source[] sources = new Source[files.length];
+            try {
+                for (int i = 0; i < files.length; i++) {
+                    if (!files[i].exists()) {
+                        throw new FileNotFoundException("The xsd file '" + files[i] + "' can't be found.");
+                    }
+                    sources[i] = FileSourceFactory.newStreamSource(files[i]);
+                }
+            } catch (IOException ioe) {
+                FileSourceFactory.close(sources);
+                throw ioe;
+            }
+            return sources;
+        }
+
+        Source[] sources = new Source[resourceNames.length];
+        try {
+            for (int i = 0; i < resourceNames.length; i++) {
+                if (resourceUrls[i] == null) {
+                    throw new FileNotFoundException("The xsd resource '" + resourceNames[i] + "' can't be found.");
+                }
+                sources[i] = new StreamSource(new URL(resourceUrls[i]).openStream(), resourceUrls[i]);
+            }
+        } catch (IOException ioe) {
+            FileSourceFactory.close(sources);
+            throw ioe;
+        }
+        return sources;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        SchemaKey that = (SchemaKey) o;
+
+        if (!Arrays.equals(resourceNames, that.resourceNames)) return false;
+        if (!Arrays.equals(resourceUrls, that.resourceUrls)) return false;
+        if (!Arrays.equals(files, that.files)) return false;
+        if (!Arrays.equals(lastModifiedTimes, that.lastModifiedTimes)) return false;
+        if (!Arrays.equals(lengths, that.lengths)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(resourceNames);
+        result = 31 * result + Arrays.hashCode(resourceUrls);
+        result = 31 * result + Arrays.hashCode(files);
+        result = 31 * result + Arrays.hashCode(lastModifiedTimes);
+        result = 31 * result + Arrays.hashCode(lengths);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return (files != null) ? Arrays.toString(files) : Arrays.toString(resourceNames);
+    }
+}
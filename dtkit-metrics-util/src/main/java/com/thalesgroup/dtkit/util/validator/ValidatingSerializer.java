@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.validator;
+
+import net.sf.saxon.Configuration;
+import net.sf.saxon.Controller;
+import net.sf.saxon.event.ContentHandlerProxy;
+import net.sf.saxon.event.PipelineConfiguration;
+import net.sf.saxon.event.Receiver;
+import net.sf.saxon.event.TeeOutputter;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.Serializer;
+import net.sf.saxon.trans.XPathException;
+import org.xml.sax.Attributes;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+import java.util.Properties;
+
+/**
+ * Serializer validating the written document against a schema
+ * <p/>
+ * The serialized events are also sent to a schema validator, so that the result of a transformation is validated
+ * without being read again. As a serializer, it keeps the output properties declared by the stylesheet.
+ */
+public class ValidatingSerializer extends Serializer {
+
+    private final XMLFilterImpl validatorInput;
+
+    public ValidatingSerializer(Schema schema, ErrorHandler errorHandler) {
+        ValidatorHandler validatorHandler = schema.newValidatorHandler();
+        validatorHandler.setErrorHandler(errorHandler);
+        validatorHandler.setResourceResolver(new ValidationService.Resolver());
+        //Saxon may give null attributes for an element without attributes, which the JAXP validator rejects
+        validatorInput = new XMLFilterImpl() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+                super.startElement(uri, localName, qName, (atts == null) ? new AttributesImpl() : atts);
+            }
+        };
+        validatorInput.setContentHandler(validatorHandler);
+    }
+
+    @Override
+    protected Receiver getReceiver(Configuration config, Controller controller, Properties predefinedProperties) throws SaxonApiException {
+        Receiver serializerReceiver = super.getReceiver(config, controller, predefinedProperties);
+        ContentHandlerProxy validatorReceiver = new ContentHandlerProxy();
+        validatorReceiver.setUnderlyingContentHandler(validatorInput);
+        PipelineConfiguration pipelineConfiguration = (controller == null) ? config.makePipelineConfiguration() : controller.makePipelineConfiguration();
+        validatorReceiver.setPipelineConfiguration(pipelineConfiguration);
+        //The tee doesn't open its branches
+        try {
+            validatorReceiver.open();
+        } catch (XPathException xpe) {
+            throw new SaxonApiException(xpe);
+        }
+        return new TeeOutputter(serializerReceiver, validatorReceiver);
+    }
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Thales Corporate Services SAS                             *
+ * Author : Gregory Boissinot                                                   *
+ *                                                                              *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy *
+ * of this software and associated documentation files (the "Software"), to deal*
+ * in the Software without restriction, including without limitation the rights *
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell    *
+ * copies of the Software, and to permit persons to whom the Software is        *
+ * furnished to do so, subject to the following conditions:                     *
+ *                                                                              *
+ * The above copyright notice and this permission notice shall be included in   *
+ * all copies or substantial portions of the Software.                          *
+ *                                                                              *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR   *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,     *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE  *
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER       *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,*
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN    *
+ * THE SOFTWARE.                                                                *
+ *******************************************************************************/
+
+package com.thalesgroup.dtkit.util.validator;
+
+import org.xml.sax.*;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+
+/**
+ * XML filter validating the parsed document against a schema while it is passed to the next consumer
+ * <p/>
+ * The document is read once, both for the validation and for its processing. The validation errors are
+ * reported to the given error handler. The parsed events are given both to the validator and, unchanged, to the
+ * next consumer: the output of the validator, which may hold the default attributes declared by the schema, is
+ * discarded, so the processing of the document doesn't depend on its validation.
+ */
+public class ValidationFilter extends XMLFilterImpl {
+
+    private final ValidatorHandler validatorHandler;
+
+    public ValidationFilter(XMLReader parent, Schema schema, ErrorHandler errorHandler) {
+        super(parent);
+        this.validatorHandler = schema.newValidatorHandler();
+        this.validatorHandler.setErrorHandler(errorHandler);
+        this.validatorHandler.setResourceResolver(new ValidationService.Resolver());
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        validatorHandler.setDocumentLocator(locator);
+        super.setDocumentLocator(locator);
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        validatorHandler.startDocument();
+        super.startDocument();
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        validatorHandler.endDocument();
+        super.endDocument();
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        validatorHandler.startPrefixMapping(prefix, uri);
+        super.startPrefixMapping(prefix, uri);
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        validatorHandler.endPrefixMapping(prefix);
+        super.endPrefixMapping(prefix);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        validatorHandler.startElement(uri, localName, qName, atts);
+        super.startElement(uri, localName, qName, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        validatorHandler.endElement(uri, localName, qName);
+        super.endElement(uri, localName, qName);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        validatorHandler.characters(ch, start, length);
+        super.characters(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        validatorHandler.ignorableWhitespace(ch, start, length);
+        super.ignorableWhitespace(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        validatorHandler.processingInstruction(target, data);
+        super.processingInstruction(target, data);
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        validatorHandler.skippedEntity(name);
+        super.skippedEntity(name);
+    }
+}
@@ -24,6 +24,7 @@
 package com.thalesgroup.dtkit.util.validator;
 
 import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
 import java.io.Serializable;
@@ -36,40 +37,96 @@ public class ValidationHandler implements ErrorHandler, Serializable {
 
     private List<ValidationError> errors = new ArrayList<ValidationError>();
 
+    private final int maxErrors;
+
+    private final boolean failFast;
+
+    private boolean aborted;
+
+    public ValidationHandler() {
+        this(0, false);
+    }
+
+    /**
+     * Creates a handler stopping the validation early
+     * When the validation is stopped, the reported error is thrown back to the validator so that
+     * it stops reading the document at once.
+     *
+     * @param maxErrors the maximum number of collected errors before the validation is stopped, 0 for no limit
+     * @param failFast  true to stop the validation at the first error or fatal error
+     */
+    public ValidationHandler(int maxErrors, boolean failFast) {
+        if (maxErrors < 0) {
+            throw new IllegalArgumentException("The maximum number of errors must be positive or 0.");
+        }
+        this.maxErrors = maxErrors;
+        this.failFast = failFast;
+    }
+
     /**
      * Report a non-fatal error
      *
      * @param ex the error condition
+     * @throws SAXException when the validation must be stopped
      */
-    public void error(SAXParseException ex) {
+    public void error(SAXParseException ex) throws SAXException {
 
         errors.add(new ValidationError(ErrorType.ERROR, ex.getLineNumber(), ex.getSystemId(), ex.getMessage()));
+        checkAbort(ex, failFast);
     }
 
     /**
      * Report a fatal error
      *
      * @param ex the error condition
+     * @throws SAXException when the validation must be stopped
      */
 
-    public void fatalError(SAXParseException ex) {
+    public void fatalError(SAXParseException ex) throws SAXException {
         System.err.println("At line " + ex.getLineNumber() + " of " + ex.getSystemId() + ':');
         System.err.println(ex.getMessage());
         errors.add(new ValidationError(ErrorType.FATAL_ERROR, ex.getLineNumber(), ex.getSystemId(), ex.getMessage()));
+        checkAbort(ex, failFast);
     }
 
     /**
      * Report a warning
      *
      * @param ex the warning condition
+     * @throws SAXException when the validation must be stopped
      */
-    public void warning(org.xml.sax.SAXParseException ex) {
+    public void warning(org.xml.sax.SAXParseException ex) throws SAXException {
         System.err.println("At line " + ex.getLineNumber() + " of " + ex.getSystemId() + ':');
         System.err.println(ex.getMessage());
         errors.add(new ValidationError(ErrorType.WARNING, ex.getLineNumber(), ex.getSystemId(), ex.getMessage()));
+        checkAbort(ex, false);
+    }
+
+    private void checkAbort(SAXParseException ex, boolean abort) throws SAXException {
+        if (abort || (maxErrors > 0 && errors.size() >= maxErrors)) {
+            aborted = true;
+            throw ex;
+        }
     }
 
     public List<ValidationError> getErrors() {
         return errors;
     }
+
+    /**
+     * Tells whether the validation was stopped before the end of the document
+     *
+     * @return true if the maximum number of errors was reached or if an error occurred in fail-fast mode
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
 }
@@ -23,9 +23,14 @@
 
 package com.thalesgroup.dtkit.util.validator;
 
+import com.thalesgroup.dtkit.util.converter.FileSourceFactory;
+import com.thalesgroup.dtkit.util.instrumentation.Instrumentation;
+import com.thalesgroup.dtkit.util.instrumentation.InstrumentationFactory;
+import net.sf.saxon.s9api.Serializer;
 import org.w3c.dom.ls.LSInput;
 import org.w3c.dom.ls.LSResourceResolver;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
@@ -38,6 +43,88 @@ import java.util.List;
 
 public class ValidationService implements Serializable {
 
+    private transient SchemaCache schemaCache;
+
+    private String label;
+
+    private int maxErrors;
+
+    private boolean failFast;
+
+    public ValidationService() {
+    }
+
+    /**
+     * Creates a validation service compiling its grammars through the given cache
+     *
+     * @param schemaCache the schema cache
+     */
+    public ValidationService(SchemaCache schemaCache) {
+        this.schemaCache = schemaCache;
+    }
+
+    /**
+     * Gives the cache of compiled grammars
+     *
+     * @return the schema cache, the default cache if none was given
+     */
+    public SchemaCache getSchemaCache() {
+        if (schemaCache == null) {
+            return SchemaCache.getDefault();
+        }
+        return schemaCache;
+    }
+
+    /**
+     * Gives the label of the validations for the instrumentation, usually the label of the validated tool
+     *
+     * @return the label, null if the validations are not labelled
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Gives the maximum number of errors collected by a validation before it is stopped
+     *
+     * @return the maximum number of errors, 0 for no limit
+     */
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    public void setMaxErrors(int maxErrors) {
+        if (maxErrors < 0) {
+            throw new IllegalArgumentException("The maximum number of errors must be positive or 0.");
+        }
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Tells whether a validation is stopped at the first error or fatal error
+     *
+     * @return true in fail-fast mode
+     */
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    /**
+     * Creates a handler collecting the validation errors with the options of this service
+     *
+     * @return a new validation handler
+     */
+    public ValidationHandler newValidationHandler() {
+        return new ValidationHandler(maxErrors, failFast);
+    }
 
     /**
      * Inner class to implement a resource resolver. This version always returns null, which
@@ -81,59 +168,130 @@ public class ValidationService implements Serializable {
 
     public List<ValidationError> processValidation(File[] xsdFiles, File inputXML) throws ValidationException {
         Source[] xsdSources = new Source[xsdFiles.length];
-        Reader[] readers = new Reader[xsdFiles.length];
+        StreamSource[] streamSources = new StreamSource[xsdFiles.length];
 
-        for (int i = 0; i < xsdFiles.length; i++) {
-            try {
-                readers[i] = new FileReader(xsdFiles[i]);
-            } catch (FileNotFoundException fne) {
-                throw new ValidationException("Validation error", fne);
+        try {
+            for (int i = 0; i < xsdFiles.length; i++) {
+                streamSources[i] = FileSourceFactory.newStreamSource(xsdFiles[i]);
+                xsdSources[i] = streamSources[i];
             }
-        }
-
-        for (int i = 0; i < readers.length; i++) {
-            xsdSources[i] = new StreamSource(readers[i]);
-        }
-
-        List<ValidationError> listErrors = processValidation(xsdSources, inputXML);
-
-        for (int i = 0; i < readers.length; i++) {
-            try {
-                readers[i].close();
-            } catch (IOException ioe) {
-                throw new ValidationException("Validation error", ioe);
+            return processValidation(xsdSources, inputXML);
+        } catch (IOException ioe) {
+            throw new ValidationException("Validation error", ioe);
+        } finally {
+            for (StreamSource streamSource : streamSources) {
+                FileSourceFactory.close(streamSource);
             }
         }
-
-        return listErrors;
     }
 
 
     public List<ValidationError> processValidation(Source[] xsdSources, File inputXML) throws ValidationException {
 
-        ValidationHandler handler = new ValidationHandler();
+        ValidationHandler handler = newValidationHandler();
         try {
 
             SchemaFactory schemaFactory = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
             schemaFactory.setErrorHandler(handler);
             Schema schemaGrammar = schemaFactory.newSchema(xsdSources);
-            Resolver resolver = new Resolver();
-            Validator schemaValidator = schemaGrammar.newValidator();
-            schemaValidator.setErrorHandler(handler);
-            schemaValidator.setResourceResolver(resolver);
-            schemaValidator.validate(new StreamSource(inputXML));
 
             for (int i = 0; i < xsdSources.length; i++) {
                 xsdSources[i] = null;
             }
 
-            return handler.getErrors();
+            return validate(schemaGrammar, handler, inputXML);
         } catch (SAXException sae) {
             List<ValidationError> errors = handler.getErrors();
             errors.add(new ValidationError(ErrorType.ERROR, -1, "-1", sae.getMessage()));
             return errors;
+        }
+    }
+
+    /**
+     * Validate an input file against a grammar compiled once and shared through the schema cache
+     *
+     * @param schemaKey the identity of the xsd files
+     * @param inputXML  the input XML file
+     * @return the list of validation errors, empty if the validation succeeded
+     * @throws ValidationException when there is a validation error
+     */
+    public List<ValidationError> processValidation(SchemaKey schemaKey, File inputXML) throws ValidationException {
+
+        ValidationHandler handler = newValidationHandler();
+        try {
+            Schema schemaGrammar = getSchemaCache().get(schemaKey, handler);
+            return validate(schemaGrammar, handler, inputXML);
+        } catch (SAXException sae) {
+            List<ValidationError> errors = handler.getErrors();
+            errors.add(new ValidationError(ErrorType.ERROR, -1, "-1", sae.getMessage()));
+            return errors;
+        }
+    }
+
+    /**
+     * Wraps an XML reader to validate the parsed document against a grammar while it is read for another processing
+     * The validation errors are collected by the given handler. If the grammar can't be compiled, the error is
+     * collected and the reader is returned unchanged.
+     *
+     * @param xmlReader the XML reader of the document
+     * @param schemaKey the identity of the xsd files
+     * @param handler   the handler collecting the validation errors
+     * @return the validating XML reader
+     * @throws ValidationException when a xsd can't be read
+     */
+    public XMLReader newValidatingXMLReader(XMLReader xmlReader, SchemaKey schemaKey, ValidationHandler handler) throws ValidationException {
+        try {
+            return new ValidationFilter(xmlReader, getSchemaCache().get(schemaKey, handler), handler);
+        } catch (SAXException sae) {
+            handler.getErrors().add(new ValidationError(ErrorType.ERROR, -1, "-1", sae.getMessage()));
+            return xmlReader;
+        }
+    }
+
+    /**
+     * Creates a Saxon serializer validating the written document against a grammar
+     * The validation errors are collected by the given handler. If the grammar can't be compiled, the error is
+     * collected and a serializer without validation is returned.
+     *
+     * @param schemaKey the identity of the xsd files
+     * @param handler   the handler collecting the validation errors
+     * @return the validating serializer
+     * @throws ValidationException when a xsd can't be read
+     */
+    public Serializer newValidatingSerializer(SchemaKey schemaKey, ValidationHandler handler) throws ValidationException {
+        try {
+            return new ValidatingSerializer(getSchemaCache().get(schemaKey, handler), handler);
+        } catch (SAXException sae) {
+            handler.getErrors().add(new ValidationError(ErrorType.ERROR, -1, "-1", sae.getMessage()));
+            return new Serializer();
+        }
+    }
+
+    private List<ValidationError> validate(Schema schemaGrammar, ValidationHandler handler, File inputXML) throws SAXException, ValidationException {
+        long start = System.nanoTime();
+        StreamSource inputSource = null;
+        try {
+            Resolver resolver = new Resolver();
+            Validator schemaValidator = schemaGrammar.newValidator();
+            schemaValidator.setErrorHandler(handler);
+            schemaValidator.setResourceResolver(resolver);
+            inputSource = FileSourceFactory.newStreamSource(inputXML);
+            schemaValidator.validate(inputSource);
+            return handler.getErrors();
+        } catch (SAXException sae) {
+            if (handler.isAborted()) {
+                return handler.getErrors();
+            }
+            throw sae;
         } catch (IOException ioe) {
             throw new ValidationException("Validation error", ioe);
+        } finally {
+            FileSourceFactory.close(inputSource);
+            Instrumentation instrumentation = InstrumentationFactory.getInstance();
+            if (instrumentation != null) {
+                instrumentation.validated(label == null ? Instrumentation.UNKNOWN_LABEL : label,
+                        System.nanoTime() - start, inputXML.length(), handler.getErrors().size());
+            }
         }
     }
 
@@ -148,6 +306,6 @@ public class ValidationService implements Serializable {
      */
     public List<ValidationError> processValidation(File xsdFile, File inputXML) throws ValidationException {
 
-        return processValidation(new StreamSource(xsdFile), inputXML);
+        return processValidation(new File[]{xsdFile}, inputXML);
     }
 }
\ No newline at end of file
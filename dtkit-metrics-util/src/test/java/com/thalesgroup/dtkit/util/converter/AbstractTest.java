@@ -79,4 +79,19 @@ public class AbstractTest {
         outputXMLFile.deleteOnExit();
     }
 
+    public void convertAndValidate(XslKey xslKey, String inputXMLPath, String expectedResultPath) throws Exception {
+
+        ConversionService conversionService = new ConversionService();
+
+        File outputXMLFile = File.createTempFile("result", "xml");
+
+        conversionService.convert(xslKey, new InputSource(this.getClass().getResourceAsStream(inputXMLPath)), outputXMLFile, null);
+
+        assertThat("XSL transformation did not work",
+                readStringAsString(outputXMLFile),
+                is(readStringAsString(new File(this.getClass().getResource(expectedResultPath).toURI()))));
+
+        outputXMLFile.deleteOnExit();
+    }
+
 }
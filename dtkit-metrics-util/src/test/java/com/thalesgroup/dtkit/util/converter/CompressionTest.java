@@ -0,0 +1,86 @@
+package com.thalesgroup.dtkit.util.converter;
+
+import com.thalesgroup.dtkit.util.validator.SchemaKey;
+import com.thalesgroup.dtkit.util.validator.ValidationService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+public class CompressionTest {
+
+    private final XslKey xslKey = XslKey.fromResource(this.getClass(), "myex-xml.xsl");
+
+    private File inputFile;
+
+    private File outFile;
+
+    @Before
+    public void createFiles() throws Exception {
+        inputFile = File.createTempFile("input", ".xml.gz");
+        OutputStream os = new GZIPOutputStream(new FileOutputStream(inputFile));
+        try {
+            copy(this.getClass().getResourceAsStream("myex.xml"), os);
+        } finally {
+            os.close();
+        }
+        outFile = File.createTempFile("output", ".xml.gz");
+    }
+
+    @After
+    public void deleteFiles() {
+        FileSourceFactory.setMapThreshold(FileSourceFactory.DEFAULT_MAP_THRESHOLD);
+        inputFile.delete();
+        outFile.delete();
+    }
+
+    private void copy(InputStream is, OutputStream os) throws IOException {
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = is.read(buffer)) != -1) {
+            os.write(buffer, 0, count);
+        }
+        is.close();
+    }
+
+    private String readCompressed(File file) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        copy(new GZIPInputStream(new FileInputStream(file)), baos);
+        return baos.toString("UTF-8");
+    }
+
+    @Test
+    public void convertCompressedFiles() throws Exception {
+        ConversionService conversionService = new ConversionService();
+        String expected = conversionService.convertAndReturn(xslKey, new File(this.getClass().getResource("myex.xml").toURI()), null);
+
+        conversionService.convert(xslKey, inputFile, outFile, null);
+        assertThat(readCompressed(outFile), is(expected));
+
+        FileSourceFactory.setMapThreshold(16);
+        conversionService.convert(xslKey, inputFile, outFile, null);
+        assertThat(readCompressed(outFile), is(expected));
+    }
+
+    @Test
+    public void validateCompressedFile() throws Exception {
+        SchemaKey schemaKey = SchemaKey.fromResources(this.getClass(), "/com/thalesgroup/dtkit/util/validator/myex.xsd");
+        assertThat(new ValidationService().processValidation(schemaKey, inputFile).size(), is(0));
+    }
+
+    @Test
+    public void detectMagicBytes() throws Exception {
+        assertThat(Compression.fromMagic(new byte[]{0x1F, (byte) 0x8B, 0x08, 0x00}, 4), is(Compression.GZIP));
+        assertThat(Compression.fromMagic(new byte[]{0x28, (byte) 0xB5, 0x2F, (byte) 0xFD}, 4), is(Compression.ZSTD));
+        assertThat(Compression.fromMagic("<?xm".getBytes("UTF-8"), 4), is(Compression.NONE));
+        assertThat(Compression.fromFileName("report.xml.zst"), is(Compression.ZSTD));
+        assertThat(Compression.fromFileName("report.xml"), is(Compression.NONE));
+    }
+}
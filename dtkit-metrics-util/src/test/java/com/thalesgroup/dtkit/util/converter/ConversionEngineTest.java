@@ -0,0 +1,47 @@
+package com.thalesgroup.dtkit.util.converter;
+
+import net.sf.saxon.s9api.Processor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+
+public class ConversionEngineTest {
+
+    @Test
+    public void configureEachProcessorAtInit() {
+        final List<Processor> configured = new ArrayList<Processor>();
+        ConversionEngine engine = new ConversionEngine(2, 8);
+        engine.addConfigurer(new ProcessorConfigurer() {
+            public void configure(Processor processor) {
+                configured.add(processor);
+            }
+        });
+        engine.init();
+
+        assertThat(configured.size(), is(2));
+        assertThat(engine.isStarted(), is(true));
+        engine.close();
+        assertThat(engine.isStarted(), is(false));
+    }
+
+    @Test
+    public void sameStylesheetSameProcessor() {
+        ConversionEngine engine = new ConversionEngine(3, 8);
+        engine.init();
+        XslKey xslKey = XslKey.fromResource(this.getClass(), "myex-xml.xsl");
+
+        assertThat(engine.getXsltExecutableCache(xslKey), sameInstance(engine.getXsltExecutableCache(xslKey)));
+        engine.close();
+    }
+
+    @Test(expected = ConversionException.class)
+    public void notStarted() {
+        new ConversionEngine().getProcessor();
+    }
+}
@@ -0,0 +1,93 @@
+package com.thalesgroup.dtkit.util.converter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+public class ConversionManifestTest {
+
+    private File manifestFile;
+
+    private File inputFile;
+
+    private File outputFile;
+
+    private File movedOutputFile;
+
+    @Before
+    public void createFiles() throws Exception {
+        manifestFile = File.createTempFile("manifest", ".txt");
+        manifestFile.delete();
+        inputFile = File.createTempFile("input", ".xml");
+        write(inputFile, "<myex attr1=\"val1\"/>");
+        outputFile = File.createTempFile("output", ".xml");
+        write(outputFile, "<result/>");
+        movedOutputFile = File.createTempFile("moved output", ".xml");
+        movedOutputFile.delete();
+    }
+
+    @After
+    public void deleteFiles() {
+        manifestFile.delete();
+        inputFile.delete();
+        outputFile.delete();
+        movedOutputFile.delete();
+    }
+
+    private void write(File file, String content) throws Exception {
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private ConversionManifest convertedManifest() {
+        ConversionManifest manifest = ConversionManifest.load(manifestFile);
+        manifest.put(manifest.fingerprint(inputFile, "v1", outputFile));
+        manifest.save();
+        return ConversionManifest.load(manifestFile);
+    }
+
+    @Test
+    public void convertNewInput() throws Exception {
+        ConversionManifest manifest = ConversionManifest.load(manifestFile);
+        assertThat(manifest.reuseOutput(manifest.fingerprint(inputFile, "v1", outputFile)), is(false));
+    }
+
+    @Test
+    public void skipUnchangedInput() throws Exception {
+        ConversionManifest manifest = convertedManifest();
+        assertThat(manifest.size(), is(1));
+        assertThat(manifest.reuseOutput(manifest.fingerprint(inputFile, "v1", outputFile)), is(true));
+
+        //Same content with a new modification time
+        inputFile.setLastModified(inputFile.lastModified() - 60000);
+        assertThat(manifest.reuseOutput(manifest.fingerprint(inputFile, "v1", outputFile)), is(true));
+    }
+
+    @Test
+    public void convertChangedInputOrConverter() throws Exception {
+        ConversionManifest manifest = convertedManifest();
+        assertThat(manifest.reuseOutput(manifest.fingerprint(inputFile, "v2", outputFile)), is(false));
+
+        write(inputFile, "<myex attr1=\"val2\"/>");
+        assertThat(manifest.reuseOutput(manifest.fingerprint(inputFile, "v1", outputFile)), is(false));
+    }
+
+    @Test
+    public void copyOutputToNewLocation() throws Exception {
+        ConversionManifest manifest = convertedManifest();
+        assertThat(manifest.reuseOutput(manifest.fingerprint(inputFile, "v1", movedOutputFile)), is(true));
+        assertThat(movedOutputFile.length(), is(outputFile.length()));
+    }
+}
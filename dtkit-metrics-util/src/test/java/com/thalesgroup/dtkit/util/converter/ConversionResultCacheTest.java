@@ -0,0 +1,128 @@
+package com.thalesgroup.dtkit.util.converter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+public class ConversionResultCacheTest {
+
+    private final XslKey xslKey = XslKey.fromResource(this.getClass(), "myex-xml.xsl");
+
+    private File directory;
+
+    private File inputFile;
+
+    private File outFile;
+
+    @Before
+    public void createFiles() throws Exception {
+        directory = File.createTempFile("cache", "");
+        directory.delete();
+        inputFile = new File(this.getClass().getResource("myex.xml").toURI());
+        outFile = File.createTempFile("output", ".xml");
+    }
+
+    @After
+    public void deleteFiles() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        outFile.delete();
+    }
+
+    private String read(File file) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = is.read(buffer)) != -1) {
+                baos.write(buffer, 0, count);
+            }
+            return baos.toString("UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void serveSameConversionFromCache() throws Exception {
+        ConversionResultCache resultCache = new ConversionResultCache(directory, 1024 * 1024);
+        ConversionService conversionService = new ConversionService();
+        conversionService.setResultCache(resultCache);
+
+        conversionService.convert(xslKey, inputFile, outFile, null);
+        String expected = read(outFile);
+        outFile.delete();
+        conversionService.convert(xslKey, inputFile, outFile, null);
+
+        assertThat(read(outFile), is(expected));
+        assertThat(resultCache.getMissCount(), is(1L));
+        assertThat(resultCache.getHitCount(), is(1L));
+
+        //The results survive the cache instance
+        ConversionResultCache reopenedCache = new ConversionResultCache(directory, 1024 * 1024);
+        assertThat(reopenedCache.size(), is(1));
+        conversionService.setResultCache(reopenedCache);
+        conversionService.convert(xslKey, inputFile, outFile, null);
+        assertThat(reopenedCache.getHitCount(), is(1L));
+    }
+
+    @Test
+    public void identifyParameters() throws Exception {
+        ConversionResultCache resultCache = new ConversionResultCache(directory, 1024 * 1024);
+        Map<String, Object> params = Collections.<String, Object>singletonMap("name", "value");
+
+        assertThat(resultCache.computeKey(xslKey, inputFile, null), is(resultCache.computeKey(xslKey, inputFile, null)));
+        assertThat(resultCache.computeKey(xslKey, inputFile, params).equals(resultCache.computeKey(xslKey, inputFile, null)), is(false));
+    }
+
+    @Test
+    public void identifyModules() throws Exception {
+        File xslDir = File.createTempFile("modules", "");
+        try {
+            xslDir.delete();
+            XslKeyTest.writeModules(xslDir, "first");
+            XslKey mainKey = XslKey.fromFile(new File(xslDir, "main.xsl"));
+            ConversionResultCache resultCache = new ConversionResultCache(directory, 1024 * 1024);
+            String key = resultCache.computeKey(mainKey, inputFile, null);
+
+            //The main stylesheet is unchanged, the module included by its imported module changes
+            XslKeyTest.writeModules(xslDir, "second value");
+            assertThat(resultCache.computeKey(mainKey, inputFile, null).equals(key), is(false));
+
+            ConversionService conversionService = new ConversionService();
+            conversionService.setResultCache(resultCache);
+            conversionService.convert(mainKey, inputFile, outFile, null);
+            assertThat(read(outFile).contains("second value"), is(true));
+        } finally {
+            XslKeyTest.delete(xslDir);
+        }
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedResults() throws Exception {
+        ConversionResultCache resultCache = new ConversionResultCache(directory, 10);
+        resultCache.put("first", new ByteArrayInputStream("123456".getBytes("UTF-8")));
+        resultCache.put("second", new ByteArrayInputStream("123456".getBytes("UTF-8")));
+
+        assertThat(resultCache.size(), is(1));
+        assertThat(resultCache.getEvictionCount(), is(1L));
+        assertThat(resultCache.get("first") == null, is(true));
+        InputStream second = resultCache.get("second");
+        assertThat(second == null, is(false));
+        second.close();
+    }
+}
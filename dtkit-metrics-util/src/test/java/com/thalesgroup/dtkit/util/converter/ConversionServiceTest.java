@@ -0,0 +1,135 @@
+package com.thalesgroup.dtkit.util.converter;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+public class ConversionServiceTest extends AbstractTest {
+
+    @Test
+    public void convertTxt() throws Exception {
+        convertAndValidate("myex-txt.xsl", "myex.xml", "myex-outtxt.txt");
+    }
+
+    @Test
+    public void convertXml() throws Exception {
+        convertAndValidate("myex-xml.xsl", "myex.xml", "myex-outxml.xml");
+    }
+
+    @Test
+    public void convertXmlWithExternalDTD() throws Exception {
+        convertAndValidate("myex-xml.xsl", "myex-dtd.xml", "myex-outxml.xml");
+    }
+
+    @Test
+    public void convertXmlWithCachedXsl() throws Exception {
+        convertAndValidate(XslKey.fromResource(this.getClass(), "myex-xml.xsl"), "myex.xml", "myex-outxml.xml");
+        convertAndValidate(XslKey.fromResource(this.getClass(), "myex-xml.xsl"), "myex.xml", "myex-outxml.xml");
+    }
+
+    @Test
+    public void convertToWriter() throws Exception {
+        StringWriter writer = new StringWriter();
+        new ConversionService().convert(XslKey.fromResource(this.getClass(), "myex-txt.xsl"),
+                new InputSource(this.getClass().getResourceAsStream("myex.xml")), writer, null);
+        assertThat(writer.toString(), is("val1"));
+    }
+
+    @Test
+    public void convertToOutputStream() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new ConversionService().convert(new StreamSource(this.getClass().getResourceAsStream("myex-txt.xsl")),
+                new InputSource(this.getClass().getResourceAsStream("myex.xml")), outputStream, null);
+        assertThat(outputStream.toString("UTF-8"), is("val1"));
+    }
+
+    @Test
+    public void convertToDOMResult() throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        new ConversionService().convert(XslKey.fromResource(this.getClass(), "myex-xml.xsl"),
+                new InputSource(this.getClass().getResourceAsStream("myex.xml")), new DOMResult(document), null);
+        assertThat(document.getDocumentElement().getTextContent(), is("val1"));
+    }
+
+    @Test
+    public void convertMultiple() throws Exception {
+        Map<XslKey, File> outputs = newOutputs();
+        new ConversionService().convertMultiple(new InputSource(this.getClass().getResourceAsStream("myex.xml")), outputs, null, null);
+        assertMultipleOutputs(outputs);
+    }
+
+    @Test
+    public void convertMultipleConcurrently() throws Exception {
+        Map<XslKey, File> outputs = newOutputs();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            new ConversionService().convertMultiple(new File(this.getClass().getResource("myex.xml").toURI()), outputs, null, executor);
+        } finally {
+            executor.shutdown();
+        }
+        assertMultipleOutputs(outputs);
+    }
+
+    @Test(expected = ConversionException.class)
+    public void convertMultipleWithWrongXsl() throws Exception {
+        Map<XslKey, File> outputs = newOutputs();
+        outputs.put(XslKey.fromContent("<notAnXsl/>"), File.createTempFile("result", "xml"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            new ConversionService().convertMultiple(new InputSource(this.getClass().getResourceAsStream("myex.xml")), outputs, null, executor);
+        } finally {
+            executor.shutdown();
+            for (File outFile : outputs.values()) {
+                outFile.delete();
+            }
+        }
+    }
+
+    private Map<XslKey, File> newOutputs() throws Exception {
+        Map<XslKey, File> outputs = new LinkedHashMap<XslKey, File>();
+        outputs.put(XslKey.fromResource(this.getClass(), "myex-txt.xsl"), File.createTempFile("result", "txt"));
+        outputs.put(XslKey.fromResource(this.getClass(), "myex-xml.xsl"), File.createTempFile("result", "xml"));
+        return outputs;
+    }
+
+    private void assertMultipleOutputs(Map<XslKey, File> outputs) throws Exception {
+        File[] outFiles = outputs.values().toArray(new File[outputs.size()]);
+        assertThat(read(outFiles[0]), is("val1"));
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(outFiles[1]);
+        assertThat(document.getDocumentElement().getTextContent(), is("val1"));
+        for (File outFile : outFiles) {
+            outFile.delete();
+        }
+    }
+
+    private String read(File file) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = fis.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+        } finally {
+            fis.close();
+        }
+        return outputStream.toString("UTF-8");
+    }
+}
@@ -0,0 +1,115 @@
+package com.thalesgroup.dtkit.util.converter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+public class FileSourceFactoryTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws Exception {
+        file = File.createTempFile("source", ".xml");
+    }
+
+    @After
+    public void deleteFile() {
+        FileSourceFactory.setMapThreshold(FileSourceFactory.DEFAULT_MAP_THRESHOLD);
+        file.delete();
+    }
+
+    private void write(byte[] content) throws Exception {
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content);
+        } finally {
+            os.close();
+        }
+    }
+
+    private byte[] read() throws Exception {
+        InputStream is = FileSourceFactory.newInputStream(file);
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1000];
+            int count;
+            while ((count = is.read(buffer)) != -1) {
+                baos.write(buffer, 0, count);
+            }
+            return baos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void readMappedAndUnmappedFiles() throws Exception {
+        byte[] content = new byte[100000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        write(content);
+
+        assertThat(Arrays.equals(read(), content), is(true));
+        FileSourceFactory.setMapThreshold(1024);
+        assertThat(Arrays.equals(read(), content), is(true));
+    }
+
+    private void checkMarkAndSkip(byte[] content) throws Exception {
+        InputStream is = FileSourceFactory.newInputStream(file);
+        try {
+            assertThat(is.markSupported(), is(true));
+            //The skips and the reset go across the buffer refills
+            assertThat(is.skip(70000), is(70000L));
+            assertThat(is.read(), is(content[70000] & 0xFF));
+            is.mark(100000);
+            byte[] buffer = new byte[20000];
+            int length = 0;
+            int count;
+            while (length < buffer.length && (count = is.read(buffer, length, buffer.length - length)) != -1) {
+                length += count;
+            }
+            assertThat(is.skip(100000), is((long) content.length - 90001));
+            assertThat(is.read(), is(-1));
+            is.reset();
+            assertThat(is.read(), is(content[70001] & 0xFF));
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void markAndSkip() throws Exception {
+        byte[] content = new byte[100000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 7);
+        }
+        write(content);
+
+        checkMarkAndSkip(content);
+        FileSourceFactory.setMapThreshold(1024);
+        checkMarkAndSkip(content);
+    }
+
+    @Test
+    public void detectEncodingFromDeclaration() throws Exception {
+        write("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><myex attr1=\"\u00e9t\u00e9\"/>".getBytes("ISO-8859-1"));
+        String xsl = "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+                + "<xsl:output method=\"text\"/><xsl:template match=\"/\"><xsl:value-of select=\"myex/@attr1\"/></xsl:template>"
+                + "</xsl:stylesheet>";
+
+        assertThat(new ConversionService().convertAndReturn(XslKey.fromContent(xsl), file, null), is("\u00e9t\u00e9"));
+    }
+}
@@ -0,0 +1,104 @@
+package com.thalesgroup.dtkit.util.converter;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.*;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+public class MemoryBudgetTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private Future<MemoryBudget.Grant> acquireLater(final MemoryBudget budget, final long bytes) {
+        return executor.submit(new Callable<MemoryBudget.Grant>() {
+            public MemoryBudget.Grant call() throws InterruptedException {
+                return budget.acquire(bytes);
+            }
+        });
+    }
+
+    private void waitForWaiters(MemoryBudget budget, int count) throws InterruptedException {
+        while (budget.getWaitingCount() != count) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void admitWhileBudgetAllows() throws Exception {
+        MemoryBudget budget = new MemoryBudget(100);
+        MemoryBudget.Grant first = budget.acquire(40);
+        budget.acquire(40);
+        assertThat(budget.getUsed(), is(80L));
+
+        Future<MemoryBudget.Grant> third = acquireLater(budget, 40);
+        waitForWaiters(budget, 1);
+        assertThat(third.isDone(), is(false));
+
+        first.release();
+        first.release();
+        assertThat(third.get(5, TimeUnit.SECONDS).getBytes(), is(40L));
+        assertThat(budget.getUsed(), is(80L));
+        assertThat(budget.getWaitCount(), is(1L));
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void oversizeRunsAlone() throws Exception {
+        MemoryBudget budget = new MemoryBudget(100);
+        MemoryBudget.Grant small = budget.acquire(30);
+
+        Future<MemoryBudget.Grant> oversize = acquireLater(budget, 500);
+        waitForWaiters(budget, 1);
+        small.release();
+        MemoryBudget.Grant grant = oversize.get(5, TimeUnit.SECONDS);
+        assertThat(grant.getBytes(), is(100L));
+        assertThat(budget.getSerialCount(), is(1L));
+
+        Future<MemoryBudget.Grant> next = acquireLater(budget, 1);
+        waitForWaiters(budget, 1);
+        grant.release();
+        assertThat(next.get(5, TimeUnit.SECONDS).getBytes(), is(1L));
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void estimateCompressedInput() throws Exception {
+        File inputFile = File.createTempFile("input", ".xml.gz");
+        try {
+            OutputStream outputStream = Compression.GZIP.compress(new FileOutputStream(inputFile));
+            outputStream.write(new byte[100000]);
+            outputStream.close();
+
+            assertThat(MemoryBudget.estimate(inputFile, 2), is(200000L + MemoryBudget.CONVERSION_OVERHEAD));
+        } finally {
+            inputFile.delete();
+        }
+    }
+
+    @Test
+    public void conversionReleasesItsMemory() throws Exception {
+        MemoryBudget budget = new MemoryBudget(64L * 1024 * 1024);
+        ConversionService conversionService = new ConversionService();
+        conversionService.setMemoryBudget(budget);
+        conversionService.setResultCache(null);
+        File inputFile = new File(this.getClass().getResource("myex.xml").toURI());
+
+        conversionService.convertAndReturn(XslKey.fromResource(this.getClass(), "myex-xml.xsl"), inputFile, null);
+        assertThat(budget.getAdmittedCount(), is(1L));
+        assertThat(budget.getUsed(), is(0L));
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void conversionsAreNotGovernedByDefault() throws Exception {
+        assertThat(MemoryBudget.getDefault() == null, is(true));
+        assertThat(new ConversionService().reserveMemory(new File(this.getClass().getResource("myex.xml").toURI()), false) == null, is(true));
+        assertThat(MemoryBudget.ofMaxMemory(0.5).getBudget(), is(Runtime.getRuntime().maxMemory() / 2));
+    }
+}
@@ -0,0 +1,79 @@
+package com.thalesgroup.dtkit.util.converter;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+public class PrecompiledStylesheetsTest {
+
+    private String convert(ConversionEngine engine, XslKey xslKey) {
+        return new ConversionService(engine).convertAndReturn(xslKey, new InputSource(this.getClass().getResource("myex.xml").toExternalForm()), null);
+    }
+
+    @Test
+    public void usePrecompiledStylesheets() throws Exception {
+        XslKey xmlKey = XslKey.fromResource(this.getClass(), "myex-xml.xsl");
+        XslKey txtKey = XslKey.fromResource(this.getClass(), "myex-txt.xsl");
+        ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+        PrecompiledStylesheets.export(Arrays.asList(xmlKey, XslKey.fromResource(this.getClass(), "myex-xml.xsl")), bundle);
+
+        PrecompiledStylesheets precompiledStylesheets = PrecompiledStylesheets.load(new ByteArrayInputStream(bundle.toByteArray()));
+        assertThat(precompiledStylesheets.size(), is(1));
+        assertThat(precompiledStylesheets.getDigests().contains(xmlKey.computeDigest()), is(true));
+
+        ConversionEngine engine = new ConversionEngine(2, 8);
+        engine.setPrecompiledStylesheets(precompiledStylesheets);
+        engine.init();
+        engine.warmUp(Collections.singleton(xmlKey));
+        assertThat(engine.getPrecompiledCount(), is(1L));
+        assertThat(engine.getXsltCacheMissCount(), is(1L));
+
+        ConversionEngine sourceEngine = new ConversionEngine();
+        sourceEngine.init();
+        assertThat(convert(engine, xmlKey), is(convert(sourceEngine, xmlKey)));
+        assertThat(engine.getXsltCacheMissCount(), is(1L));
+
+        //A stylesheet missing from the bundle is compiled from source
+        assertThat(convert(engine, txtKey), is(convert(sourceEngine, txtKey)));
+        assertThat(engine.getPrecompiledCount(), is(1L));
+        engine.close();
+        sourceEngine.close();
+    }
+
+    @Test
+    public void recompileChangedModules() throws Exception {
+        File xslDir = File.createTempFile("modules", "");
+        try {
+            xslDir.delete();
+            XslKeyTest.writeModules(xslDir, "first");
+            XslKey mainKey = XslKey.fromFile(new File(xslDir, "main.xsl"));
+            ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+            PrecompiledStylesheets.export(Collections.singleton(mainKey), bundle);
+
+            //Only a module included by the imported module changes after the export
+            XslKeyTest.writeModules(xslDir, "second value");
+            ConversionEngine engine = new ConversionEngine(2, 8);
+            engine.setPrecompiledStylesheets(PrecompiledStylesheets.load(new ByteArrayInputStream(bundle.toByteArray())));
+            engine.init();
+            assertThat(convert(engine, mainKey).contains("second value"), is(true));
+            assertThat(engine.getPrecompiledCount(), is(0L));
+            engine.close();
+        } finally {
+            XslKeyTest.delete(xslDir);
+        }
+    }
+
+    @Test(expected = ConversionException.class)
+    public void notABundle() {
+        PrecompiledStylesheets.load(new ByteArrayInputStream("<xsl:stylesheet/>".getBytes()));
+    }
+}
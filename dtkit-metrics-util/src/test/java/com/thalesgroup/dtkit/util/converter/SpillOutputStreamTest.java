@@ -0,0 +1,53 @@
+package com.thalesgroup.dtkit.util.converter;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import java.io.File;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+
+public class SpillOutputStreamTest {
+
+    @Test
+    public void keepInMemoryUnderThreshold() throws Exception {
+        SpillOutputStream outputStream = new SpillOutputStream(16);
+        outputStream.write("val1".getBytes("UTF-8"));
+        outputStream.close();
+
+        assertThat(outputStream.isInMemory(), is(true));
+        assertThat(outputStream.getFile(), nullValue());
+        assertThat(outputStream.toString("UTF-8"), is("val1"));
+        assertThat(outputStream.delete(), is(true));
+    }
+
+    @Test
+    public void spillOverThreshold() throws Exception {
+        SpillOutputStream outputStream = new SpillOutputStream(4);
+        outputStream.write("val".getBytes("UTF-8"));
+        outputStream.write("1-val2".getBytes("UTF-8"));
+        outputStream.close();
+
+        assertThat(outputStream.isInMemory(), is(false));
+        File file = outputStream.getFile();
+        assertThat(file.exists(), is(true));
+        assertThat(outputStream.size(), is(9L));
+        assertThat(outputStream.toString("UTF-8"), is("val1-val2"));
+        assertThat(outputStream.delete(), is(true));
+        assertThat(file.exists(), is(false));
+    }
+
+    @Test
+    public void convertAndBuffer() throws Exception {
+        ConversionService conversionService = new ConversionService();
+        SpillOutputStream outputStream = conversionService.convertAndBuffer(
+                XslKey.fromResource(this.getClass(), "myex-txt.xsl"),
+                new InputSource(this.getClass().getResourceAsStream("myex.xml")), null, 0);
+
+        assertThat(outputStream.isInMemory(), is(false));
+        assertThat(outputStream.toString("UTF-8"), is("val1"));
+        assertThat(outputStream.delete(), is(true));
+    }
+}
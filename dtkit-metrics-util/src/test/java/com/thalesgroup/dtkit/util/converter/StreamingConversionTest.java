@@ -0,0 +1,32 @@
+package com.thalesgroup.dtkit.util.converter;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+public class StreamingConversionTest {
+
+    private InputSource getInputSource(String name) {
+        InputStream inputStream = this.getClass().getResourceAsStream(name);
+        return new InputSource(inputStream);
+    }
+
+    @Test
+    public void sameResultAsInMemoryConversion() throws Exception {
+        ConversionService conversionService = new ConversionService();
+        XslKey xslKey = XslKey.fromResource(this.getClass(), "myex-stream.xsl");
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        conversionService.convert(xslKey, getInputSource("myex-stream.xml"), expected, null);
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        conversionService.convertStreaming(xslKey, getInputSource("myex-stream.xml"), streamed, null);
+
+        assertThat(streamed.toString("UTF-8"), is(expected.toString("UTF-8")));
+    }
+}
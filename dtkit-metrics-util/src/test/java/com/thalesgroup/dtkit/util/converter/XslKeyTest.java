@@ -0,0 +1,119 @@
+package com.thalesgroup.dtkit.util.converter;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+
+public class XslKeyTest {
+
+    @Test
+    public void resourceKeyIsEqualOnceDeserialized() throws Exception {
+        XslKey xslKey = XslKey.fromResource(this.getClass(), "myex-xml.xsl");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(xslKey);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        XslKey copy = (XslKey) in.readObject();
+        in.close();
+
+        assertThat(copy, is(xslKey));
+        assertThat(copy.hashCode(), is(xslKey.hashCode()));
+        assertThat(copy.computeDigest(), is(xslKey.computeDigest()));
+    }
+
+    @Test
+    public void resourceKeyDependsOnTheResourceNotOnTheClassLoader() throws Exception {
+        //Another loader of the same classes finds the same resource
+        URL location = this.getClass().getProtectionDomain().getCodeSource().getLocation();
+        URLClassLoader classLoader = new URLClassLoader(new URL[]{location}, null);
+        Class clazz = Class.forName(this.getClass().getName(), false, classLoader);
+
+        assertThat(clazz.getClassLoader(), not(this.getClass().getClassLoader()));
+        XslKey xslKey = XslKey.fromResource(clazz, "myex-xml.xsl");
+        assertThat(xslKey, is(XslKey.fromResource(this.getClass(), "myex-xml.xsl")));
+        assertThat(xslKey.computeDigest(), is(XslKey.fromResource(this.getClass(), "myex-xml.xsl").computeDigest()));
+        assertThat(XslKey.fromResource(this.getClass(), "myex-txt.xsl"), not(XslKey.fromResource(this.getClass(), "myex-xml.xsl")));
+    }
+
+    private static final String MAIN_XSL = "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+            + "<xsl:import href=\"lib/module.xsl\"/>"
+            + "<xsl:template match=\"/\"><out><xsl:call-template name=\"value\"/></out></xsl:template>"
+            + "</xsl:stylesheet>";
+
+    static void writeModules(File dir, String value) throws IOException {
+        new File(dir, "lib").mkdirs();
+        //The main module is written once, only the modules it imports change
+        if (!new File(dir, "main.xsl").exists()) {
+            write(new File(dir, "main.xsl"), MAIN_XSL);
+        }
+        write(new File(dir, "lib/module.xsl"), "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+                + "<xsl:include href=\"value.xsl\"/></xsl:stylesheet>");
+        write(new File(dir, "lib/value.xsl"), "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+                + "<xsl:template name=\"value\">" + value + "</xsl:template></xsl:stylesheet>");
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void modulesArePartOfTheDigest() throws Exception {
+        File dir = File.createTempFile("modules", "");
+        File otherDir = File.createTempFile("modules", "");
+        try {
+            dir.delete();
+            otherDir.delete();
+            writeModules(dir, "first");
+            writeModules(otherDir, "first");
+            String digest = XslKey.fromFile(new File(dir, "main.xsl")).computeDigest();
+
+            //The location of the modules is not part of the digest
+            assertThat(XslKey.fromFile(new File(otherDir, "main.xsl")).computeDigest(), is(digest));
+            //A module included by an imported module changes the digest
+            writeModules(otherDir, "second");
+            assertThat(XslKey.fromFile(new File(otherDir, "main.xsl")).computeDigest(), not(digest));
+            //The modules of a content are resolved when their location is absolute
+            String content = MAIN_XSL.replace("lib/module.xsl", new File(dir, "lib/module.xsl").toURI().toString());
+            assertThat(XslKey.fromContent(content).computeDigest(), not(XslKey.fromContent(MAIN_XSL.replace("lib/module.xsl",
+                    new File(otherDir, "lib/module.xsl").toURI().toString())).computeDigest()));
+        } finally {
+            delete(dir);
+            delete(otherDir);
+        }
+    }
+
+    @Test
+    public void missingResource() throws Exception {
+        XslKey xslKey = XslKey.fromResource(this.getClass(), "missing.xsl");
+        try {
+            xslKey.openSource();
+            fail("The resource should not be found.");
+        } catch (FileNotFoundException fnfe) {
+            assertThat(fnfe.getMessage().contains("missing.xsl"), is(true));
+        }
+    }
+}
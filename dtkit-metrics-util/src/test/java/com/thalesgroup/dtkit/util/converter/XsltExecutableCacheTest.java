@@ -0,0 +1,75 @@
+package com.thalesgroup.dtkit.util.converter;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.XsltExecutable;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+
+public class XsltExecutableCacheTest {
+
+    @Test
+    public void compileOnce() throws Exception {
+        XsltExecutableCache cache = new XsltExecutableCache(new Processor(false));
+        XslKey xslKey = XslKey.fromResource(this.getClass(), "myex-xml.xsl");
+
+        XsltExecutable first = cache.get(xslKey);
+        XsltExecutable second = cache.get(XslKey.fromResource(this.getClass(), "myex-xml.xsl"));
+
+        assertThat(second, sameInstance(first));
+        assertThat(cache.getMissCount(), is(1L));
+        assertThat(cache.getHitCount(), is(1L));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws Exception {
+        XsltExecutableCache cache = new XsltExecutableCache(new Processor(false), 2);
+        XslKey xmlKey = XslKey.fromResource(this.getClass(), "myex-xml.xsl");
+        XslKey txtKey = XslKey.fromResource(this.getClass(), "/com/thalesgroup/dtkit/util/converter/myex-txt.xsl");
+        XslKey contentKey = XslKey.fromContent("<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\"/>");
+
+        cache.get(xmlKey);
+        cache.get(txtKey);
+        cache.get(xmlKey);
+        cache.get(contentKey);
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.getEvictionCount(), is(1L));
+
+        cache.get(xmlKey);
+        assertThat(cache.getHitCount(), is(2L));
+        cache.get(txtKey);
+        assertThat(cache.getMissCount(), is(4L));
+    }
+
+    @Test
+    public void recompileChangedModules() throws Exception {
+        File xslDir = File.createTempFile("modules", "");
+        try {
+            xslDir.delete();
+            XslKeyTest.writeModules(xslDir, "first");
+            XsltExecutableCache cache = new XsltExecutableCache(new Processor(false));
+            XslKey mainKey = XslKey.fromFile(new File(xslDir, "main.xsl"));
+
+            XsltExecutable first = cache.get(mainKey);
+            assertThat(cache.get(mainKey), sameInstance(first));
+            XslKeyTest.writeModules(xslDir, "second value");
+            assertThat(cache.get(mainKey), not(sameInstance(first)));
+            assertThat(cache.getMissCount(), is(2L));
+            assertThat(cache.size(), is(1));
+        } finally {
+            XslKeyTest.delete(xslDir);
+        }
+    }
+
+    @Test
+    public void contentKeyEquality() {
+        String content = "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\"/>";
+        assertThat(XslKey.fromContent(content), is(XslKey.fromContent(new String(content))));
+        assertThat(XslKey.fromContent(content), not(XslKey.fromContent(content + " ")));
+    }
+}
@@ -0,0 +1,69 @@
+package com.thalesgroup.dtkit.util.converter;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.XsltTransformer;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+
+public class XsltTransformerPoolTest {
+
+    private static final String PARAM_XSL = "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+            + "<xsl:param name=\"p\" select=\"'default'\"/>"
+            + "<xsl:template match=\"/\"><out><xsl:value-of select=\"$p\"/></out></xsl:template>"
+            + "</xsl:stylesheet>";
+
+    private String convert(ConversionService conversionService, XslKey xslKey, Map<String, Object> params) {
+        return conversionService.convertAndReturn(xslKey, new InputSource(new StringReader("<in/>")), params);
+    }
+
+    @Test
+    public void reuseTransformerWithResetParameters() {
+        ConversionEngine engine = new ConversionEngine(1, 8);
+        engine.init();
+        ConversionService conversionService = new ConversionService(engine);
+        XslKey xslKey = XslKey.fromContent(PARAM_XSL);
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("p", "given");
+        assertTrue(convert(conversionService, xslKey, params).contains("<out>given</out>"));
+        assertTrue(convert(conversionService, xslKey, null).contains("<out>default</out>"));
+
+        XsltTransformerPool transformerPool = engine.getXsltExecutableCache(xslKey).getTransformerPool(xslKey);
+        assertThat(transformerPool.getCreatedCount(), is(1L));
+        assertThat(transformerPool.getReusedCount(), is(1L));
+        assertThat(transformerPool.getIdleCount(), is(1));
+        engine.close();
+    }
+
+    @Test
+    public void threadAffinity() throws Exception {
+        XsltExecutableCache cache = new XsltExecutableCache(new Processor(false), 8, 0, true);
+        final XsltTransformerPool transformerPool = cache.getTransformerPool(XslKey.fromContent(PARAM_XSL));
+
+        XsltTransformer xsltTransformer = transformerPool.borrow();
+        transformerPool.release(xsltTransformer);
+        assertThat(transformerPool.borrow(), sameInstance(xsltTransformer));
+        transformerPool.release(xsltTransformer);
+
+        final XsltTransformer[] otherThreadTransformer = new XsltTransformer[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                otherThreadTransformer[0] = transformerPool.borrow();
+            }
+        };
+        thread.start();
+        thread.join();
+        assertThat(otherThreadTransformer[0], not(sameInstance(xsltTransformer)));
+        assertThat(transformerPool.getCreatedCount(), is(2L));
+    }
+}
@@ -0,0 +1,119 @@
+package com.thalesgroup.dtkit.util.instrumentation;
+
+import com.thalesgroup.dtkit.util.converter.ConversionService;
+import com.thalesgroup.dtkit.util.converter.XslKey;
+import com.thalesgroup.dtkit.util.validator.SchemaKey;
+import com.thalesgroup.dtkit.util.validator.ValidationService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+
+public class HistogramInstrumentationTest {
+
+    private Instrumentation defaultInstrumentation;
+
+    private HistogramInstrumentation instrumentation;
+
+    @Before
+    public void setUp() {
+        defaultInstrumentation = InstrumentationFactory.getInstance();
+        instrumentation = new HistogramInstrumentation();
+        InstrumentationFactory.setInstance(instrumentation);
+    }
+
+    @After
+    public void tearDown() {
+        InstrumentationFactory.setInstance(defaultInstrumentation);
+    }
+
+    private File getFile(String name) throws Exception {
+        return new File(this.getClass().getResource(name).toURI());
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getMaxNanos(), is(100000L));
+        assertThat(histogram.getMeanNanos(), is(50500L));
+        long p50 = histogram.getPercentileNanos(50);
+        assertTrue("p50 " + p50, p50 >= 50000L && p50 < 100000L);
+        assertThat(histogram.getPercentileNanos(100), is(100000L));
+    }
+
+    @Test
+    public void conversionAndValidationByLabel() throws Exception {
+        ConversionService conversionService = new ConversionService();
+        conversionService.setLabel("myTool");
+        XslKey xslKey = XslKey.fromResource(this.getClass(), "/com/thalesgroup/dtkit/util/converter/myex-xml.xsl");
+        File inputFile = getFile("/com/thalesgroup/dtkit/util/converter/myex.xml");
+        conversionService.convertAndReturn(xslKey, inputFile, null);
+        conversionService.convertAndReturn(xslKey, inputFile, null);
+
+        ValidationService validationService = new ValidationService();
+        validationService.setLabel("myTool");
+        validationService.processValidation(SchemaKey.fromResources(this.getClass(), "/com/thalesgroup/dtkit/util/validator/myex.xsd"),
+                getFile("/com/thalesgroup/dtkit/util/validator/myex-invalid.xml"));
+
+        ToolStatistics stats = instrumentation.getToolStatistics("myTool");
+        assertThat(stats.getParseTimes().getCount(), is(2L));
+        assertThat(stats.getTransformTimes().getCount(), is(2L));
+        assertThat(stats.getSerializeTimes().getCount(), is(2L));
+        assertThat(stats.getCompileTimes().getCount(), is(2L));
+        assertTrue(stats.getCompileCacheHits() >= 1L);
+        assertThat(stats.getValidationTimes().getCount(), is(1L));
+        assertTrue(stats.getValidationErrors() > 0);
+        assertTrue(stats.getBytesIn() > 2 * inputFile.length());
+        assertTrue(stats.getBytesOut() > 0);
+
+        TabularData tools = new ConversionStatistics(instrumentation).getToolStatistics();
+        CompositeData row = tools.get(new Object[]{"myTool"});
+        assertThat((Long) row.get("conversions"), is(2L));
+        assertThat((Long) row.get("validations"), is(1L));
+    }
+
+    @Test
+    public void multipleConversionByLabel() throws Exception {
+        ConversionService conversionService = new ConversionService();
+        conversionService.setLabel("myTool");
+        conversionService.setResultCache(null);
+        XslKey txtKey = XslKey.fromResource(this.getClass(), "/com/thalesgroup/dtkit/util/converter/myex-txt.xsl");
+        XslKey xmlKey = XslKey.fromResource(this.getClass(), "/com/thalesgroup/dtkit/util/converter/myex-xml.xsl");
+        Map<XslKey, File> outputs = new LinkedHashMap<XslKey, File>();
+        outputs.put(txtKey, File.createTempFile("result", "txt"));
+        outputs.put(xmlKey, File.createTempFile("result", "xml"));
+        Map<XslKey, String> labels = new HashMap<XslKey, String>();
+        labels.put(xmlKey, "myXmlTool");
+        try {
+            conversionService.convertMultiple(getFile("/com/thalesgroup/dtkit/util/converter/myex.xml"), outputs, labels, null, null);
+        } finally {
+            for (File outFile : outputs.values()) {
+                outFile.delete();
+            }
+        }
+
+        //The shared parse is reported under the label of the service, each transformation under its own label
+        ToolStatistics stats = instrumentation.getToolStatistics("myTool");
+        assertThat(stats.getParseTimes().getCount(), is(1L));
+        assertThat(stats.getTransformTimes().getCount(), is(1L));
+        ToolStatistics xmlStats = instrumentation.getToolStatistics("myXmlTool");
+        assertThat(xmlStats.getParseTimes().getCount(), is(0L));
+        assertThat(xmlStats.getTransformTimes().getCount(), is(1L));
+        assertThat(xmlStats.getCompileTimes().getCount(), is(1L));
+    }
+}
@@ -0,0 +1,101 @@
+package com.thalesgroup.dtkit.util.validator;
+
+import com.thalesgroup.dtkit.util.converter.FileSourceFactory;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+
+public class SchemaCacheTest {
+
+    private File getFile(String name) throws Exception {
+        return new File(this.getClass().getResource(name).toURI());
+    }
+
+    @Test
+    public void compileOnce() throws Exception {
+        SchemaCache schemaCache = new SchemaCache(4);
+
+        assertThat(schemaCache.get(SchemaKey.fromResources(this.getClass(), "myex.xsd")),
+                sameInstance(schemaCache.get(SchemaKey.fromResources(this.getClass(), "/com/thalesgroup/dtkit/util/validator/myex.xsd"))));
+        assertThat(schemaCache.getMissCount(), is(1L));
+        assertThat(schemaCache.getHitCount(), is(1L));
+    }
+
+    @Test
+    public void resourceKeyIsEqualOnceDeserialized() throws Exception {
+        SchemaKey schemaKey = SchemaKey.fromResources(this.getClass(), "myex.xsd");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(schemaKey);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        SchemaKey copy = (SchemaKey) in.readObject();
+        in.close();
+
+        assertThat(copy, is(schemaKey));
+        assertThat(copy.hashCode(), is(schemaKey.hashCode()));
+        FileSourceFactory.close(copy.openSources());
+    }
+
+    @Test
+    public void validateWithCachedSchema() throws Exception {
+        ValidationService validationService = new ValidationService(new SchemaCache(4));
+        SchemaKey schemaKey = SchemaKey.fromFiles(getFile("myex.xsd"));
+
+        assertThat(validationService.processValidation(schemaKey, getFile("myex.xml")).size(), is(0));
+        List<ValidationError> errors = validationService.processValidation(schemaKey, getFile("myex-invalid.xml"));
+        assertThat(errors.isEmpty(), is(false));
+        assertThat(errors.get(0).getType(), is(ErrorType.ERROR));
+        assertThat(validationService.getSchemaCache().getHitCount(), is(1L));
+    }
+
+    private File newXsd(String content) throws Exception {
+        File xsdFile = File.createTempFile("grammar", ".xsd");
+        xsdFile.deleteOnExit();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(xsdFile), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        return xsdFile;
+    }
+
+    @Test
+    public void reportGrammarErrors() throws Exception {
+        ValidationService validationService = new ValidationService(new SchemaCache(4));
+        //The type of the element is not declared
+        SchemaKey schemaKey = SchemaKey.fromFiles(newXsd("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">"
+                + "<xs:element name=\"myex\" type=\"undeclared\"/></xs:schema>"));
+
+        for (int i = 0; i < 2; i++) {
+            List<ValidationError> errors = validationService.processValidation(schemaKey, getFile("myex.xml"));
+            assertThat(errors.isEmpty(), is(false));
+            assertThat(errors.get(0).getMessage().contains("undeclared"), is(true));
+        }
+        assertThat(validationService.getSchemaCache().getMissCount(), is(1L));
+    }
+
+    @Test
+    public void compileFailingGrammarOnce() throws Exception {
+        ValidationService validationService = new ValidationService(new SchemaCache(4));
+        SchemaKey schemaKey = SchemaKey.fromFiles(newXsd("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">"));
+
+        for (int i = 0; i < 2; i++) {
+            List<ValidationError> errors = validationService.processValidation(schemaKey, getFile("myex.xml"));
+            assertThat(errors.isEmpty(), is(false));
+            assertThat(errors.get(0).getType(), is(ErrorType.FATAL_ERROR));
+        }
+        SchemaCache schemaCache = validationService.getSchemaCache();
+        assertThat(schemaCache.getMissCount(), is(1L));
+        assertThat(schemaCache.getHitCount(), is(1L));
+        assertThat(schemaCache.getFailureCount(), is(1L));
+    }
+}
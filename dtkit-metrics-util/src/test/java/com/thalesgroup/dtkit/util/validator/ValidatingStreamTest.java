@@ -0,0 +1,84 @@
+package com.thalesgroup.dtkit.util.validator;
+
+import com.thalesgroup.dtkit.util.converter.ConversionService;
+import com.thalesgroup.dtkit.util.converter.SAXSourceFactory;
+import com.thalesgroup.dtkit.util.converter.XslKey;
+import net.sf.saxon.s9api.Serializer;
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+public class ValidatingStreamTest {
+
+    private static final String IDENTITY_XSL = "<xsl:stylesheet version=\"2.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+            + "<xsl:template match=\"@*|node()\"><xsl:copy><xsl:apply-templates select=\"@*|node()\"/></xsl:copy></xsl:template>"
+            + "</xsl:stylesheet>";
+
+    private final SchemaKey schemaKey = SchemaKey.fromResources(this.getClass(), "myex.xsd");
+
+    private InputSource getInputSource(String name) {
+        return new InputSource(this.getClass().getResource(name).toExternalForm());
+    }
+
+    private ValidationHandler parse(String name) throws Exception {
+        ValidationHandler handler = new ValidationHandler();
+        XMLReader xmlReader = new ValidationService().newValidatingXMLReader(SAXSourceFactory.newXMLReader(), schemaKey, handler);
+        xmlReader.setContentHandler(new DefaultHandler());
+        xmlReader.parse(getInputSource(name));
+        return handler;
+    }
+
+    private ValidationHandler serialize(String name, StringWriter writer) throws Exception {
+        ValidationHandler handler = new ValidationHandler();
+        Serializer out = new ValidationService().newValidatingSerializer(schemaKey, handler);
+        out.setOutputWriter(writer);
+        new ConversionService().convert(XslKey.fromContent(IDENTITY_XSL), getInputSource(name), out, null);
+        return handler;
+    }
+
+    @Test
+    public void validateWhileParsing() throws Exception {
+        assertThat(parse("myex.xml").getErrors().isEmpty(), is(true));
+        assertThat(parse("myex-invalid.xml").getErrors().isEmpty(), is(false));
+    }
+
+    @Test
+    public void validateWhileSerializing() throws Exception {
+        StringWriter writer = new StringWriter();
+        assertThat(serialize("myex.xml", writer).getErrors().isEmpty(), is(true));
+        assertThat(writer.toString().contains("attr1=\"val1\""), is(true));
+        assertThat(serialize("myex-invalid.xml", new StringWriter()).getErrors().isEmpty(), is(false));
+    }
+
+    @Test
+    public void passTheParsedEventsUnchanged() throws Exception {
+        ValidationHandler handler = new ValidationHandler();
+        XMLReader xmlReader = new ValidationService().newValidatingXMLReader(SAXSourceFactory.newXMLReader(),
+                SchemaKey.fromResources(this.getClass(), "myex-default.xsd"), handler);
+        final List<String> attributes = new ArrayList<String>();
+        xmlReader.setContentHandler(new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes atts) {
+                for (int i = 0; i < atts.getLength(); i++) {
+                    attributes.add(atts.getQName(i));
+                }
+            }
+        });
+        xmlReader.parse(getInputSource("myex.xml"));
+
+        assertThat(handler.getErrors().isEmpty(), is(true));
+        //The default attribute of the schema is not added to the document
+        assertThat(attributes.contains("attr3"), is(false));
+        assertThat(attributes.size(), is(2));
+    }
+}
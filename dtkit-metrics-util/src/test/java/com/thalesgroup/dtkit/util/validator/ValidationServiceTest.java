@@ -0,0 +1,72 @@
+package com.thalesgroup.dtkit.util.validator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+public class ValidationServiceTest {
+
+    private static final int ITEMS = 1000;
+
+    private File xsdFile;
+
+    private File xmlFile;
+
+    @Before
+    public void createFiles() throws Exception {
+        xsdFile = File.createTempFile("list", ".xsd");
+        write(xsdFile, "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">"
+                + "<xs:element name=\"list\"><xs:complexType><xs:sequence>"
+                + "<xs:element name=\"item\" type=\"xs:int\" maxOccurs=\"unbounded\"/>"
+                + "</xs:sequence></xs:complexType></xs:element></xs:schema>");
+        StringBuilder sb = new StringBuilder("<list>");
+        for (int i = 0; i < ITEMS; i++) {
+            sb.append("<item>NaN</item>");
+        }
+        xmlFile = File.createTempFile("list", ".xml");
+        write(xmlFile, sb.append("</list>").toString());
+    }
+
+    @After
+    public void deleteFiles() {
+        xsdFile.delete();
+        xmlFile.delete();
+    }
+
+    private void write(File file, String content) throws Exception {
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void collectAllErrors() throws Exception {
+        ValidationService validationService = new ValidationService();
+        assertThat(validationService.processValidation(SchemaKey.fromFiles(xsdFile), xmlFile).size() >= ITEMS, is(true));
+    }
+
+    @Test
+    public void stopAtMaxErrors() throws Exception {
+        ValidationService validationService = new ValidationService();
+        validationService.setMaxErrors(5);
+        assertThat(validationService.processValidation(SchemaKey.fromFiles(xsdFile), xmlFile).size(), is(5));
+    }
+
+    @Test
+    public void stopAtFirstError() throws Exception {
+        ValidationService validationService = new ValidationService();
+        validationService.setFailFast(true);
+        assertThat(validationService.processValidation(SchemaKey.fromFiles(xsdFile), xmlFile).size(), is(1));
+    }
+}
@@ -0,0 +1,19 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<xsl:stylesheet version="2.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform" xmlns:x="urn:x">
+    <xsl:output method="xml" indent="yes" encoding="UTF-8"/>
+
+    <xsl:template match="/report">
+        <testsuite name="{@name}">
+            <xsl:apply-templates select="test|x:test"/>
+        </testsuite>
+    </xsl:template>
+
+    <xsl:template match="test|x:test">
+        <testcase name="{@name}">
+            <xsl:if test="@status = 'failed'">
+                <failure message="{message}"/>
+            </xsl:if>
+        </testcase>
+    </xsl:template>
+
+</xsl:stylesheet>